@@ -0,0 +1,143 @@
+package com.ethlo.http.logger.delegate;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * Compares the access log hand-off from request threads to a logger worker: many producers, a single consumer.
+ * <p>
+ * The <code>*Offer</code>/<code>*Poll</code> groups measure single attempts, so once the consumer falls behind they
+ * mostly measure rejected offers on a full queue. The <code>balanced*</code> groups retry until each element is handed
+ * over, so their throughput is that of elements actually passing through.
+ * <p>
+ * Run with <code>mvn -Pbenchmark -pl cloud-gateway-core test-compile exec:exec</code>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class HandOffBenchmark
+{
+    private static final Object ELEMENT = new Object();
+
+    @Param({"16384"})
+    private int capacity;
+
+    private BlockingQueue<Object> queue;
+    private RingBuffer<Object> ringBuffer;
+
+    @Setup
+    public void setup()
+    {
+        queue = new ArrayBlockingQueue<>(capacity);
+        ringBuffer = new RingBuffer<>(capacity, WaitStrategy.SPIN_THEN_PARK);
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    @GroupThreads(8)
+    public boolean queueOffer()
+    {
+        return queue.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    @GroupThreads(1)
+    public Object queuePoll()
+    {
+        return queue.poll();
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(8)
+    public boolean ringBufferOffer()
+    {
+        return ringBuffer.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public Object ringBufferPoll()
+    {
+        return ringBuffer.poll();
+    }
+
+    @Benchmark
+    @Group("balancedArrayBlockingQueue")
+    @GroupThreads(8)
+    public boolean balancedQueueOffer(Control control)
+    {
+        while (!queue.offer(ELEMENT))
+        {
+            if (control.stopMeasurement)
+            {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Group("balancedArrayBlockingQueue")
+    @GroupThreads(1)
+    public Object balancedQueuePoll(Control control)
+    {
+        Object element;
+        while ((element = queue.poll()) == null && !control.stopMeasurement)
+        {
+            Thread.onSpinWait();
+        }
+        return element;
+    }
+
+    @Benchmark
+    @Group("balancedRingBuffer")
+    @GroupThreads(8)
+    public boolean balancedRingBufferOffer(Control control)
+    {
+        while (!ringBuffer.offer(ELEMENT))
+        {
+            if (control.stopMeasurement)
+            {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Group("balancedRingBuffer")
+    @GroupThreads(1)
+    public Object balancedRingBufferPoll(Control control)
+    {
+        Object element;
+        while ((element = ringBuffer.poll()) == null && !control.stopMeasurement)
+        {
+            Thread.onSpinWait();
+        }
+        return element;
+    }
+}
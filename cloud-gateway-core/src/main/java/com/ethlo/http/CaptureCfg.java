@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.ethlo.http.configuration.HttpLoggingConfiguration;
+import com.ethlo.http.logger.CaptureConfiguration;
 
 @Configuration
 @RefreshScope
@@ -15,9 +16,21 @@ public class CaptureCfg
 {
     @Bean
     @ConditionalOnProperty("http-logging.capture.enabled")
-    public DataBufferRepository dataBufferRepository(HttpLoggingConfiguration httpLoggingConfiguration) throws IOException
+    public DefaultDataBufferRepository dataBufferRepository(HttpLoggingConfiguration httpLoggingConfiguration) throws IOException
     {
-        return new DefaultDataBufferRepository(httpLoggingConfiguration.getCapture(), httpLoggingConfiguration.maxMemoryBuffer());
+        final CaptureConfiguration capture = httpLoggingConfiguration.getCapture();
+        return switch (capture.getStore())
+        {
+            case FILE -> new DefaultDataBufferRepository(capture, httpLoggingConfiguration.maxMemoryBuffer());
+            case SEGMENT_LOG -> new SegmentLogDataBufferRepository(capture, httpLoggingConfiguration.maxMemoryBuffer());
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty("http-logging.capture.enabled")
+    public CaptureMetrics captureMetrics(DefaultDataBufferRepository dataBufferRepository)
+    {
+        return new CaptureMetrics(dataBufferRepository);
     }
 
     @Bean
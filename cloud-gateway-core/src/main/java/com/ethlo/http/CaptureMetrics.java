@@ -0,0 +1,57 @@
+package com.ethlo.http;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exposes the capture memory and spill statistics, to size <code>max-memory-buffer</code> and the memory arena
+ * from data
+ */
+public class CaptureMetrics implements MeterBinder
+{
+    private final DefaultDataBufferRepository repository;
+
+    public CaptureMetrics(DefaultDataBufferRepository repository)
+    {
+        this.repository = repository;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry)
+    {
+        Gauge.builder("capture.memory.used", repository, DefaultDataBufferRepository::getMemoryUsed)
+                .description("Captured body bytes held in the in-memory arena")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        Gauge.builder("capture.memory.capacity", repository, DefaultDataBufferRepository::getMemoryCapacity)
+                .description("Capacity of the in-memory arena")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        Gauge.builder("capture.spill.bytes", repository, DefaultDataBufferRepository::getSpilledBytes)
+                .description("Captured body bytes of in-flight requests spilled to disk")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        Gauge.builder("capture.spill.open", repository, DefaultDataBufferRepository::getOpenSpills)
+                .description("In-flight bodies spilled to disk")
+                .register(registry);
+        Gauge.builder("capture.writer.pending", repository, DefaultDataBufferRepository::getPendingWriteBytes)
+                .description("Spilled bytes waiting for the capture writer")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        FunctionCounter.builder("capture.spill", repository, DefaultDataBufferRepository::getSpillCount)
+                .description("Bodies spilled to disk")
+                .register(registry);
+        Gauge.builder("capture.session.open", repository, DefaultDataBufferRepository::getOpenSessions)
+                .description("Capture sessions not yet released")
+                .register(registry);
+        FunctionCounter.builder("capture.session.reaped", repository, DefaultDataBufferRepository::getReapedSessions)
+                .description("Leaked capture sessions released by the reaper")
+                .register(registry);
+        FunctionCounter.builder("capture.file.reaped", repository, DefaultDataBufferRepository::getReapedFiles)
+                .description("Orphaned body files deleted by the reaper")
+                .register(registry);
+    }
+}
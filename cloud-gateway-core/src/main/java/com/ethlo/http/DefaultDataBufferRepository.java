@@ -2,357 +2,301 @@ package com.ethlo.http;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
 
-import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.util.unit.DataSize;
 
+import com.ethlo.http.capture.ArenaBuffer;
+import com.ethlo.http.capture.AsyncCaptureWriter;
+import com.ethlo.http.capture.BufferArena;
+import com.ethlo.http.capture.CaptureFiles;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.CaptureSink;
+import com.ethlo.http.capture.ExchangeRecord;
+import com.ethlo.http.capture.FileSpillStore;
+import com.ethlo.http.capture.OverflowPolicy;
+import com.ethlo.http.capture.SpillCompression;
+import com.ethlo.http.capture.SpillStore;
 import com.ethlo.http.logger.CaptureConfiguration;
 import com.ethlo.http.model.BodyProvider;
 import com.ethlo.http.model.WebExchangeDataProvider;
 import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.util.IoUtil;
 
 public class DefaultDataBufferRepository implements DataBufferRepository
 {
     private static final Logger logger = LoggerFactory.getLogger(DefaultDataBufferRepository.class);
+    private static final int MAX_SEGMENT_SIZE = 8 * 1024;
+    private static final int MIN_SEGMENT_SIZE = 512;
+    private static final long OVERFLOW_BACKOFF_NANOS = 100_000;
+    private static final int ARCHIVE_BUFFER_SIZE = 8192;
+    private static final Duration MAX_REAP_INTERVAL = Duration.ofMinutes(1);
+
     private final Path basePath;
     private final long thresholdBytes;
-
-    // A single map to track the state (RAM or DISK) for every unique request/direction pair
-    private final ConcurrentMap<String, DataState> statePool = new ConcurrentHashMap<>();
+    private final long highWatermarkBytes;
+    private final BufferArena arena;
+    private final AsyncCaptureWriter writer;
+    private final OverflowPolicy overflowPolicy;
+    private final SpillStore spillStore;
+    private final SpillCompression compression;
+    private final long sessionTtlNanos;
+    private final ScheduledExecutorService reaper;
+
+    // Statistics, exposed as metrics by CaptureMetrics
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicInteger openSpills = new AtomicInteger();
+    private final LongAdder spillCount = new LongAdder();
+    private final LongAdder reapedSessions = new LongAdder();
+    private final LongAdder reapedFiles = new LongAdder();
+
+    // The open capture sessions, only touched when a session is opened or released
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
 
     public DefaultDataBufferRepository(CaptureConfiguration config, DataSize threshold) throws IOException
     {
-        this.basePath = Files.createDirectories(config.getLogDirectory());
-        this.thresholdBytes = threshold.toBytes();
+        this(config, threshold, new FileSpillStore(config.getLogDirectory()));
     }
 
-    @NotNull
-    private static HttpHeaders parseHttpHeaders(byte[] data)
+    protected DefaultDataBufferRepository(CaptureConfiguration config, DataSize threshold, SpillStore spillStore) throws IOException
     {
-        final String content = new String(data, StandardCharsets.UTF_8);
-        final HttpHeaders headers = new HttpHeaders();
-
-        // Split by CRLF to get individual lines
-        final String[] lines = content.split("\r\n");
-        for (String line : lines)
+        this.spillStore = spillStore;
+        this.basePath = Files.createDirectories(config.getLogDirectory());
+        this.thresholdBytes = threshold.toBytes();
+        this.arena = new BufferArena(segmentSize(thresholdBytes), config.getMemoryArenaSize(threshold).toBytes());
+        this.highWatermarkBytes = (long) (arena.getCapacity() * config.getMemoryHighWatermark());
+        this.writer = new AsyncCaptureWriter(config.getMaxPendingWrites().toBytes());
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.compression = config.getSpillCompression();
+        this.sessionTtlNanos = config.getSessionTtl().toNanos();
+
+        final long reapInterval = Math.max(1000, Math.min(config.getSessionTtl().toMillis() / 4, MAX_REAP_INTERVAL.toMillis()));
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable ->
         {
-            if (line.isBlank())
-            {
-                continue;
-            }
+            final Thread thread = new Thread(runnable, "capture-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reaper.scheduleWithFixedDelay(this::reap, reapInterval, reapInterval, TimeUnit.MILLISECONDS);
+    }
 
-            int colonIndex = line.indexOf(':');
-            if (colonIndex != -1)
-            {
-                final String name = line.substring(0, colonIndex).trim();
-                final String value = line.substring(colonIndex + 1).trim();
-                headers.add(name, value);
-            }
-        }
-        return headers;
+    private static int segmentSize(long thresholdBytes)
+    {
+        // Small thresholds get small segments, so a tiny body does not pin a large one. A quarter of the threshold at
+        // most, as the threshold does not shrink below one segment under memory pressure.
+        return (int) Math.clamp(Long.highestOneBit(Math.max(thresholdBytes / 4, 1)), MIN_SEGMENT_SIZE, MAX_SEGMENT_SIZE);
     }
 
-    @Override
-    public void putHeaders(ServerDirection direction, String requestId, HttpHeaders headers)
+    /**
+     * The in-memory threshold, given the current use of the shared memory arena.
+     * <p>
+     * Above the high watermark, the threshold shrinks linearly towards a single arena segment as the arena fills up.
+     * Large bodies then spill early, while small ones still fit in memory.
+     */
+    long effectiveThreshold()
     {
-        final Path path = getPath(direction, requestId, "headers");
-        try (FileChannel fc = FileChannel.open(path,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE,
-                StandardOpenOption.TRUNCATE_EXISTING
-        ))
+        final long used = arena.getUsed();
+        if (used <= highWatermarkBytes)
         {
-            writeFully(fc, ByteBuffer.wrap(serialize(headers)));
-        }
-        catch (IOException e)
-        {
-            logger.error("Failed to write headers {} for {}", direction, requestId, e);
+            return thresholdBytes;
         }
+
+        final long capacity = arena.getCapacity();
+        final double free = (double) (capacity - used) / Math.max(1, capacity - highWatermarkBytes);
+        return Math.min(thresholdBytes, Math.max(arena.getSegmentSize(), (long) (thresholdBytes * free)));
     }
 
-    private byte[] serialize(HttpHeaders headers)
+    public long getMemoryUsed()
     {
-        final StringBuilder sb = new StringBuilder(512);
-        headers.forEach((name, values) ->
-        {
-            for (String value : values)
-            {
-                // We repeat the header name for multi-values (Standard Wire Format)
-                // This is safer than comma-separation for things like Set-Cookie
-                sb.append(name).append(": ").append(value).append("\r\n");
-            }
-        });
-        return sb.toString().getBytes(StandardCharsets.UTF_8);
+        return arena.getUsed();
     }
 
-    @Override
-    public Optional<HttpHeaders> getHeaders(final ServerDirection direction, final String requestId)
+    public long getMemoryCapacity()
     {
-        final Path path = getPath(direction, requestId, "headers");
-
-        if (!Files.exists(path))
-        {
-            return Optional.empty();
-        }
-
-        try
-        {
-            final byte[] data = Files.readAllBytes(path);
-            final HttpHeaders headers = parseHttpHeaders(data);
-            return Optional.of(headers);
-        }
-        catch (IOException e)
-        {
-            logger.error("Failed to read durable headers for {}", requestId, e);
-            return Optional.empty();
-        }
+        return arena.getCapacity();
     }
 
     /**
-     * Deterministic write logic. Checks threshold and spills to disk if necessary.
+     * @return The number of bytes of live bodies that were spilled from memory
      */
-    @Override
-    public void writeBody(ServerDirection direction, String requestId, ByteBuffer data)
+    public long getSpilledBytes()
     {
-        final String key = getPoolKey(direction, requestId);
-        final int bytesToWrite = data.remaining();
-
-        statePool.compute(key, (k, state) -> {
-                    try
-                    {
-                        // First write, initialize in memory
-                        if (state == null)
-                        {
-                            if (bytesToWrite > thresholdBytes)
-                            {
-                                return spillNewToDisk(direction, requestId, data);
-                            }
-                            return createInMemoryState(data);
-                        }
-
-                        // Already on disk, write to channel
-                        if (state.channel != null)
-                        {
-                            writeToChannel(state.channel, state.position, data);
-                            return state;
-                        }
-
-                        // Currently in memory, check if this write triggers spill
-                        if (state.memoryBuffer.size() + bytesToWrite > thresholdBytes)
-                        {
-                            return spillExistingToDisk(direction, requestId, state.memoryBuffer, data);
-                        }
-                        else
-                        {
-                            state.memoryBuffer.write(data.array(), data.position(), bytesToWrite);
-                            state.position.addAndGet(bytesToWrite);
-                            return state;
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        throw new UncheckedIOException(e);
-                    }
-                }
-        );
+        return spilledBytes.get();
     }
 
-    private DataState createInMemoryState(ByteBuffer data) throws IOException
-    {
-        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        byte[] bytes = new byte[data.remaining()];
-        data.get(bytes);
-        outputStream.write(bytes);
-        return new DataState(outputStream, null, new AtomicLong(bytes.length));
-    }
-
-    private DataState spillNewToDisk(ServerDirection dir, String id, ByteBuffer data) throws IOException
+    /**
+     * @return The number of live bodies that were spilled from memory
+     */
+    public int getOpenSpills()
     {
-        Path path = getPath(dir, id, "body");
-        FileChannel fc = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-        int written = fc.write(data);
-        return new DataState(null, fc, new AtomicLong(written));
+        return openSpills.get();
     }
 
-    private void writeFully(FileChannel fc, ByteBuffer src) throws IOException
+    /**
+     * @return The total number of bodies spilled from memory since startup
+     */
+    public long getSpillCount()
     {
-        writeFully(fc, src, null);
+        return spillCount.sum();
     }
 
-    private void writeFully(FileChannel fc, ByteBuffer src, Long offset) throws IOException
+    public long getPendingWriteBytes()
     {
-        while (src.hasRemaining())
-        {
-            // If offset is null, use the channel's current position (and update it)
-            // If offset is provided, use absolute position (does NOT update channel position)
-            int written = (offset == null) ? fc.write(src) : fc.write(src, offset);
-
-            if (written == 0)
-            {
-                // Standard retry logic for edge cases/interrupts
-                Thread.yield();
-            }
-            else if (offset != null)
-            {
-                offset += written;
-            }
-        }
+        return writer.getPendingBytes();
     }
 
-    private DataState spillExistingToDisk(ServerDirection dir, String id, ByteArrayOutputStream existing, ByteBuffer data) throws IOException
+    /**
+     * @return The number of sessions not yet released
+     */
+    public int getOpenSessions()
     {
-        final Path path = getPath(dir, id, "body");
-        final FileChannel fc = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-
-        // Write the accumulated memory buffer fully
-        writeFully(fc, ByteBuffer.wrap(existing.toByteArray()));
-
-        // Write the new incoming chunk fully
-        int dataSize = data.remaining();
-        writeFully(fc, data);
-
-        return new DataState(null, fc, new AtomicLong(existing.size() + dataSize));
+        return sessions.size();
     }
 
-    private void writeToChannel(FileChannel fc, AtomicLong pos, ByteBuffer data) throws IOException
+    /**
+     * @return The number of leaked sessions released by the reaper since startup
+     */
+    public long getReapedSessions()
     {
-        final int bytesToWrite = data.remaining();
-        final long startOffset = pos.getAndAdd(bytesToWrite);
-        writeFully(fc, data, startOffset);
+        return reapedSessions.sum();
     }
 
-    public void cleanup(String requestId)
+    /**
+     * @return The number of orphaned body files deleted by the reaper since startup
+     */
+    public long getReapedFiles()
     {
-        logger.debug("Cleanup {}", requestId);
-        cleanupDirection(ServerDirection.REQUEST, requestId);
-        cleanupDirection(ServerDirection.RESPONSE, requestId);
+        return reapedFiles.sum();
     }
 
-    private void cleanupDirection(ServerDirection dir, String requestId)
+    /**
+     * Release the sessions left idle for longer than the session TTL, as some reference was never given back, and delete
+     * transient body files left behind without a session, like after a crash
+     */
+    void reap()
     {
-        String key = getPoolKey(dir, requestId);
-        DataState state = statePool.remove(key);
-        if (state != null && state.channel != null)
+        try
         {
-            try
+            final long now = System.nanoTime();
+            for (Session session : sessions.values())
             {
-                state.channel.close();
-                deleteAndReport(dir, requestId, "body", "Unable to clean up body file for {} for {}");
-                if (logger.isDebugEnabled())
+                if (now - session.lastActiveNanos > sessionTtlNanos && session.close())
                 {
-                    logger.debug("Deleted {} disk buffer for {}. File size {}B", dir, requestId, state.position.get());
+                    reapedSessions.increment();
+                    logger.warn("Released capture session {}, left idle for more than {}", session.requestId, Duration.ofNanos(sessionTtlNanos));
                 }
             }
-            catch (IOException exc)
-            {
-                logger.warn(exc.getMessage(), exc);
-            }
+            reapFiles(Instant.now().minusNanos(sessionTtlNanos));
+        }
+        catch (Exception exc)
+        {
+            logger.error("Error reaping capture sessions", exc);
         }
-
-        deleteAndReport(dir, requestId, "headers", "Unable to clean up headers file for {} for {}");
     }
 
-    private void deleteAndReport(ServerDirection dir, String requestId, String headers, String format)
+    private void reapFiles(Instant cutoff) throws IOException
     {
-        try
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(basePath, "*.{body,body.gz}"))
         {
-            if (!Files.deleteIfExists(getPath(dir, requestId, headers)))
+            for (Path file : files)
             {
-                logger.warn(format, dir.name().toLowerCase(), requestId);
+                final Optional<String> requestId = CaptureFiles.transientBodyRequestId(file);
+                if (requestId.isEmpty() || sessions.containsKey(requestId.get()) || Files.getLastModifiedTime(file).toInstant().isAfter(cutoff))
+                {
+                    continue;
+                }
+
+                if (Files.deleteIfExists(file))
+                {
+                    reapedFiles.increment();
+                    logger.warn("Deleted orphaned body file {}", file);
+                }
             }
         }
-        catch (IOException exc)
-        {
-            logger.warn("Error deleting transient file {}", requestId, exc);
-        }
     }
 
-    private String getPoolKey(ServerDirection dir, String id)
+    @Override
+    public CaptureSession open(String requestId)
     {
-        return id + "_" + dir.name();
+        final Session session = new Session(requestId);
+        sessions.put(requestId, session);
+        return session;
     }
 
-    private Path getPath(ServerDirection dir, String id, String suffix)
+    /**
+     * Stop the capture writer after it has written everything queued so far
+     */
+    public void close()
     {
-        return basePath.resolve(id + "_" + dir.name().toLowerCase() + "." + suffix);
+        reaper.shutdownNow();
+        writer.close();
+        spillStore.close();
     }
 
-    @Override
-    public Optional<BodyProvider> getBody(ServerDirection dir, String id)
+    private byte[] serialize(HttpHeaders headers)
     {
-        final String contentEncoding = getHeaders(dir, id)
-                .orElseThrow(() -> new IllegalArgumentException("Missing headers for " + id))
-                .getFirst(HttpHeaders.CONTENT_ENCODING);
-        final DataState state = statePool.get(getPoolKey(dir, id));
-        if (state == null) return Optional.empty();
-
-        if (state.memoryBuffer != null)
+        final StringBuilder sb = new StringBuilder(512);
+        headers.forEach((name, values) ->
         {
-            return Optional.of(new BodyProvider(state.memoryBuffer.toByteArray(), contentEncoding));
-        }
-        return Optional.of(new BodyProvider(getPath(dir, id, "body"), contentEncoding));
+            for (String value : values)
+            {
+                // We repeat the header name for multi-values (Standard Wire Format)
+                // This is safer than comma-separation for things like Set-Cookie
+                sb.append(name).append(": ").append(value).append("\r\n");
+            }
+        });
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
     }
 
     public void archive(WebExchangeDataProvider data, final Path archiveDir)
     {
-        final String requestId = data.getRequestId();
         archive(data, ServerDirection.REQUEST, archiveDir);
         archive(data, ServerDirection.RESPONSE, archiveDir);
     }
 
-    public void persistForError(String requestId)
+    private void archive(WebExchangeDataProvider data, ServerDirection direction, Path archiveDir)
     {
-        persistDirection(ServerDirection.REQUEST, requestId);
-        persistDirection(ServerDirection.RESPONSE, requestId);
+        final CaptureSession session = data.getCaptureSession();
+        session.getHeaders(direction).ifPresent(header -> archiveCombined(data, direction, header, session.getBody(direction).orElse(BodyProvider.NONE), archiveDir));
     }
 
-    private void persistDirection(ServerDirection dir, String requestId)
+    private void archiveCombined(WebExchangeDataProvider data, ServerDirection dir, HttpHeaders headers, BodyProvider bodyProvider, Path archiveDir)
     {
-        final String key = getPoolKey(dir, requestId);
-        final DataState state = statePool.get(key);
-
-        if (state != null && state.memoryBuffer() != null)
+        if (compression == SpillCompression.GZIP && bodyProvider.contentEncoding() == null)
         {
-            // It was in RAM, move it to disk so it survives a bit longer
-            try
-            {
-                Path errorPath = basePath.resolve("error_" + requestId + "_" + dir.name().toLowerCase() + ".body");
-                Files.write(errorPath, state.memoryBuffer().toByteArray());
-                logger.error("Logger failed. Saved RAM buffer to {}", errorPath);
-            }
-            catch (IOException e)
-            {
-                logger.error("Double failure: Could not even save RAM buffer to disk!", e);
-            }
+            archiveCompressed(data, dir, headers, bodyProvider, archiveDir);
+            return;
         }
-    }
-
 
-    private void archive(WebExchangeDataProvider data, ServerDirection direction, Path archiveDir)
-    {
-        final String requestId = data.getRequestId();
-        final Optional<HttpHeaders> headers = getHeaders(direction, requestId);
-        headers.ifPresent(header -> archiveCombined(data, direction, header, getBody(direction, requestId).orElse(BodyProvider.NONE), archiveDir));
-
-    }
-
-    private void archiveCombined(WebExchangeDataProvider data, ServerDirection dir, HttpHeaders headers, BodyProvider bodyProvider, Path archiveDir)
-    {
         final String requestId = data.getRequestId();
         final String fileName = requestId + "_" + dir.name().toLowerCase() + ".raw";
         final Path target = archiveDir.resolve(fileName);
@@ -364,31 +308,25 @@ public class DefaultDataBufferRepository implements DataBufferRepository
         ))
         {
             // HTTP line
-            writeFully(out, ByteBuffer.wrap(buildStartLine(data, dir).getBytes(StandardCharsets.UTF_8)));
+            IoUtil.writeFully(out, ByteBuffer.wrap(buildStartLine(data, dir).getBytes(StandardCharsets.UTF_8)));
 
             // Headers
             byte[] headerBytes = serialize(headers);
-            writeFully(out, ByteBuffer.wrap(headerBytes));
-            writeFully(out, ByteBuffer.wrap("\r\n".getBytes(StandardCharsets.US_ASCII)));
+            IoUtil.writeFully(out, ByteBuffer.wrap(headerBytes));
+            IoUtil.writeFully(out, ByteBuffer.wrap("\r\n".getBytes(StandardCharsets.US_ASCII)));
 
-            // Body (zero copy)
-            if (bodyProvider.file() != null && Files.exists(bodyProvider.file()))
+            // Body
+            if (bodyProvider.gzipped())
             {
-                try (FileChannel in = FileChannel.open(bodyProvider.file(), StandardOpenOption.READ))
+                // Stored compressed, while the archive is not
+                try (InputStream in = bodyProvider.withoutDecoding().getInputStream())
                 {
-                    // transferTo appends at 'out's current position
-                    long totalTransferred = 0;
-                    long size = in.size();
-                    while (totalTransferred < size)
-                    {
-                        totalTransferred += in.transferTo(totalTransferred, size - totalTransferred, out);
-                    }
+                    in.transferTo(Channels.newOutputStream(out));
                 }
             }
-            // Handle memory-based bodies if they exist
-            else if (bodyProvider.bytes() != null)
+            else
             {
-                writeFully(out, ByteBuffer.wrap(bodyProvider.bytes()));
+                copyStored(bodyProvider, out);
             }
 
             logger.debug("Archived combined {} for {}", fileName, requestId);
@@ -399,6 +337,81 @@ public class DefaultDataBufferRepository implements DataBufferRepository
         }
     }
 
+    /**
+     * Archive gzip-compressed. A body that was spilled compressed is already a gzip member of its own, so it is appended
+     * as is, after a separate member for the start line and headers.
+     */
+    private void archiveCompressed(WebExchangeDataProvider data, ServerDirection dir, HttpHeaders headers, BodyProvider bodyProvider, Path archiveDir)
+    {
+        final String requestId = data.getRequestId();
+        final String fileName = requestId + "_" + dir.name().toLowerCase() + ".raw.gz";
+        final Path target = archiveDir.resolve(fileName);
+
+        try (FileChannel out = FileChannel.open(target,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        ))
+        {
+            if (bodyProvider.gzipped())
+            {
+                final ByteArrayOutputStream head = new ByteArrayOutputStream(1024);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(head))
+                {
+                    writeHead(gzip, data, dir, headers);
+                }
+                IoUtil.writeFully(out, ByteBuffer.wrap(head.toByteArray()));
+                copyStored(bodyProvider, out);
+            }
+            else
+            {
+                // Closes the channel as well, which is fine to close twice
+                try (GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(out), ARCHIVE_BUFFER_SIZE);
+                     InputStream in = bodyProvider.getInputStream())
+                {
+                    writeHead(gzip, data, dir, headers);
+                    in.transferTo(gzip);
+                }
+            }
+
+            logger.debug("Archived compressed {} for {}", fileName, requestId);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to archive " + requestId, e);
+        }
+    }
+
+    private void writeHead(OutputStream out, WebExchangeDataProvider data, ServerDirection dir, HttpHeaders headers) throws IOException
+    {
+        out.write(buildStartLine(data, dir).getBytes(StandardCharsets.UTF_8));
+        out.write(serialize(headers));
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void copyStored(BodyProvider bodyProvider, FileChannel out) throws IOException
+    {
+        // Zero copy for files
+        if (bodyProvider.file() != null && Files.exists(bodyProvider.file()))
+        {
+            try (FileChannel in = FileChannel.open(bodyProvider.file(), StandardOpenOption.READ))
+            {
+                // transferTo appends at 'out's current position
+                long totalTransferred = 0;
+                long size = in.size();
+                while (totalTransferred < size)
+                {
+                    totalTransferred += in.transferTo(totalTransferred, size - totalTransferred, out);
+                }
+            }
+        }
+        // Handle memory-based bodies if they exist
+        else if (bodyProvider.buffers() != null)
+        {
+            IoUtil.writeFully(out, bodyProvider.buffers());
+        }
+    }
+
     private String buildStartLine(WebExchangeDataProvider data, ServerDirection dir)
     {
         if (dir == ServerDirection.REQUEST)
@@ -435,12 +448,429 @@ public class DefaultDataBufferRepository implements DataBufferRepository
         };
     }
 
-    // Helper record to manage the toggle between RAM and Disk
-    private record DataState(
-            ByteArrayOutputStream memoryBuffer,
-            FileChannel channel,
-            AtomicLong position
-    )
+    /**
+     * A reference counted capture session. The data is released with the last reference, or by the reaper once the
+     * session was left idle for longer than the session TTL. Capturing data, completing a body, and taking or giving
+     * back a reference count as activity, so the TTL runs from the last hand-over, not from the start of the request.
+     */
+    private class Session implements CaptureSession
+    {
+        private final String requestId;
+        private final DataState request;
+        private final DataState response;
+        private volatile long lastActiveNanos = System.nanoTime();
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Session(String requestId)
+        {
+            this.requestId = requestId;
+            this.request = new DataState(this, ServerDirection.REQUEST);
+            this.response = new DataState(this, ServerDirection.RESPONSE);
+        }
+
+        private void touch()
+        {
+            lastActiveNanos = System.nanoTime();
+        }
+
+        private DataState state(ServerDirection direction)
+        {
+            return direction == ServerDirection.REQUEST ? request : response;
+        }
+
+        @Override
+        public CaptureSink sink(ServerDirection direction)
+        {
+            return state(direction);
+        }
+
+        @Override
+        public void putHeaders(ServerDirection direction, HttpHeaders headers)
+        {
+            // Kept in memory only; written to disk if the exchange must survive a logger failure
+            state(direction).headers = headers;
+        }
+
+        @Override
+        public Optional<HttpHeaders> getHeaders(ServerDirection direction)
+        {
+            return Optional.ofNullable(state(direction).headers);
+        }
+
+        @Override
+        public Optional<BodyProvider> getBody(ServerDirection direction)
+        {
+            return state(direction).getBody();
+        }
+
+        @Override
+        public boolean isTruncated(ServerDirection direction)
+        {
+            return state(direction).truncated;
+        }
+
+        @Override
+        public void persistForError(final WebExchangeDataProvider exchange)
+        {
+            final boolean spilled = request.persist(true) | response.persist(true);
+            if (spilled)
+            {
+                // The record makes the exchange recoverable, so its bodies must be in place first
+                writer.barrier().join();
+            }
+            try
+            {
+                ExchangeRecord.persist(exchange, basePath);
+            }
+            catch (IOException e)
+            {
+                logger.error("Failed to persist the record of {}", requestId, e);
+            }
+            release();
+        }
+
+        @Override
+        public void persistBodies()
+        {
+            final boolean spilled = request.persist(false) | response.persist(false);
+            if (spilled)
+            {
+                // The caller records the exchange next, which must not be read back before its bodies are in place
+                writer.barrier().join();
+            }
+            release();
+        }
+
+        @Override
+        public CaptureSession retain()
+        {
+            touch();
+            if (references.getAndIncrement() <= 0)
+            {
+                logger.warn("Capture session {} retained after it was released", requestId);
+            }
+            return this;
+        }
+
+        @Override
+        public void release()
+        {
+            touch();
+            final int remaining = references.decrementAndGet();
+            if (remaining == 0)
+            {
+                close();
+            }
+            else if (remaining < 0)
+            {
+                logger.warn("Capture session {} released more times than retained", requestId);
+            }
+        }
+
+        /**
+         * @return Whether this call closed the session
+         */
+        private boolean close()
+        {
+            if (!closed.compareAndSet(false, true))
+            {
+                return false;
+            }
+
+            logger.debug("Cleanup {}", requestId);
+            sessions.remove(requestId, this);
+            request.release();
+            response.release();
+            return true;
+        }
+    }
+
+    /**
+     * The body state of one direction, toggling from RAM to the {@link SpillStore} when the threshold is crossed.
+     * <p>
+     * Once spilled, all disk I/O is done by the capture writer thread, which is the only thread touching
+     * {@link #spill} apart from reading the body after all writes have completed.
+     * <p>
+     * The state is guarded by its monitor, which is uncontended unless the reaper releases a session that is still in
+     * use. Once released or persisted, further data is ignored, so nothing is captured into a released session.
+     */
+    private class DataState implements CaptureSink
     {
+        private final Session session;
+        private final String requestId;
+        private final ServerDirection direction;
+        private volatile HttpHeaders headers;
+        private ArenaBuffer memoryBuffer;
+        private SpillStore.Spill spill;
+        private volatile boolean truncated;
+        private boolean encoded;
+        private boolean spillFailed;
+        private boolean closed;
+        private long size;
+        private long spilled;
+
+        private DataState(Session session, ServerDirection direction)
+        {
+            this.session = session;
+            this.requestId = session.requestId;
+            this.direction = direction;
+        }
+
+        @Override
+        public synchronized void expect(long contentLength, String contentEncoding)
+        {
+            // Already compressed bodies are not worth compressing again
+            encoded = contentEncoding != null && !contentEncoding.equalsIgnoreCase("identity");
+
+            if (closed || contentLength <= 0 || contentLength > effectiveThreshold() || memoryBuffer != null || spill != null)
+            {
+                // Unknown, empty, going straight to disk or already started
+                return;
+            }
+
+            memoryBuffer = new ArenaBuffer(arena);
+            if (!memoryBuffer.reserve(contentLength))
+            {
+                logger.debug("Capture arena exhausted, unable to pre-size {} buffer of {} bytes for {}", direction, contentLength, requestId);
+            }
+        }
+
+        /**
+         * Deterministic write logic. Checks threshold and hands the data to the capture writer if necessary.
+         */
+        @Override
+        public synchronized void write(ByteBuffer data)
+        {
+            session.touch();
+            if (truncated || closed)
+            {
+                return;
+            }
+
+            final int bytesToWrite = data.remaining();
+            if (spill == null)
+            {
+                if (size + bytesToWrite <= effectiveThreshold() && memory().write(data))
+                {
+                    size += bytesToWrite;
+                    return;
+                }
+
+                // Crossing the threshold, or the arena is exhausted
+                spill();
+            }
+
+            if (enqueue(data))
+            {
+                size += bytesToWrite;
+            }
+        }
+
+        private ArenaBuffer memory()
+        {
+            if (memoryBuffer == null)
+            {
+                memoryBuffer = new ArenaBuffer(arena);
+            }
+            return memoryBuffer;
+        }
+
+        private void spill()
+        {
+            final SpillStore.Spill target = spillStore.create(requestId, direction, compression == SpillCompression.GZIP && !encoded);
+            spill = target;
+            openSpills.incrementAndGet();
+            spillCount.increment();
+
+            // The accumulated memory buffer is handed over as is, and returned to the arena once written
+            final ArenaBuffer accumulated = memoryBuffer;
+            memoryBuffer = null;
+            if (accumulated != null)
+            {
+                countSpilled(accumulated.size());
+                writer.submit(0, () ->
+                {
+                    try
+                    {
+                        for (ByteBuffer view : accumulated.views())
+                        {
+                            spillWrite(target, view);
+                        }
+                    } finally
+                    {
+                        accumulated.release();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public synchronized void complete()
+        {
+            session.touch();
+            final SpillStore.Spill target = spill;
+            if (target != null)
+            {
+                // Queued behind the pending writes, so the spill is finished before the body is read
+                writer.submit(0, () ->
+                {
+                    if (!spillFailed)
+                    {
+                        target.finish();
+                    }
+                });
+            }
+        }
+
+        private boolean enqueue(ByteBuffer data)
+        {
+            final int length = data.remaining();
+            while (!writer.tryAcquire(length))
+            {
+                if (overflowPolicy == OverflowPolicy.TRUNCATE)
+                {
+                    truncated = true;
+                    logger.debug("Capture writer is lagging, truncating {} body for {} at {} bytes", direction, requestId, size);
+                    return false;
+                }
+                LockSupport.parkNanos(OVERFLOW_BACKOFF_NANOS);
+            }
+
+            final SpillStore.Spill target = spill;
+            final ByteBuffer copy = ByteBuffer.allocate(length).put(data).flip();
+            countSpilled(length);
+            writer.submit(length, () -> spillWrite(target, copy));
+            return true;
+        }
+
+        private void countSpilled(long bytes)
+        {
+            spilled += bytes;
+            spilledBytes.addAndGet(bytes);
+        }
+
+        private void discardSpill()
+        {
+            spilledBytes.addAndGet(-spilled);
+            openSpills.decrementAndGet();
+            spilled = 0;
+            spill = null;
+        }
+
+        /**
+         * Runs on the capture writer thread
+         */
+        private void spillWrite(SpillStore.Spill target, ByteBuffer data) throws IOException
+        {
+            if (spillFailed)
+            {
+                return;
+            }
+
+            try
+            {
+                target.write(data);
+            }
+            catch (IOException exc)
+            {
+                spillFailed = true;
+                truncated = true;
+                throw exc;
+            }
+        }
+
+        private void awaitWrites()
+        {
+            if (spill != null)
+            {
+                writer.barrier().join();
+            }
+        }
+
+        private synchronized Optional<BodyProvider> getBody()
+        {
+            final String contentEncoding = Optional.ofNullable(headers).map(h -> h.getFirst(HttpHeaders.CONTENT_ENCODING)).orElse(null);
+            if (spill != null)
+            {
+                awaitWrites();
+                return Optional.of(spill.body(contentEncoding));
+            }
+            else if (memoryBuffer != null && size > 0)
+            {
+                return Optional.of(new BodyProvider(memoryBuffer.views(), contentEncoding));
+            }
+            return Optional.empty();
+        }
+
+        /**
+         * @return Whether a spilled body is left for the capture writer to persist
+         */
+        private synchronized boolean persist(boolean includeHeaders)
+        {
+            closed = true;
+            if (includeHeaders && headers != null)
+            {
+                final Path headersPath = CaptureFiles.errorHeadersFile(basePath, requestId, direction);
+                try
+                {
+                    Files.write(headersPath, serialize(headers));
+                }
+                catch (IOException e)
+                {
+                    logger.error("Failed to persist {} headers for {}", direction, requestId, e);
+                }
+            }
+
+            if (memoryBuffer != null)
+            {
+                // It was in RAM, move it to disk so it survives a bit longer
+                try
+                {
+                    Path errorPath = CaptureFiles.errorBodyFile(basePath, requestId, direction, false);
+                    new BodyProvider(memoryBuffer.views(), null).moveTo(errorPath);
+                    if (includeHeaders)
+                    {
+                        logger.error("Logger failed. Saved RAM buffer to {}", errorPath);
+                    }
+                    else
+                    {
+                        logger.debug("Saved RAM buffer to {}", errorPath);
+                    }
+                }
+                catch (UncheckedIOException e)
+                {
+                    logger.error("Double failure: Could not even save RAM buffer to disk!", e);
+                } finally
+                {
+                    // The arena is shared and bounded, so the segments must not outlive the request
+                    memoryBuffer.release();
+                    memoryBuffer = null;
+                }
+            }
+            else if (spill != null)
+            {
+                // Queued behind the pending writes, and only once
+                writer.submit(0, spill::persist);
+                discardSpill();
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void release()
+        {
+            closed = true;
+            if (memoryBuffer != null)
+            {
+                memoryBuffer.release();
+                memoryBuffer = null;
+            }
+            else if (spill != null)
+            {
+                writer.submit(0, spill::release);
+                discardSpill();
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -7,7 +7,7 @@ import java.nio.ByteBuffer;
 import org.jetbrains.annotations.NotNull;
 
 import com.ethlo.chronograph.Chronograph;
-import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.capture.CaptureSink;
 import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,16 +16,14 @@ import jakarta.servlet.http.HttpServletRequestWrapper;
 public class MvcRequestCapture extends HttpServletRequestWrapper
 {
     private final Chronograph chronograph;
-    private final String requestId;
-    private final DataBufferRepository repository;
+    private final CaptureSink sink;
     private ServletInputStream inputStream;
 
-    public MvcRequestCapture(Chronograph chronograph, HttpServletRequest request, String requestId, DataBufferRepository repository)
+    public MvcRequestCapture(Chronograph chronograph, HttpServletRequest request, CaptureSink sink)
     {
         super(request);
         this.chronograph = chronograph;
-        this.requestId = requestId;
-        this.repository = repository;
+        this.sink = sink;
     }
 
     @Override
@@ -70,7 +68,8 @@ public class MvcRequestCapture extends HttpServletRequestWrapper
             int b = delegate.read();
             if (b != -1)
             {
-                chronograph.time("request_body_capture", () -> repository.writeBody(ServerDirection.REQUEST, requestId, ByteBuffer.wrap(new byte[]{(byte) b})));
+                // Coalesced by the sink, so not worth a timing span per byte
+                sink.write(b);
             }
             return b;
         }
@@ -81,7 +80,7 @@ public class MvcRequestCapture extends HttpServletRequestWrapper
             int read = delegate.read(b, off, len);
             if (read > 0)
             {
-                chronograph.time("request_body_capture", () -> repository.writeBody(ServerDirection.REQUEST, requestId, ByteBuffer.wrap(b, off, read)));
+                chronograph.time("request_body_capture", () -> sink.write(ByteBuffer.wrap(b, off, read)));
             }
             return read;
         }
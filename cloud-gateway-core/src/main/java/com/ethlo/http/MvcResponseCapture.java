@@ -7,9 +7,10 @@ import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 
 import org.jetbrains.annotations.NotNull;
+import org.springframework.http.HttpHeaders;
 
 import com.ethlo.chronograph.Chronograph;
-import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.capture.CaptureSink;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletResponse;
@@ -18,17 +19,16 @@ import jakarta.servlet.http.HttpServletResponseWrapper;
 public class MvcResponseCapture extends HttpServletResponseWrapper
 {
     private final Chronograph chronograph;
-    private final String requestId;
-    private final DataBufferRepository repository;
+    private final CaptureSink sink;
     private LoggingOutputStream loggingStream;
     private PrintWriter writer;
+    private boolean bodyExpected;
 
-    public MvcResponseCapture(final Chronograph chronograph, HttpServletResponse response, String requestId, DataBufferRepository repository)
+    public MvcResponseCapture(final Chronograph chronograph, HttpServletResponse response, CaptureSink sink)
     {
         super(response);
         this.chronograph = chronograph;
-        this.requestId = requestId;
-        this.repository = repository;
+        this.sink = sink;
     }
 
     @Override
@@ -83,6 +83,32 @@ public class MvcResponseCapture extends HttpServletResponseWrapper
         );
     }
 
+    private void expectBody()
+    {
+        if (!bodyExpected)
+        {
+            // Headers are committed before the first body byte, so the length (if any) is known by now
+            bodyExpected = true;
+            sink.expect(parseContentLength(getHeader(HttpHeaders.CONTENT_LENGTH)), getHeader(HttpHeaders.CONTENT_ENCODING));
+        }
+    }
+
+    private static long parseContentLength(String value)
+    {
+        if (value == null)
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException exc)
+        {
+            return -1;
+        }
+    }
 
     private class LoggingOutputStream extends ServletOutputStream
     {
@@ -103,9 +129,9 @@ public class MvcResponseCapture extends HttpServletResponseWrapper
         public void write(int b) throws IOException
         {
             delegate.write(b);
-            chronograph.time("response_body_capture", () ->
-                    repository.writeBody(ServerDirection.RESPONSE, requestId, ByteBuffer.wrap(new byte[]{(byte) b}))
-            );
+            expectBody();
+            // Coalesced by the sink, so not worth a timing span per byte
+            sink.write(b);
         }
 
         @Override
@@ -114,8 +140,9 @@ public class MvcResponseCapture extends HttpServletResponseWrapper
             delegate.write(b, off, len);
             if (len > 0)
             {
+                expectBody();
                 chronograph.time("response_body_capture", () ->
-                        repository.writeBody(ServerDirection.RESPONSE, requestId, ByteBuffer.wrap(b, off, len))
+                        sink.write(ByteBuffer.wrap(b, off, len))
                 );
             }
         }
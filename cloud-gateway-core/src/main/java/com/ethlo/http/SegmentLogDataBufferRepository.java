@@ -0,0 +1,27 @@
+package com.ethlo.http;
+
+import java.io.IOException;
+
+import org.springframework.util.unit.DataSize;
+
+import com.ethlo.http.capture.SegmentLogStore;
+import com.ethlo.http.logger.CaptureConfiguration;
+
+/**
+ * Spills bodies into shared segment files instead of a file per request and direction, avoiding file creation,
+ * deletion and an open descriptor per spilled body under load
+ */
+public class SegmentLogDataBufferRepository extends DefaultDataBufferRepository
+{
+    private static final int RETAINED_SEGMENTS = 4;
+
+    public SegmentLogDataBufferRepository(CaptureConfiguration config, DataSize threshold) throws IOException
+    {
+        super(config, threshold, new SegmentLogStore(
+                config.getLogDirectory().resolve("segments"),
+                config.getLogDirectory(),
+                Math.toIntExact(config.getSegmentSize().toBytes()),
+                RETAINED_SEGMENTS
+        ));
+    }
+}
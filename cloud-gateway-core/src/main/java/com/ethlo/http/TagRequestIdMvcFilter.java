@@ -20,15 +20,21 @@ import org.slf4j.LoggerFactory;
 import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
 import org.springframework.core.NestedExceptionUtils;
 import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.ethlo.chronograph.Chronograph;
+import com.ethlo.http.capture.BodyCapture;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.CaptureSink;
+import com.ethlo.http.capture.CoalescingCaptureSink;
 import com.ethlo.http.configuration.HttpLoggingConfiguration;
 import com.ethlo.http.logger.LoggingFilterService;
 import com.ethlo.http.logger.delegate.DelegateHttpLogger;
+import com.ethlo.http.match.LogOptions;
 import com.ethlo.http.model.WebExchangeDataProvider;
 import com.ethlo.http.netty.PredicateConfig;
 import com.ethlo.http.netty.ServerDirection;
@@ -128,14 +134,34 @@ public class TagRequestIdMvcFilter extends OncePerRequestFilter implements Order
     }
 
     private void handleMatch(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, @NotNull FilterChain filterChain, Chronograph chronograph, String requestId, PredicateConfig matchedConfig)
+    {
+        final PredicateConfig mergedConfig = loggingFilterService.merge(matchedConfig);
+        final CaptureSession session = repository.open(requestId);
+        try
+        {
+            captureExchange(request, response, filterChain, chronograph, requestId, matchedConfig, mergedConfig, session);
+        } finally
+        {
+            // The loggers hold a reference of their own once the exchange is handed over, so this only releases the
+            // capture if something failed before that
+            session.release();
+        }
+    }
+
+    private void captureExchange(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, @NotNull FilterChain filterChain, Chronograph chronograph, String requestId, PredicateConfig matchedConfig, PredicateConfig mergedConfig, CaptureSession session)
     {
         // Write Request headers immediately
         chronograph.time("persist_request_headers", () ->
-                repository.putHeaders(ServerDirection.REQUEST, requestId, sanitizeHeaders(matchedConfig.request().headers(), ServletUtil.extractHeaders(request)))
+                session.putHeaders(ServerDirection.REQUEST, sanitizeHeaders(matchedConfig.request().headers(), ServletUtil.extractHeaders(request)))
         );
+        final BodyCapture requestCapture = capture(session, ServerDirection.REQUEST, mergedConfig.request());
+        final BodyCapture responseCapture = capture(session, ServerDirection.RESPONSE, mergedConfig.response());
+        final CaptureSink requestSink = new CoalescingCaptureSink(requestCapture);
+        final CaptureSink responseSink = new CoalescingCaptureSink(responseCapture);
+        requestSink.expect(request.getContentLengthLong(), request.getHeader(HttpHeaders.CONTENT_ENCODING));
 
-        final MvcRequestCapture wrappedRequest = new MvcRequestCapture(chronograph, request, requestId, repository);
-        final MvcResponseCapture wrappedResponse = new MvcResponseCapture(chronograph, response, requestId, repository);
+        final MvcRequestCapture wrappedRequest = new MvcRequestCapture(chronograph, request, requestSink);
+        final MvcResponseCapture wrappedResponse = new MvcResponseCapture(chronograph, response, responseSink);
 
         Throwable connectionException = null;
         try
@@ -154,7 +180,7 @@ public class TagRequestIdMvcFilter extends OncePerRequestFilter implements Order
             );
 
             chronograph.time("persist_response_headers", () ->
-                    repository.putHeaders(ServerDirection.RESPONSE, requestId, sanitizeHeaders(matchedConfig.response().headers(), ServletUtil.extractHeaders(response)))
+                    session.putHeaders(ServerDirection.RESPONSE, sanitizeHeaders(matchedConfig.response().headers(), ServletUtil.extractHeaders(response)))
             );
 
             chronograph.time("buffer_flush", wrappedResponse::copyBodyToResponse);
@@ -165,13 +191,26 @@ public class TagRequestIdMvcFilter extends OncePerRequestFilter implements Order
             handleException(connectionException, requestId, request, response);
         } finally
         {
+            requestSink.complete();
+            responseSink.complete();
+
             final Throwable finalExc = connectionException;
             chronograph.time("logging", () ->
-                    saveLog(wrappedRequest, wrappedResponse, requestId, chronograph, finalExc, loggingFilterService.merge(matchedConfig))
+                    saveLog(wrappedRequest, wrappedResponse, requestId, session, requestCapture, responseCapture, chronograph, finalExc, mergedConfig)
             );
         }
     }
 
+    private static BodyCapture capture(CaptureSession session, ServerDirection direction, LogOptions logOptions)
+    {
+        if (!logOptions.mustStore())
+        {
+            // Only the size is needed, so the bytes never reach the repository
+            return new BodyCapture(CaptureSink.NOP, Long.MAX_VALUE, 0);
+        }
+        return new BodyCapture(session.sink(direction), logOptions.bodyLimit(), logOptions.bodyTail());
+    }
+
     private String generateId()
     {
         final String timestampPart = Long.toString(Instant.now().toEpochMilli(), 36);
@@ -179,16 +218,17 @@ public class TagRequestIdMvcFilter extends OncePerRequestFilter implements Order
         return timestampPart + "-" + randomPart;
     }
 
-    private void saveLog(MvcRequestCapture req, MvcResponseCapture res, String requestId, Chronograph chronograph, Throwable exc, final PredicateConfig mergedConfig)
+    private void saveLog(MvcRequestCapture req, MvcResponseCapture res, String requestId, CaptureSession session, BodyCapture requestCapture, BodyCapture responseCapture, Chronograph chronograph, Throwable exc, final PredicateConfig mergedConfig)
     {
         final WebExchangeDataProvider provider = chronograph.time("prepare_log_data", () ->
                 {
                     final Duration requestTime = chronograph.getTotalTime();
 
                     final Route route = getRoute(req);
-                    return new WebExchangeDataProvider(repository, mergedConfig)
+                    return new WebExchangeDataProvider(session, mergedConfig)
                             .requestId(requestId)
-                            .cleanupTask(() -> repository.cleanup(requestId))
+                            .cleanupTask(session::release)
+                            .bodyCapture(requestCapture, responseCapture)
                             .method(HttpMethod.valueOf(req.getMethod().toUpperCase()))
                             .path(req.getRequestURI())
                             .protocol(req.getProtocol())
@@ -201,6 +241,8 @@ public class TagRequestIdMvcFilter extends OncePerRequestFilter implements Order
                 }
         );
 
+        // Given back by the cleanup task, or when persisting for a logger error
+        session.retain();
         chronograph.time("log_providers", () -> delegateHttpLogger.accessLog(chronograph, logPreProcessor.process(provider)));
     }
 
@@ -0,0 +1,106 @@
+package com.ethlo.http.capture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A growable body buffer backed by segments from a {@link BufferArena}.
+ * <p>
+ * Not thread-safe: a body is written by one thread at a time, and read only after writing has completed.
+ */
+public class ArenaBuffer
+{
+    private final BufferArena arena;
+    private final List<ByteBuffer> segments = new ArrayList<>(4);
+    private long size;
+
+    public ArenaBuffer(BufferArena arena)
+    {
+        this.arena = arena;
+    }
+
+    /**
+     * Ensure that the buffer can hold the given number of bytes in total without further allocation.
+     *
+     * @param expectedSize The expected total size, typically from the <code>Content-Length</code> header
+     * @return <code>true</code> if the space could be reserved
+     */
+    public boolean reserve(long expectedSize)
+    {
+        final int needed = segmentsFor(expectedSize) - segments.size();
+        if (needed <= 0)
+        {
+            return true;
+        }
+
+        final List<ByteBuffer> allocated = arena.allocate(needed);
+        if (allocated == null)
+        {
+            return false;
+        }
+        segments.addAll(allocated);
+        return true;
+    }
+
+    /**
+     * Append the remaining bytes of <code>data</code>. The write is all or nothing.
+     *
+     * @param data The data to append
+     * @return <code>false</code> if the arena had no room left, in which case nothing was written
+     */
+    public boolean write(ByteBuffer data)
+    {
+        final int length = data.remaining();
+        if (!reserve(size + length))
+        {
+            return false;
+        }
+
+        int index = (int) (size / arena.getSegmentSize());
+        while (data.hasRemaining())
+        {
+            final ByteBuffer segment = segments.get(index++);
+            final int chunk = Math.min(segment.remaining(), data.remaining());
+            segment.put(segment.position(), data, data.position(), chunk);
+            segment.position(segment.position() + chunk);
+            data.position(data.position() + chunk);
+        }
+        size += length;
+        return true;
+    }
+
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return Read-only views of the written data. The views are only valid until {@link #release()} is called.
+     */
+    public List<ByteBuffer> views()
+    {
+        final List<ByteBuffer> views = new ArrayList<>(segments.size());
+        for (ByteBuffer segment : segments)
+        {
+            if (segment.position() == 0)
+            {
+                break;
+            }
+            views.add(segment.asReadOnlyBuffer().flip());
+        }
+        return views;
+    }
+
+    public void release()
+    {
+        segments.forEach(arena::release);
+        segments.clear();
+        size = 0;
+    }
+
+    private int segmentsFor(long bytes)
+    {
+        return (int) ((bytes + arena.getSegmentSize() - 1) / arena.getSegmentSize());
+    }
+}
@@ -0,0 +1,173 @@
+package com.ethlo.http.capture;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Performs the disk I/O of body capture on a dedicated thread, so the thread serving the client never waits
+ * for the capture directory.
+ * <p>
+ * Tasks are handed over through a lock-free queue and executed in submission order. The number of bytes waiting
+ * to be written is bounded; callers decide what to do when {@link #tryAcquire(long)} fails.
+ * <p>
+ * Tasks submitted while closing are still queued, and only run on the calling thread once the writer thread has
+ * drained the queue and exited, so they never run concurrently or out of order.
+ */
+public class AsyncCaptureWriter implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(AsyncCaptureWriter.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean idle = new AtomicBoolean();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final long maxPendingBytes;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean stopped;
+
+    public AsyncCaptureWriter(long maxPendingBytes)
+    {
+        this.maxPendingBytes = maxPendingBytes;
+        this.thread = Thread.ofPlatform().name("capture-writer").daemon().start(this::run);
+    }
+
+    /**
+     * Reserve room for data that is about to be submitted
+     *
+     * @param bytes The number of bytes
+     * @return <code>false</code> if the writer is lagging too far behind to accept more data
+     */
+    public boolean tryAcquire(long bytes)
+    {
+        long current;
+        do
+        {
+            current = pendingBytes.get();
+            if (current + bytes > maxPendingBytes && current > 0)
+            {
+                return false;
+            }
+        } while (!pendingBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    /**
+     * Queue a task for the writer thread
+     *
+     * @param acquiredBytes The number of bytes previously acquired with {@link #tryAcquire(long)}, released once the task has run
+     * @param task          The I/O to perform
+     */
+    public void submit(long acquiredBytes, IoTask task)
+    {
+        queue.offer(new Entry(acquiredBytes, task));
+        if (stopped)
+        {
+            // The writer thread has exited, so nobody else will pick it up
+            drain();
+            return;
+        }
+
+        if (idle.compareAndSet(true, false))
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return A future that completes once all tasks submitted before this call have run
+     */
+    public CompletableFuture<Void> barrier()
+    {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        submit(0, () -> future.complete(null));
+        return future;
+    }
+
+    public long getPendingBytes()
+    {
+        return pendingBytes.get();
+    }
+
+    private void run()
+    {
+        while (running || !queue.isEmpty())
+        {
+            final Entry entry = queue.poll();
+            if (entry == null)
+            {
+                idle.set(true);
+                if (queue.isEmpty() && running)
+                {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle.set(false);
+                continue;
+            }
+
+            execute(entry);
+        }
+
+        // A task queued after the loop ended is run by whoever sees the writer stopped, one at a time
+        stopped = true;
+        drain();
+    }
+
+    private synchronized void drain()
+    {
+        Entry entry;
+        while ((entry = queue.poll()) != null)
+        {
+            execute(entry);
+        }
+    }
+
+    private void execute(Entry entry)
+    {
+        try
+        {
+            entry.task().run();
+        }
+        catch (Exception exc)
+        {
+            logger.warn("Capture write failed: {}", exc.getMessage(), exc);
+        } finally
+        {
+            pendingBytes.addAndGet(-entry.bytes());
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+        try
+        {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    public interface IoTask
+    {
+        void run() throws IOException;
+    }
+
+    private record Entry(long bytes, IoTask task)
+    {
+    }
+}
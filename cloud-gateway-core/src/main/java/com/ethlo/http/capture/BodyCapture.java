@@ -0,0 +1,134 @@
+package com.ethlo.http.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Counts the bytes of a body and limits how many of them are passed on for storage.
+ * <p>
+ * With a limit in place, the first <code>limit - tail</code> bytes are passed on as they arrive, while the last
+ * <code>tail</code> bytes are kept in a ring buffer and passed on when the body is complete. Everything in between is
+ * only counted, so the capture cost is bounded regardless of the payload size.
+ */
+public class BodyCapture implements CaptureSink
+{
+    private final CaptureSink delegate;
+    private final long limit;
+    private final long headBytes;
+    private final int tailBytes;
+    private byte[] tail;
+    private int tailEnd;
+    private boolean tailFull;
+    private long total;
+    private boolean completed;
+
+    /**
+     * @param delegate  The sink storing the retained bytes
+     * @param limit     The maximum number of bytes to retain, {@link Long#MAX_VALUE} for no limit
+     * @param tailBytes The number of retained bytes to take from the end of the body
+     */
+    public BodyCapture(CaptureSink delegate, long limit, long tailBytes)
+    {
+        this.delegate = delegate;
+        this.limit = limit;
+        this.tailBytes = (int) Math.min(tailBytes, limit);
+        this.headBytes = limit - this.tailBytes;
+    }
+
+    @Override
+    public void write(ByteBuffer data)
+    {
+        final int length = data.remaining();
+        if (total < headBytes)
+        {
+            final int head = (int) Math.min(length, headBytes - total);
+            if (head == length)
+            {
+                // The delegate may leave the buffer position untouched
+                delegate.write(data);
+                data.position(data.limit());
+            }
+            else
+            {
+                delegate.write(data.slice(data.position(), head));
+                data.position(data.position() + head);
+            }
+        }
+
+        if (data.hasRemaining() && tailBytes > 0)
+        {
+            appendTail(data);
+        }
+
+        data.position(data.limit());
+        total += length;
+    }
+
+    @Override
+    public void expect(long contentLength, String contentEncoding)
+    {
+        delegate.expect(Math.min(contentLength, limit), contentEncoding);
+    }
+
+    @Override
+    public void complete()
+    {
+        if (completed)
+        {
+            return;
+        }
+        completed = true;
+
+        if (tail != null)
+        {
+            if (tailFull)
+            {
+                delegate.write(ByteBuffer.wrap(tail, tailEnd, tail.length - tailEnd));
+            }
+            delegate.write(ByteBuffer.wrap(tail, 0, tailEnd));
+            tail = null;
+        }
+        delegate.complete();
+    }
+
+    /**
+     * @return The total number of body bytes seen, retained or not
+     */
+    public long getTotalBytes()
+    {
+        return total;
+    }
+
+    /**
+     * @return Whether bytes were left out because the body exceeded the limit
+     */
+    public boolean isTruncated()
+    {
+        return total > limit;
+    }
+
+    private void appendTail(ByteBuffer data)
+    {
+        if (tail == null)
+        {
+            tail = new byte[tailBytes];
+        }
+
+        if (data.remaining() > tailBytes)
+        {
+            // Only the last bytes can end up in the tail
+            data.position(data.limit() - tailBytes);
+        }
+
+        while (data.hasRemaining())
+        {
+            final int chunk = Math.min(data.remaining(), tailBytes - tailEnd);
+            data.get(tail, tailEnd, chunk);
+            tailEnd += chunk;
+            if (tailEnd == tailBytes)
+            {
+                tailEnd = 0;
+                tailFull = true;
+            }
+        }
+    }
+}
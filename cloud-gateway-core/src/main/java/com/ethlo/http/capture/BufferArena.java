@@ -0,0 +1,130 @@
+package com.ethlo.http.capture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pooled, off-heap arena of fixed-size segments used for in-memory body capture.
+ * <p>
+ * Memory is allocated lazily in slabs of direct memory, which are sliced into segments and recycled through a
+ * free-list. Segments are never handed back to the operating system, so steady-state capture does not allocate.
+ * The arena never hands out more than its capacity; callers are expected to spill to disk when an allocation fails.
+ */
+public class BufferArena
+{
+    private static final Logger logger = LoggerFactory.getLogger(BufferArena.class);
+    private static final int SEGMENTS_PER_SLAB = 128;
+
+    private final int segmentSize;
+    private final long capacitySegments;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicLong availableSegments;
+    private long allocatedSegments;
+
+    public BufferArena(int segmentSize, long capacityBytes)
+    {
+        if (segmentSize <= 0)
+        {
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+        this.capacitySegments = Math.max(0, capacityBytes / segmentSize);
+        this.availableSegments = new AtomicLong(capacitySegments);
+        logger.info("Capture memory arena: {} segments of {} bytes", capacitySegments, segmentSize);
+    }
+
+    public int getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    public long getCapacity()
+    {
+        return capacitySegments * segmentSize;
+    }
+
+    /**
+     * @return The number of bytes currently handed out to capture buffers
+     */
+    public long getUsed()
+    {
+        return (capacitySegments - availableSegments.get()) * segmentSize;
+    }
+
+    /**
+     * Allocate the requested number of segments, all or nothing.
+     *
+     * @param count The number of segments
+     * @return The cleared segments, or <code>null</code> if the arena cannot satisfy the request
+     */
+    public List<ByteBuffer> allocate(int count)
+    {
+        if (!reserve(count))
+        {
+            return null;
+        }
+
+        final List<ByteBuffer> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ByteBuffer segment;
+            while ((segment = free.poll()) == null)
+            {
+                grow();
+            }
+            result.add(segment);
+        }
+        return result;
+    }
+
+    public void release(ByteBuffer segment)
+    {
+        segment.clear();
+        free.offer(segment);
+        availableSegments.incrementAndGet();
+    }
+
+    private boolean reserve(int count)
+    {
+        long current;
+        do
+        {
+            current = availableSegments.get();
+            if (current < count)
+            {
+                return false;
+            }
+        } while (!availableSegments.compareAndSet(current, current - count));
+        return true;
+    }
+
+    private synchronized void grow()
+    {
+        if (!free.isEmpty())
+        {
+            return;
+        }
+
+        // A reservation guarantees that fewer than capacitySegments are handed out, so there is always room to grow
+        final int segments = (int) Math.min(SEGMENTS_PER_SLAB, capacitySegments - allocatedSegments);
+        if (segments <= 0)
+        {
+            return;
+        }
+
+        final ByteBuffer slab = ByteBuffer.allocateDirect(segments * segmentSize);
+        for (int i = 0; i < segments; i++)
+        {
+            free.offer(slab.slice(i * segmentSize, segmentSize));
+        }
+        allocatedSegments += segments;
+        logger.debug("Allocated capture slab of {} bytes, total {} bytes", segments * segmentSize, allocatedSegments * segmentSize);
+    }
+}
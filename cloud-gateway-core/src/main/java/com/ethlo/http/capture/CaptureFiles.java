@@ -0,0 +1,169 @@
+package com.ethlo.http.capture;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import com.ethlo.http.netty.ServerDirection;
+
+/**
+ * Names of the files kept in the capture directory
+ */
+public final class CaptureFiles
+{
+    private static final String ERROR_PREFIX = "error_";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String COMPRESSED_BODY_SUFFIX = ".body.gz";
+    private static final String HEADERS_SUFFIX = ".headers";
+    private static final String EXCHANGE_SUFFIX = ".exchange";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private CaptureFiles()
+    {
+
+    }
+
+    /**
+     * @return The transient file of a body spilled from memory
+     */
+    public static Path bodyFile(Path directory, String requestId, ServerDirection direction, boolean compressed)
+    {
+        return directory.resolve(baseName(requestId, direction) + (compressed ? COMPRESSED_BODY_SUFFIX : BODY_SUFFIX));
+    }
+
+    /**
+     * @return The file a body is persisted to, when it must outlive the exchange
+     */
+    public static Path errorBodyFile(Path directory, String requestId, ServerDirection direction, boolean compressed)
+    {
+        return directory.resolve(ERROR_PREFIX + baseName(requestId, direction) + (compressed ? COMPRESSED_BODY_SUFFIX : BODY_SUFFIX));
+    }
+
+    public static Path errorHeadersFile(Path directory, String requestId, ServerDirection direction)
+    {
+        return directory.resolve(ERROR_PREFIX + baseName(requestId, direction) + HEADERS_SUFFIX);
+    }
+
+    /**
+     * @return The file holding the {@link ExchangeRecord} of an exchange, from which it can be recovered
+     */
+    public static Path errorExchangeFile(Path directory, String requestId)
+    {
+        return directory.resolve(ERROR_PREFIX + requestId + EXCHANGE_SUFFIX);
+    }
+
+    /**
+     * @return The file an exchange record is written to, before it is moved in place as the
+     * {@link #errorExchangeFile}
+     */
+    public static Path errorExchangeTempFile(Path directory, String requestId)
+    {
+        return directory.resolve(ERROR_PREFIX + requestId + EXCHANGE_SUFFIX + TEMP_SUFFIX);
+    }
+
+    /**
+     * @return The request id of an exchange record file, or empty if the file is not one
+     */
+    public static Optional<String> exchangeRequestId(Path file)
+    {
+        final String name = file.getFileName().toString();
+        if (!name.startsWith(ERROR_PREFIX) || !name.endsWith(EXCHANGE_SUFFIX))
+        {
+            return Optional.empty();
+        }
+        return Optional.of(name.substring(ERROR_PREFIX.length(), name.length() - EXCHANGE_SUFFIX.length()));
+    }
+
+    /**
+     * @return The request id of a persisted body or headers file, or of an exchange record left half-written, or empty
+     * if the file is not one
+     */
+    public static Optional<String> errorFragmentRequestId(Path file)
+    {
+        final String name = file.getFileName().toString();
+        if (!name.startsWith(ERROR_PREFIX))
+        {
+            return Optional.empty();
+        }
+
+        final String baseName;
+        if (name.endsWith(HEADERS_SUFFIX))
+        {
+            baseName = name.substring(ERROR_PREFIX.length(), name.length() - HEADERS_SUFFIX.length());
+        }
+        else if (name.endsWith(EXCHANGE_SUFFIX + TEMP_SUFFIX))
+        {
+            return Optional.of(name.substring(ERROR_PREFIX.length(), name.length() - EXCHANGE_SUFFIX.length() - TEMP_SUFFIX.length()));
+        }
+        else
+        {
+            return transientBodyRequestId(file.resolveSibling(name.substring(ERROR_PREFIX.length())));
+        }
+        return stripDirection(baseName);
+    }
+
+    /**
+     * @return The persisted body of a request/direction, compressed or not, if any
+     */
+    public static Optional<Path> findErrorBodyFile(Path directory, String requestId, ServerDirection direction)
+    {
+        final Path compressed = errorBodyFile(directory, requestId, direction, true);
+        if (Files.exists(compressed))
+        {
+            return Optional.of(compressed);
+        }
+        final Path plain = errorBodyFile(directory, requestId, direction, false);
+        return Files.exists(plain) ? Optional.of(plain) : Optional.empty();
+    }
+
+    /**
+     * @return The request id of a transient body file, or empty if the file is not one
+     */
+    public static Optional<String> transientBodyRequestId(Path file)
+    {
+        final String name = file.getFileName().toString();
+        if (name.startsWith(ERROR_PREFIX))
+        {
+            return Optional.empty();
+        }
+
+        final String baseName;
+        if (name.endsWith(COMPRESSED_BODY_SUFFIX))
+        {
+            baseName = name.substring(0, name.length() - COMPRESSED_BODY_SUFFIX.length());
+        }
+        else if (name.endsWith(BODY_SUFFIX))
+        {
+            baseName = name.substring(0, name.length() - BODY_SUFFIX.length());
+        }
+        else
+        {
+            return Optional.empty();
+        }
+
+        return stripDirection(baseName);
+    }
+
+    public static boolean isCompressed(Path bodyFile)
+    {
+        return bodyFile.getFileName().toString().endsWith(COMPRESSED_BODY_SUFFIX);
+    }
+
+    private static Optional<String> stripDirection(String baseName)
+    {
+        for (ServerDirection direction : ServerDirection.values())
+        {
+            final String suffix = "_" + direction.name().toLowerCase();
+            if (baseName.endsWith(suffix))
+            {
+                return Optional.of(baseName.substring(0, baseName.length() - suffix.length()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static String baseName(String requestId, ServerDirection direction)
+    {
+        return requestId + "_" + direction.name().toLowerCase();
+    }
+}
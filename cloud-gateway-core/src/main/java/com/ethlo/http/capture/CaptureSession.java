@@ -0,0 +1,63 @@
+package com.ethlo.http.capture;
+
+import java.util.Optional;
+
+import org.springframework.http.HttpHeaders;
+
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.ServerDirection;
+
+/**
+ * The captured data of a single exchange. Created once per matched request, so the body capture hot path
+ * is a plain field access rather than a lookup.
+ */
+public interface CaptureSession
+{
+    CaptureSink sink(ServerDirection direction);
+
+    void putHeaders(ServerDirection direction, HttpHeaders headers);
+
+    Optional<HttpHeaders> getHeaders(ServerDirection direction);
+
+    Optional<BodyProvider> getBody(ServerDirection direction);
+
+    /**
+     * @return Whether the captured body was cut short because the capture writer could not keep up
+     */
+    boolean isTruncated(ServerDirection direction);
+
+    /**
+     * Write what is needed to disk, so the exchange can be recovered after a logger failure, and release the rest.
+     * Gives back a reference, like {@link #release()}.
+     *
+     * @param exchange The exchange this session belongs to, for the record of it
+     * @see ExchangeRecord
+     */
+    void persistForError(WebExchangeDataProvider exchange);
+
+    /**
+     * Write the bodies to disk, so they outlive the session, and release the rest. Unlike {@link #persistForError},
+     * the headers are left to the caller. Returns once the bodies are on disk. Gives back a reference, like
+     * {@link #release()}.
+     *
+     * @see CaptureFiles#findErrorBodyFile
+     */
+    void persistBodies();
+
+    /**
+     * Take another reference to this session, for a party that must be able to use it after the current holder gave
+     * its reference back. A session starts out with a single reference.
+     *
+     * @return This session
+     */
+    default CaptureSession retain()
+    {
+        return this;
+    }
+
+    /**
+     * Give back a reference to this session, releasing all resources held by it once the last reference is given back
+     */
+    void release();
+}
@@ -0,0 +1,47 @@
+package com.ethlo.http.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The write side of a captured body. A sink is written by one thread at a time, for a single request and direction.
+ */
+public interface CaptureSink
+{
+    CaptureSink NOP = data -> {
+    };
+
+    /**
+     * Capture the remaining bytes of <code>data</code>
+     *
+     * @param data The data to capture. The buffer is only valid for the duration of the call.
+     */
+    void write(ByteBuffer data);
+
+    /**
+     * Capture a single byte
+     *
+     * @param b The byte to capture
+     */
+    default void write(int b)
+    {
+        write(ByteBuffer.wrap(new byte[]{(byte) b}));
+    }
+
+    /**
+     * Hint the expected body size and encoding, so in-memory buffers can be sized up-front, and already compressed
+     * bodies are not compressed again.
+     *
+     * @param contentLength   The <code>Content-Length</code> of the body, or a negative value if unknown
+     * @param contentEncoding The <code>Content-Encoding</code> of the body, or null if none
+     */
+    default void expect(long contentLength, String contentEncoding)
+    {
+    }
+
+    /**
+     * Signal that the body has ended. Called once all data has been written.
+     */
+    default void complete()
+    {
+    }
+}
@@ -0,0 +1,17 @@
+package com.ethlo.http.capture;
+
+/**
+ * Where bodies larger than the in-memory threshold are spilled
+ */
+public enum CaptureStore
+{
+    /**
+     * One file per request and direction
+     */
+    FILE,
+
+    /**
+     * Shared, preallocated segment files, see {@link SegmentLogStore}
+     */
+    SEGMENT_LOG;
+}
@@ -0,0 +1,82 @@
+package com.ethlo.http.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Coalesces single-byte and tiny writes into larger chunks before passing them on, so a body written byte by byte
+ * does not cost a call through the capture chain per byte. Pending bytes are passed on when the buffer is full,
+ * before a larger write and when the body is complete.
+ */
+public class CoalescingCaptureSink implements CaptureSink
+{
+    private static final int BUFFER_SIZE = 4096;
+    private static final int SMALL_WRITE = 256;
+
+    private final CaptureSink delegate;
+    private byte[] buffer;
+    private int count;
+
+    public CoalescingCaptureSink(CaptureSink delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b)
+    {
+        if (buffer == null)
+        {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        else if (count == buffer.length)
+        {
+            flush();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(ByteBuffer data)
+    {
+        final int length = data.remaining();
+        if (length >= SMALL_WRITE)
+        {
+            flush();
+            delegate.write(data);
+            return;
+        }
+
+        if (buffer == null)
+        {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        else if (count + length > buffer.length)
+        {
+            flush();
+        }
+        data.get(buffer, count, length);
+        count += length;
+    }
+
+    @Override
+    public void expect(long contentLength, String contentEncoding)
+    {
+        delegate.expect(contentLength, contentEncoding);
+    }
+
+    @Override
+    public void complete()
+    {
+        flush();
+        delegate.complete();
+    }
+
+    private void flush()
+    {
+        if (count > 0)
+        {
+            delegate.write(ByteBuffer.wrap(buffer, 0, count));
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.ethlo.http.capture;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+
+import com.ethlo.http.Route;
+import com.ethlo.http.match.HeaderPredicate;
+import com.ethlo.http.match.LogOptions;
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.RecordedException;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.processors.auth.RealmUser;
+
+/**
+ * The binary form of a finished exchange, as spooled or persisted for a logger failure. Bodies are not part of the
+ * record, but referenced by the request id, as they are persisted to the capture directory.
+ */
+public final class ExchangeRecord
+{
+    private static final int VERSION = 1;
+
+    private ExchangeRecord()
+    {
+
+    }
+
+    public static byte[] encode(WebExchangeDataProvider data) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeByte(VERSION);
+            writeString(out, data.getRequestId());
+            writeString(out, data.getPredicateConfig().id());
+            writeString(out, Optional.ofNullable(data.getMethod()).map(HttpMethod::name).orElse(null));
+            writeString(out, data.getPath());
+            writeString(out, data.getUri());
+            writeString(out, data.getProtocol());
+            out.writeInt(Optional.ofNullable(data.getStatusCode()).map(HttpStatusCode::value).orElse(-1));
+            writeString(out, Optional.ofNullable(data.getTimestamp()).map(OffsetDateTime::toString).orElse(null));
+            out.writeLong(Optional.ofNullable(data.getDuration()).map(Duration::toNanos).orElse(-1L));
+
+            final Route route = data.getRoute();
+            writeString(out, route != null ? route.id() : null);
+            writeString(out, route != null && route.uri() != null ? route.uri().toString() : null);
+
+            final InetSocketAddress remoteAddress = data.getRemoteAddress();
+            writeString(out, remoteAddress != null ? remoteAddress.getHostString() : null);
+            out.writeInt(remoteAddress != null ? remoteAddress.getPort() : 0);
+
+            writeString(out, data.getUser().map(RealmUser::realm).orElse(null));
+            writeString(out, data.getUser().map(RealmUser::username).orElse(null));
+
+            writeString(out, data.getExceptionType().orElse(null));
+            writeString(out, data.getException().map(Throwable::getMessage).orElse(null));
+
+            writeDirection(out, data, ServerDirection.REQUEST, data.getPredicateConfig().request());
+            writeDirection(out, data, ServerDirection.RESPONSE, data.getPredicateConfig().response());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write the record of an exchange to the capture directory, next to its persisted bodies. Written to a temporary
+     * file and moved in place, so recovery never reads a half-written record.
+     *
+     * @see CaptureFiles#errorExchangeFile
+     */
+    public static void persist(WebExchangeDataProvider data, Path captureDirectory) throws IOException
+    {
+        persist(data.getRequestId(), encode(data), captureDirectory);
+    }
+
+    /**
+     * Write an already encoded record, for an exchange that may have released its captured data since
+     *
+     * @see #persist(WebExchangeDataProvider, Path)
+     */
+    public static void persist(String requestId, byte[] record, Path captureDirectory) throws IOException
+    {
+        final Path temp = CaptureFiles.errorExchangeTempFile(captureDirectory, requestId);
+        Files.write(temp, record);
+        Files.move(temp, CaptureFiles.errorExchangeFile(captureDirectory, requestId), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static WebExchangeDataProvider decode(byte[] record, Path captureDirectory) throws IOException
+    {
+        return decode(record, captureDirectory, null);
+    }
+
+    /**
+     * @param onDone Called once the exchange is released, persisted again or handed over, or null
+     */
+    public static WebExchangeDataProvider decode(byte[] record, Path captureDirectory, Runnable onDone) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record)))
+        {
+            final int version = in.readUnsignedByte();
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported spool record version " + version);
+            }
+
+            final String requestId = readString(in);
+            final String predicateId = readString(in);
+            final String method = readString(in);
+            final String path = readString(in);
+            final String uri = readString(in);
+            final String protocol = readString(in);
+            final int status = in.readInt();
+            final String timestamp = readString(in);
+            final long duration = in.readLong();
+            final String routeId = readString(in);
+            final String routeUri = readString(in);
+            final String remoteHost = readString(in);
+            final int remotePort = in.readInt();
+            final String realm = readString(in);
+            final String username = readString(in);
+            final String exceptionType = readString(in);
+            final String exceptionMessage = readString(in);
+
+            final RecordedCaptureSession session = new RecordedCaptureSession(captureDirectory, requestId, onDone);
+            final LogOptions requestOptions = readDirection(in, session, ServerDirection.REQUEST);
+            final LogOptions responseOptions = readDirection(in, session, ServerDirection.RESPONSE);
+
+            return new WebExchangeDataProvider(session, new PredicateConfig(predicateId, request -> true, requestOptions, responseOptions))
+                    .requestId(requestId)
+                    .cleanupTask(session::release)
+                    .bodySizes(session.sizes[0], session.sizes[1])
+                    .method(method != null ? HttpMethod.valueOf(method) : null)
+                    .path(path)
+                    .uri(uri)
+                    .protocol(protocol)
+                    .statusCode(status >= 0 ? HttpStatusCode.valueOf(status) : null)
+                    .timestamp(timestamp != null ? OffsetDateTime.parse(timestamp) : null)
+                    .duration(duration >= 0 ? Duration.ofNanos(duration) : null)
+                    .route(routeId != null ? new Route(routeId, routeUri != null ? URI.create(routeUri) : null) : null)
+                    .remoteAddress(remoteHost != null ? InetSocketAddress.createUnresolved(remoteHost, remotePort) : null)
+                    .user(realm != null || username != null ? new RealmUser(realm, username) : null)
+                    .exception(exceptionType != null ? new RecordedException(exceptionType, exceptionMessage) : null);
+        }
+    }
+
+    private static void writeDirection(DataOutputStream out, WebExchangeDataProvider data, ServerDirection direction, LogOptions logOptions) throws IOException
+    {
+        final Optional<HttpHeaders> headers = data.getCaptureSession().getHeaders(direction);
+        out.writeBoolean(headers.isPresent());
+        if (headers.isPresent())
+        {
+            out.writeInt(headers.get().size());
+            for (String name : headers.get().headerNames())
+            {
+                final List<String> values = headers.get().get(name);
+                writeString(out, name);
+                out.writeInt(values.size());
+                for (String value : values)
+                {
+                    writeString(out, value);
+                }
+            }
+        }
+
+        final LogOptions options = logOptions != null ? logOptions : new LogOptions(HeaderPredicate.ALL, null, null);
+        out.writeByte(options.raw().ordinal());
+        out.writeByte(options.body().ordinal());
+        out.writeBoolean(data.isBodyTruncated(direction));
+        out.writeLong(data.getBodySize(direction).orElse(-1L));
+    }
+
+    private static LogOptions readDirection(DataInputStream in, RecordedCaptureSession session, ServerDirection direction) throws IOException
+    {
+        if (in.readBoolean())
+        {
+            final HttpHeaders headers = new HttpHeaders();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                final String name = readString(in);
+                final int values = in.readInt();
+                for (int v = 0; v < values; v++)
+                {
+                    headers.add(name, readString(in));
+                }
+            }
+            session.headers[direction.ordinal()] = headers;
+        }
+
+        final LogOptions.ContentProcessing raw = LogOptions.ContentProcessing.values()[in.readUnsignedByte()];
+        final LogOptions.ContentProcessing body = LogOptions.ContentProcessing.values()[in.readUnsignedByte()];
+        session.truncated[direction.ordinal()] = in.readBoolean();
+        final long size = in.readLong();
+        session.sizes[direction.ordinal()] = size >= 0 ? size : null;
+
+        // Headers were filtered before they were spooled
+        return new LogOptions(HeaderPredicate.ALL, raw, body);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        final int length = in.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A finished exchange read back from a record, with its bodies in the capture directory. Releasing it deletes all
+     * files of the exchange.
+     */
+    private static final class RecordedCaptureSession implements CaptureSession
+    {
+        private static final Logger logger = LoggerFactory.getLogger(RecordedCaptureSession.class);
+
+        private final Path directory;
+        private final String requestId;
+        private final Runnable onDone;
+        private final HttpHeaders[] headers = new HttpHeaders[2];
+        private final boolean[] truncated = new boolean[2];
+        private final Long[] sizes = new Long[2];
+
+        private RecordedCaptureSession(Path directory, String requestId, Runnable onDone)
+        {
+            this.directory = directory;
+            this.requestId = requestId;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public CaptureSink sink(final ServerDirection direction)
+        {
+            return CaptureSink.NOP;
+        }
+
+        @Override
+        public void putHeaders(final ServerDirection direction, final HttpHeaders headers)
+        {
+            this.headers[direction.ordinal()] = headers;
+        }
+
+        @Override
+        public Optional<HttpHeaders> getHeaders(final ServerDirection direction)
+        {
+            return Optional.ofNullable(headers[direction.ordinal()]);
+        }
+
+        @Override
+        public Optional<BodyProvider> getBody(final ServerDirection direction)
+        {
+            final String contentEncoding = getHeaders(direction).map(h -> h.getFirst(HttpHeaders.CONTENT_ENCODING)).orElse(null);
+            return CaptureFiles.findErrorBodyFile(directory, requestId, direction).map(file ->
+            {
+                final BodyProvider body = new BodyProvider(file, contentEncoding);
+                return CaptureFiles.isCompressed(file) ? body.asGzipped() : body;
+            });
+        }
+
+        @Override
+        public boolean isTruncated(final ServerDirection direction)
+        {
+            return truncated[direction.ordinal()];
+        }
+
+        @Override
+        public void persistForError(final WebExchangeDataProvider exchange)
+        {
+            // The bodies are already on disk, so only the headers and the record may be missing
+            try
+            {
+                for (ServerDirection direction : ServerDirection.values())
+                {
+                    final HttpHeaders directionHeaders = headers[direction.ordinal()];
+                    if (directionHeaders != null)
+                    {
+                        final StringBuilder sb = new StringBuilder(512);
+                        directionHeaders.forEach((name, values) -> values.forEach(value -> sb.append(name).append(": ").append(value).append("\r\n")));
+                        Files.writeString(CaptureFiles.errorHeadersFile(directory, requestId, direction), sb, StandardCharsets.UTF_8);
+                    }
+                }
+                persist(exchange, directory);
+            }
+            catch (IOException e)
+            {
+                logger.error("Failed to persist the record of {}", requestId, e);
+            } finally
+            {
+                done();
+            }
+        }
+
+        @Override
+        public void persistBodies()
+        {
+            // The bodies are taken over by a new owner, along with the rest of the exchange
+            delete(CaptureFiles.errorExchangeFile(directory, requestId));
+            for (ServerDirection direction : ServerDirection.values())
+            {
+                delete(CaptureFiles.errorHeadersFile(directory, requestId, direction));
+            }
+            done();
+        }
+
+        @Override
+        public void release()
+        {
+            for (ServerDirection direction : ServerDirection.values())
+            {
+                CaptureFiles.findErrorBodyFile(directory, requestId, direction).ifPresent(this::delete);
+                delete(CaptureFiles.errorHeadersFile(directory, requestId, direction));
+            }
+            delete(CaptureFiles.errorExchangeFile(directory, requestId));
+            done();
+        }
+
+        private void done()
+        {
+            if (onDone != null)
+            {
+                onDone.run();
+            }
+        }
+
+        private void delete(Path file)
+        {
+            try
+            {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException exc)
+            {
+                logger.warn("Unable to delete {}", file, exc);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.ethlo.http.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.util.IoUtil;
+
+/**
+ * Spills each body to a file of its own in the capture directory
+ */
+public class FileSpillStore implements SpillStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(FileSpillStore.class);
+
+    private final Path basePath;
+
+    public FileSpillStore(Path basePath)
+    {
+        this.basePath = basePath;
+    }
+
+    @Override
+    public Spill create(String requestId, ServerDirection direction, boolean compress)
+    {
+        final Spill spill = new FileSpill(requestId, direction,
+                CaptureFiles.bodyFile(basePath, requestId, direction, compress),
+                CaptureFiles.errorBodyFile(basePath, requestId, direction, compress)
+        );
+        return compress ? new GzipSpill(spill) : spill;
+    }
+
+    @Override
+    public void close()
+    {
+
+    }
+
+    private static class FileSpill implements Spill
+    {
+        private final String requestId;
+        private final ServerDirection direction;
+        private final Path file;
+        private final Path errorFile;
+        private FileChannel channel;
+        private long size;
+
+        private FileSpill(String requestId, ServerDirection direction, Path file, Path errorFile)
+        {
+            this.requestId = requestId;
+            this.direction = direction;
+            this.file = file;
+            this.errorFile = errorFile;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException
+        {
+            if (channel == null)
+            {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            size += data.remaining();
+            IoUtil.writeFully(channel, data);
+        }
+
+        @Override
+        public BodyProvider body(String contentEncoding)
+        {
+            return new BodyProvider(file, contentEncoding);
+        }
+
+        @Override
+        public void persist()
+        {
+            // The body file is left behind under its error name, but the descriptor is not
+            closeChannel();
+            try
+            {
+                if (Files.exists(file))
+                {
+                    Files.move(file, errorFile, StandardCopyOption.REPLACE_EXISTING);
+                    logger.debug("Saved spilled body to {}", errorFile);
+                }
+            }
+            catch (IOException exc)
+            {
+                logger.error("Double failure: Could not save spilled body to {}", errorFile, exc);
+            }
+        }
+
+        @Override
+        public void release()
+        {
+            closeChannel();
+            deleteBodyFile();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Deleted {} disk buffer for {}. File size {}B", direction, requestId, size);
+            }
+        }
+
+        private void closeChannel()
+        {
+            if (channel == null)
+            {
+                return;
+            }
+
+            try
+            {
+                channel.close();
+            }
+            catch (IOException exc)
+            {
+                logger.warn("Unable to close {} body file for {}", direction, requestId, exc);
+            }
+            channel = null;
+        }
+
+        private void deleteBodyFile()
+        {
+            try
+            {
+                if (!Files.deleteIfExists(file))
+                {
+                    logger.warn("Unable to clean up body file for {} for {}", direction.name().toLowerCase(), requestId);
+                }
+            }
+            catch (IOException exc)
+            {
+                logger.warn("Error deleting transient file {}", requestId, exc);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.ethlo.http.capture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ethlo.http.model.BodyProvider;
+
+/**
+ * Gzip-compresses spilled data on its way to the underlying spill. The stored data is a single gzip member, so it can
+ * be concatenated with other members as is.
+ */
+class GzipSpill implements SpillStore.Spill
+{
+    private static final Logger logger = LoggerFactory.getLogger(GzipSpill.class);
+    private static final int BUFFER_SIZE = 8192;
+
+    private final SpillStore.Spill delegate;
+    private FastGzipOutputStream out;
+    private byte[] copyBuffer;
+    private boolean finished;
+
+    GzipSpill(SpillStore.Spill delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException
+    {
+        if (finished)
+        {
+            throw new IllegalStateException("Spill is already finished");
+        }
+
+        final OutputStream stream = stream();
+        if (data.hasArray())
+        {
+            stream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+
+        // Direct or read-only buffers, like the arena segments
+        if (copyBuffer == null)
+        {
+            copyBuffer = new byte[BUFFER_SIZE];
+        }
+        while (data.hasRemaining())
+        {
+            final int chunk = Math.min(copyBuffer.length, data.remaining());
+            data.get(copyBuffer, 0, chunk);
+            stream.write(copyBuffer, 0, chunk);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException
+    {
+        if (!finished)
+        {
+            finished = true;
+            stream().finish();
+        }
+        delegate.finish();
+    }
+
+    @Override
+    public BodyProvider body(String contentEncoding)
+    {
+        return delegate.body(contentEncoding).asGzipped();
+    }
+
+    @Override
+    public void persist()
+    {
+        try
+        {
+            finish();
+        }
+        catch (IOException exc)
+        {
+            logger.warn("Unable to finish compressed body: {}", exc.getMessage(), exc);
+        }
+        end();
+        delegate.persist();
+    }
+
+    @Override
+    public void release()
+    {
+        end();
+        delegate.release();
+    }
+
+    private FastGzipOutputStream stream() throws IOException
+    {
+        if (out == null)
+        {
+            // Created lazily, as the gzip header is written right away
+            out = new FastGzipOutputStream(new SpillOutputStream());
+        }
+        return out;
+    }
+
+    private void end()
+    {
+        if (out != null)
+        {
+            out.end();
+            out = null;
+        }
+    }
+
+    private static class FastGzipOutputStream extends GZIPOutputStream
+    {
+        private FastGzipOutputStream(OutputStream out) throws IOException
+        {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+
+        private void end()
+        {
+            // Frees the native memory of the deflater right away, rather than when collected
+            def.end();
+        }
+    }
+
+    private class SpillOutputStream extends OutputStream
+    {
+        @Override
+        public void write(int b) throws IOException
+        {
+            delegate.write(ByteBuffer.wrap(new byte[]{(byte) b}));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            delegate.write(ByteBuffer.wrap(b, off, len));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ethlo.http.capture;
+
+import java.util.Optional;
+
+import org.springframework.http.HttpHeaders;
+
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.ServerDirection;
+
+/**
+ * The headers of an exchange whose bodies were dropped. Holds no captured data, so there is nothing to persist or
+ * release.
+ */
+public class HeadersOnlyCaptureSession implements CaptureSession
+{
+    private final HttpHeaders[] headers = new HttpHeaders[2];
+    private final boolean[] truncated = new boolean[2];
+
+    /**
+     * @param requestBodyDropped  Whether there was a request body, which is reported as truncated
+     * @param responseBodyDropped Whether there was a response body, which is reported as truncated
+     */
+    public HeadersOnlyCaptureSession(HttpHeaders requestHeaders, HttpHeaders responseHeaders, boolean requestBodyDropped, boolean responseBodyDropped)
+    {
+        this.headers[ServerDirection.REQUEST.ordinal()] = requestHeaders;
+        this.headers[ServerDirection.RESPONSE.ordinal()] = responseHeaders;
+        this.truncated[ServerDirection.REQUEST.ordinal()] = requestBodyDropped;
+        this.truncated[ServerDirection.RESPONSE.ordinal()] = responseBodyDropped;
+    }
+
+    @Override
+    public CaptureSink sink(final ServerDirection direction)
+    {
+        return CaptureSink.NOP;
+    }
+
+    @Override
+    public void putHeaders(final ServerDirection direction, final HttpHeaders headers)
+    {
+        this.headers[direction.ordinal()] = headers;
+    }
+
+    @Override
+    public Optional<HttpHeaders> getHeaders(final ServerDirection direction)
+    {
+        return Optional.ofNullable(headers[direction.ordinal()]);
+    }
+
+    @Override
+    public Optional<BodyProvider> getBody(final ServerDirection direction)
+    {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean isTruncated(final ServerDirection direction)
+    {
+        return truncated[direction.ordinal()];
+    }
+
+    @Override
+    public void persistForError(final WebExchangeDataProvider exchange)
+    {
+
+    }
+
+    @Override
+    public void persistBodies()
+    {
+
+    }
+
+    @Override
+    public void release()
+    {
+
+    }
+}
@@ -0,0 +1,67 @@
+package com.ethlo.http.capture;
+
+import java.util.Optional;
+
+import org.springframework.http.HttpHeaders;
+
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.ServerDirection;
+
+public class NopCaptureSession implements CaptureSession
+{
+    public static final CaptureSession INSTANCE = new NopCaptureSession();
+
+    private NopCaptureSession()
+    {
+
+    }
+
+    @Override
+    public CaptureSink sink(final ServerDirection direction)
+    {
+        return CaptureSink.NOP;
+    }
+
+    @Override
+    public void putHeaders(final ServerDirection direction, final HttpHeaders headers)
+    {
+
+    }
+
+    @Override
+    public Optional<HttpHeaders> getHeaders(final ServerDirection direction)
+    {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<BodyProvider> getBody(final ServerDirection direction)
+    {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean isTruncated(final ServerDirection direction)
+    {
+        return false;
+    }
+
+    @Override
+    public void persistForError(final WebExchangeDataProvider exchange)
+    {
+
+    }
+
+    @Override
+    public void persistBodies()
+    {
+
+    }
+
+    @Override
+    public void release()
+    {
+
+    }
+}
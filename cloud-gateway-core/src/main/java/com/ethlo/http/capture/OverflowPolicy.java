@@ -0,0 +1,17 @@
+package com.ethlo.http.capture;
+
+/**
+ * What to do with captured body data when the asynchronous capture writer is lagging too far behind
+ */
+public enum OverflowPolicy
+{
+    /**
+     * Stop capturing the body and mark it as truncated. The client is never slowed down.
+     */
+    TRUNCATE,
+
+    /**
+     * Wait for the writer to catch up. Nothing is lost, but client latency depends on the capture disk.
+     */
+    BLOCK;
+}
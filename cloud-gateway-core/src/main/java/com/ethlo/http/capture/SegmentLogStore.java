@@ -0,0 +1,293 @@
+package com.ethlo.http.capture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.netty.ServerDirection;
+
+/**
+ * Spills bodies into shared, preallocated segment files.
+ * <p>
+ * Data is appended to the active segment as offset/length extents, so interleaved bodies share the same file and no
+ * file is created or deleted per request. A segment is reference counted by its extents, and is recycled once all of
+ * them are released and it is no longer the active segment. Spilled bodies are read through a read-only memory
+ * mapping of the segment.
+ */
+public class SegmentLogStore implements SpillStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLogStore.class);
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int PREALLOCATE_CHUNK_SIZE = 64 * 1024;
+
+    private final Path segmentDirectory;
+    private final Path errorDirectory;
+    private final int segmentSize;
+    private final int retainedSegments;
+    private final Deque<Segment> free = new ArrayDeque<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private long nextSegmentId;
+
+    /**
+     * @param segmentDirectory The directory holding the segment files. Leftovers from a previous run are deleted.
+     * @param errorDirectory   The directory to persist bodies to on logger failure
+     * @param segmentSize      The size of each segment file
+     * @param retainedSegments The number of released segments kept for reuse, rather than deleted
+     */
+    public SegmentLogStore(Path segmentDirectory, Path errorDirectory, int segmentSize, int retainedSegments) throws IOException
+    {
+        this.segmentDirectory = Files.createDirectories(segmentDirectory);
+        this.errorDirectory = errorDirectory;
+        this.segmentSize = segmentSize;
+        this.retainedSegments = retainedSegments;
+
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(segmentDirectory, "*" + SEGMENT_SUFFIX))
+        {
+            for (Path leftover : leftovers)
+            {
+                Files.delete(leftover);
+            }
+        }
+    }
+
+    @Override
+    public Spill create(String requestId, ServerDirection direction, boolean compress)
+    {
+        final Spill spill = new SegmentSpill(requestId, direction, compress);
+        return compress ? new GzipSpill(spill) : spill;
+    }
+
+    /**
+     * @return The number of segment files currently on disk
+     */
+    public int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    @Override
+    public void close()
+    {
+        segments.forEach(Segment::close);
+        segments.clear();
+        free.clear();
+        active = null;
+    }
+
+    private Segment active() throws IOException
+    {
+        if (active != null && active.remaining() > 0)
+        {
+            return active;
+        }
+
+        if (active != null)
+        {
+            // Sealed, drop the reference held while it was being appended to
+            final Segment sealed = active;
+            active = null;
+            sealed.release();
+        }
+
+        final Segment next = free.poll();
+        active = next != null ? next : newSegment();
+        active.position = 0;
+        active.refs = 1;
+        return active;
+    }
+
+    private Segment newSegment() throws IOException
+    {
+        final Segment segment = new Segment(segmentDirectory.resolve("segment-" + nextSegmentId++ + SEGMENT_SUFFIX));
+        segments.add(segment);
+        logger.debug("Created capture segment {} of {} bytes", segment.file, segmentSize);
+        return segment;
+    }
+
+    private void reclaim(Segment segment)
+    {
+        if (free.size() < retainedSegments)
+        {
+            free.push(segment);
+        }
+        else
+        {
+            segments.remove(segment);
+            segment.close();
+            try
+            {
+                Files.deleteIfExists(segment.file);
+            }
+            catch (IOException exc)
+            {
+                logger.warn("Unable to delete capture segment {}", segment.file, exc);
+            }
+        }
+    }
+
+    private final class Segment
+    {
+        private final Path file;
+        private final FileChannel channel;
+        private final ByteBuffer mapped;
+        private int position;
+        private int refs;
+
+        private Segment(Path file) throws IOException
+        {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            preallocate();
+            this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+        }
+
+        /**
+         * Write the file full of zeroes, so its blocks are allocated up front and appends never extend it. Writing
+         * just the last byte would leave a sparse file, allocated block by block as the segment fills.
+         */
+        private void preallocate() throws IOException
+        {
+            final ByteBuffer zeroes = ByteBuffer.allocateDirect(Math.min(segmentSize, PREALLOCATE_CHUNK_SIZE));
+            long offset = 0;
+            while (offset < segmentSize)
+            {
+                zeroes.clear().limit((int) Math.min(zeroes.capacity(), segmentSize - offset));
+                while (zeroes.hasRemaining())
+                {
+                    offset += channel.write(zeroes, offset);
+                }
+            }
+        }
+
+        private int remaining()
+        {
+            return segmentSize - position;
+        }
+
+        private int append(ByteBuffer data) throws IOException
+        {
+            final int offset = position;
+            int written = 0;
+            while (data.hasRemaining())
+            {
+                written += channel.write(data, offset + written);
+            }
+            position += written;
+            return offset;
+        }
+
+        private void release()
+        {
+            if (--refs == 0)
+            {
+                reclaim(this);
+            }
+        }
+
+        private void close()
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException exc)
+            {
+                logger.warn("Unable to close capture segment {}", file, exc);
+            }
+        }
+    }
+
+    private record Extent(Segment segment, int offset, int length)
+    {
+    }
+
+    private class SegmentSpill implements Spill
+    {
+        private final String requestId;
+        private final ServerDirection direction;
+        private final boolean compressed;
+        private final List<Extent> extents = new ArrayList<>(4);
+
+        private SegmentSpill(String requestId, ServerDirection direction, boolean compressed)
+        {
+            this.requestId = requestId;
+            this.direction = direction;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException
+        {
+            while (data.hasRemaining())
+            {
+                final Segment segment = active();
+                final int length = Math.min(data.remaining(), segment.remaining());
+                final int offset = segment.append(data.slice(data.position(), length));
+                data.position(data.position() + length);
+
+                final Extent last = extents.isEmpty() ? null : extents.getLast();
+                if (last != null && last.segment() == segment && last.offset() + last.length() == offset)
+                {
+                    // Contiguous with the previous write, so no new reference is needed
+                    extents.set(extents.size() - 1, new Extent(segment, last.offset(), last.length() + length));
+                }
+                else
+                {
+                    segment.refs++;
+                    extents.add(new Extent(segment, offset, length));
+                }
+            }
+        }
+
+        @Override
+        public BodyProvider body(String contentEncoding)
+        {
+            return new BodyProvider(views(), contentEncoding);
+        }
+
+        private List<ByteBuffer> views()
+        {
+            return extents.stream().map(extent -> extent.segment().mapped.slice(extent.offset(), extent.length())).toList();
+        }
+
+        @Override
+        public void persist()
+        {
+            final Path errorPath = CaptureFiles.errorBodyFile(errorDirectory, requestId, direction, compressed);
+            try
+            {
+                new BodyProvider(views(), null).moveTo(errorPath);
+                logger.error("Logger failed. Saved spilled body to {}", errorPath);
+            }
+            catch (UncheckedIOException e)
+            {
+                logger.error("Double failure: Could not save spilled body to {}", errorPath, e);
+            } finally
+            {
+                release();
+            }
+        }
+
+        @Override
+        public void release()
+        {
+            extents.forEach(extent -> extent.segment().release());
+            extents.clear();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.ethlo.http.capture;
+
+/**
+ * Compression of spilled bodies and archived raw files
+ */
+public enum SpillCompression
+{
+    NONE,
+
+    /**
+     * Gzip at the fastest compression level. Bodies that already have a <code>Content-Encoding</code> are stored as is.
+     */
+    GZIP;
+}
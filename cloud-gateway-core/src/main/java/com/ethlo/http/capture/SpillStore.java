@@ -0,0 +1,50 @@
+package com.ethlo.http.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.netty.ServerDirection;
+
+/**
+ * Storage for body data that no longer fits in memory.
+ * <p>
+ * Except for {@link #create(String, ServerDirection, boolean)} and {@link Spill#body(String)}, all methods are called from the
+ * capture writer thread only, so implementations need no locking of their own.
+ */
+public interface SpillStore extends AutoCloseable
+{
+    /**
+     * Create the spill target of one body. Must not perform any I/O, as it is called on the request thread.
+     *
+     * @param compress Whether to gzip-compress the data on its way to disk
+     */
+    Spill create(String requestId, ServerDirection direction, boolean compress);
+
+    @Override
+    void close();
+
+    interface Spill
+    {
+        void write(ByteBuffer data) throws IOException;
+
+        /**
+         * Called once the last data has been written
+         */
+        default void finish() throws IOException
+        {
+        }
+
+        /**
+         * @return The spilled data. Called after all writes have completed.
+         */
+        BodyProvider body(String contentEncoding);
+
+        /**
+         * Leave the data on disk so it survives a logger failure, and release everything else
+         */
+        void persist();
+
+        void release();
+    }
+}
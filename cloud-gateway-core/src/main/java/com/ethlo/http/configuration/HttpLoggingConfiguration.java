@@ -1,5 +1,6 @@
 package com.ethlo.http.configuration;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -20,6 +21,12 @@ public class HttpLoggingConfiguration
 {
     public static final DataSize DEFAULT_MAX_MEMORY_BUFFER = DataSize.ofBytes(0);
 
+    public static final Duration DEFAULT_CONCURRENT_TIMEOUT = Duration.ofMillis(500);
+
+    public static final int DEFAULT_CONCURRENT_MAX_IN_FLIGHT = 1000;
+
+    public static final Duration DEFAULT_SHUTDOWN_TIMEOUT = Duration.ofSeconds(20);
+
     @Valid
     private CaptureConfiguration capture;
     private LogFilter filter;
@@ -29,6 +36,10 @@ public class HttpLoggingConfiguration
     private DataSize maxMemoryBuffer = DEFAULT_MAX_MEMORY_BUFFER;
 
     private boolean async;
+    private boolean concurrent;
+    private Duration concurrentTimeout;
+    private Integer concurrentMaxInFlight;
+    private Duration shutdownTimeout;
 
     public LogFilter getFilter()
     {
@@ -94,4 +105,60 @@ public class HttpLoggingConfiguration
         this.async = async;
         return this;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return Whether the loggers run concurrently rather than one after the other, when not logging asynchronously
+     */
+    public boolean concurrent()
+    {
+        return concurrent;
+    }
+
+    public HttpLoggingConfiguration setConcurrent(final boolean concurrent)
+    {
+        this.concurrent = concurrent;
+        return this;
+    }
+
+    /**
+     * @return How long the request thread waits for concurrently running loggers
+     */
+    public Duration concurrentTimeout()
+    {
+        return Optional.ofNullable(concurrentTimeout).orElse(DEFAULT_CONCURRENT_TIMEOUT);
+    }
+
+    public HttpLoggingConfiguration setConcurrentTimeout(final Duration concurrentTimeout)
+    {
+        this.concurrentTimeout = concurrentTimeout;
+        return this;
+    }
+
+    /**
+     * @return How many exchanges each provider may be logging concurrently, before further ones are failed
+     */
+    public int concurrentMaxInFlight()
+    {
+        return Optional.ofNullable(concurrentMaxInFlight).orElse(DEFAULT_CONCURRENT_MAX_IN_FLIGHT);
+    }
+
+    public HttpLoggingConfiguration setConcurrentMaxInFlight(final Integer concurrentMaxInFlight)
+    {
+        this.concurrentMaxInFlight = concurrentMaxInFlight;
+        return this;
+    }
+
+    /**
+     * @return How long the async providers get to log the exchanges they have queued on shutdown
+     */
+    public Duration shutdownTimeout()
+    {
+        return Optional.ofNullable(shutdownTimeout).orElse(DEFAULT_SHUTDOWN_TIMEOUT);
+    }
+
+    public HttpLoggingConfiguration setShutdownTimeout(final Duration shutdownTimeout)
+    {
+        this.shutdownTimeout = shutdownTimeout;
+        return this;
+    }
+}
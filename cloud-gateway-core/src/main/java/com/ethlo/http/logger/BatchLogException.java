@@ -0,0 +1,31 @@
+package com.ethlo.http.logger;
+
+import java.util.List;
+
+import com.ethlo.http.model.WebExchangeDataProvider;
+
+/**
+ * Thrown by {@link HttpLogger#accessLog(List)} when only some exchanges of a batch failed. The others were logged.
+ */
+public class BatchLogException extends RuntimeException
+{
+    private final List<WebExchangeDataProvider> failed;
+
+    /**
+     * @param failed The exchanges that were not logged
+     * @param cause  The failure of the first of them
+     */
+    public BatchLogException(final List<WebExchangeDataProvider> failed, final Throwable cause)
+    {
+        super(failed.size() + " exchanges of the batch failed, the first with: " + cause.getMessage(), cause);
+        this.failed = List.copyOf(failed);
+    }
+
+    /**
+     * @return The exchanges that were not logged
+     */
+    public List<WebExchangeDataProvider> getFailed()
+    {
+        return failed;
+    }
+}
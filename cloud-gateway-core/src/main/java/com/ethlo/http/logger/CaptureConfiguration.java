@@ -1,23 +1,54 @@
 package com.ethlo.http.logger;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
 
 import jakarta.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
+import com.ethlo.http.capture.CaptureStore;
+import com.ethlo.http.capture.OverflowPolicy;
+import com.ethlo.http.capture.SpillCompression;
 import jakarta.validation.constraints.NotNull;
 
 @Valid
 public class CaptureConfiguration
 {
+    /**
+     * Unless configured, the in-memory arena has room for this many fully buffered bodies
+     */
+    public static final int DEFAULT_ARENA_BODIES = 256;
+
+    public static final DataSize DEFAULT_MAX_PENDING_WRITES = DataSize.ofMegabytes(16);
+
+    public static final DataSize DEFAULT_SEGMENT_SIZE = DataSize.ofMegabytes(64);
+
+    public static final double DEFAULT_MEMORY_HIGH_WATERMARK = 0.75;
+
+    public static final DataSize DEFAULT_SPOOL_SEGMENT_SIZE = DataSize.ofMegabytes(4);
+
+    public static final Duration DEFAULT_SESSION_TTL = Duration.ofMinutes(10);
+
     private static final Logger logger = LoggerFactory.getLogger(CaptureConfiguration.class);
     private Boolean enabled;
     @NotNull
     private Path logDirectory;
+    private DataSize memoryArenaSize;
+    private DataSize maxPendingWrites;
+    private OverflowPolicy overflowPolicy;
+    private CaptureStore store;
+    private DataSize segmentSize;
+    private Double memoryHighWatermark;
+    private SpillCompression spillCompression;
+    private Boolean spoolOverflow;
+    private DataSize spoolSegmentSize;
+    private Duration sessionTtl;
+    private RecoveryConfiguration recovery;
 
     public Path getLogDirectory()
     {
@@ -40,6 +71,148 @@ public class CaptureConfiguration
         this.logDirectory = logDirectory;
     }
 
+    public DataSize getMemoryArenaSize()
+    {
+        return memoryArenaSize;
+    }
+
+    public void setMemoryArenaSize(final DataSize memoryArenaSize)
+    {
+        this.memoryArenaSize = memoryArenaSize;
+    }
+
+    /**
+     * @param maxMemoryBuffer The per request/direction in-memory threshold
+     * @return The configured off-heap arena size, or a size derived from the threshold if not set
+     */
+    public DataSize getMemoryArenaSize(DataSize maxMemoryBuffer)
+    {
+        return Optional.ofNullable(memoryArenaSize).orElseGet(() -> DataSize.ofBytes(maxMemoryBuffer.toBytes() * DEFAULT_ARENA_BODIES));
+    }
+
+    /**
+     * @return The maximum number of captured bytes waiting to be written to disk by the capture writer
+     */
+    public DataSize getMaxPendingWrites()
+    {
+        return Optional.ofNullable(maxPendingWrites).orElse(DEFAULT_MAX_PENDING_WRITES);
+    }
+
+    public void setMaxPendingWrites(final DataSize maxPendingWrites)
+    {
+        this.maxPendingWrites = maxPendingWrites;
+    }
+
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return Optional.ofNullable(overflowPolicy).orElse(OverflowPolicy.TRUNCATE);
+    }
+
+    public void setOverflowPolicy(final OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return The fraction of the memory arena in use above which bodies start to spill before reaching the threshold
+     */
+    public double getMemoryHighWatermark()
+    {
+        return Optional.ofNullable(memoryHighWatermark).orElse(DEFAULT_MEMORY_HIGH_WATERMARK);
+    }
+
+    public void setMemoryHighWatermark(final Double memoryHighWatermark)
+    {
+        this.memoryHighWatermark = memoryHighWatermark;
+    }
+
+    public CaptureStore getStore()
+    {
+        return Optional.ofNullable(store).orElse(CaptureStore.FILE);
+    }
+
+    public void setStore(final CaptureStore store)
+    {
+        this.store = store;
+    }
+
+    /**
+     * @return The size of each segment file when using the {@link CaptureStore#SEGMENT_LOG} store
+     */
+    public DataSize getSegmentSize()
+    {
+        return Optional.ofNullable(segmentSize).orElse(DEFAULT_SEGMENT_SIZE);
+    }
+
+    public void setSegmentSize(final DataSize segmentSize)
+    {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return The compression of bodies spilled to disk, and of archived raw files
+     */
+    public SpillCompression getSpillCompression()
+    {
+        return Optional.ofNullable(spillCompression).orElse(SpillCompression.NONE);
+    }
+
+    public void setSpillCompression(final SpillCompression spillCompression)
+    {
+        this.spillCompression = spillCompression;
+    }
+
+    /**
+     * @return Whether exchanges that do not fit in the queue of an asynchronous logger are spooled to disk rather than dropped
+     */
+    public boolean isSpoolOverflow()
+    {
+        return Optional.ofNullable(spoolOverflow).orElse(false);
+    }
+
+    public void setSpoolOverflow(final Boolean spoolOverflow)
+    {
+        this.spoolOverflow = spoolOverflow;
+    }
+
+    /**
+     * @return The size of each spool segment file
+     */
+    public DataSize getSpoolSegmentSize()
+    {
+        return Optional.ofNullable(spoolSegmentSize).orElse(DEFAULT_SPOOL_SEGMENT_SIZE);
+    }
+
+    public void setSpoolSegmentSize(final DataSize spoolSegmentSize)
+    {
+        this.spoolSegmentSize = spoolSegmentSize;
+    }
+
+    /**
+     * @return How long a capture session may be left idle before it is considered leaked and released by the reaper. It
+     * is measured from the last captured data or hand-over between request and loggers, so it must be longer than the
+     * worst-case logging latency, including queueing, retries and an open circuit breaker, but not the request itself.
+     */
+    public Duration getSessionTtl()
+    {
+        return Optional.ofNullable(sessionTtl).orElse(DEFAULT_SESSION_TTL);
+    }
+
+    public void setSessionTtl(final Duration sessionTtl)
+    {
+        this.sessionTtl = sessionTtl;
+    }
+
+    public RecoveryConfiguration getRecovery()
+    {
+        return Optional.ofNullable(recovery).orElseGet(RecoveryConfiguration::new);
+    }
+
+    public void setRecovery(final RecoveryConfiguration recovery)
+    {
+        this.recovery = recovery;
+    }
+
     public boolean isEnabled()
     {
         return Optional.ofNullable(enabled).orElse(false);
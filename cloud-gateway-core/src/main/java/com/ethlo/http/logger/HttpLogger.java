@@ -1,10 +1,48 @@
 package com.ethlo.http.logger;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.ethlo.http.model.WebExchangeDataProvider;
 
 public interface HttpLogger extends AutoCloseable
 {
     void accessLog(WebExchangeDataProvider dataProvider);
 
+    /**
+     * Log a batch of exchanges. Loggers that benefit from batching, like bulk inserts or group-committed writes,
+     * should override this. A {@link BatchLogException} means only the exchanges it holds failed. Any other exception
+     * means none of the exchanges were logged, so an override that logs them one by one, or in parts, must throw the
+     * former once any of them were logged.
+     *
+     * @param batch The exchanges to log, in the order they completed
+     */
+    default void accessLog(List<WebExchangeDataProvider> batch)
+    {
+        // Each exchange on its own, so one failing does not keep the others from being logged
+        final List<WebExchangeDataProvider> failed = new ArrayList<>();
+        RuntimeException cause = null;
+        for (WebExchangeDataProvider dataProvider : batch)
+        {
+            try
+            {
+                accessLog(dataProvider);
+            }
+            catch (RuntimeException exc)
+            {
+                failed.add(dataProvider);
+                if (cause == null)
+                {
+                    cause = exc;
+                }
+            }
+        }
+
+        if (cause != null)
+        {
+            throw new BatchLogException(failed, cause);
+        }
+    }
+
     String getName();
 }
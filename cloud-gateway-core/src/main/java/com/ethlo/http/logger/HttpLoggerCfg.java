@@ -1,8 +1,15 @@
 package com.ethlo.http.logger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,7 +20,15 @@ import org.springframework.context.support.GenericApplicationContext;
 import com.ethlo.http.configuration.BeanProvider;
 import com.ethlo.http.configuration.HttpLoggingConfiguration;
 import com.ethlo.http.logger.delegate.AsyncDelegateLogger;
+import com.ethlo.http.logger.delegate.AsyncLoggerMetrics;
+import com.ethlo.http.logger.delegate.AsyncLoggerShutdown;
+import com.ethlo.http.logger.delegate.ConcurrentDelegateLogger;
 import com.ethlo.http.logger.delegate.DelegateHttpLogger;
+import com.ethlo.http.logger.delegate.ExchangeRecovery;
+import com.ethlo.http.logger.delegate.ExchangeSpool;
+import com.ethlo.http.logger.delegate.LaneConfig;
+import com.ethlo.http.logger.delegate.ResilienceConfig;
+import com.ethlo.http.logger.delegate.ResilientHttpLogger;
 import com.ethlo.http.logger.delegate.SyncDelegateLogger;
 
 @Configuration
@@ -37,25 +52,110 @@ public class HttpLoggerCfg
     @Bean
     DelegateHttpLogger sequentialDelegateLogger(final GenericApplicationContext applicationContext, final HttpLoggingConfiguration httpLoggingConfiguration, List<HttpLoggerFactory> factories)
     {
-        final List<HttpLogger> loggers = Optional.ofNullable(httpLoggingConfiguration.getProviders())
-                .map(providers -> providers.entrySet().stream().map(entry ->
-                        {
-                            final String name = entry.getKey();
-                            return factories.stream().filter(f -> f.getName().equalsIgnoreCase(name)).findFirst()
-                                    .orElseThrow(() -> new IllegalArgumentException("No factory for logging provider '" + name + "'"))
-                                    .getInstance(entry.getValue(), (beanName, instance) ->
-                                            {
-                                                applicationContext.getBeanFactory().registerSingleton(beanName, instance);
-                                                return null;
-                                            }
-                                    );
-                        })
-                        .toList()).orElse(List.of());
+        final Map<HttpLogger, LaneConfig> loggers = new LinkedHashMap<>();
+        Optional.ofNullable(httpLoggingConfiguration.getProviders()).ifPresent(providers -> providers.forEach((name, configuration) ->
+                {
+                    final HttpLogger httpLogger = factories.stream().filter(f -> f.getName().equalsIgnoreCase(name)).findFirst()
+                            .orElseThrow(() -> new IllegalArgumentException("No factory for logging provider '" + name + "'"))
+                            .getInstance(configuration, (beanName, instance) ->
+                                    {
+                                        applicationContext.getBeanFactory().registerSingleton(beanName, instance);
+                                        return null;
+                                    }
+                            );
+                    final ResilienceConfig resilienceConfig = resilienceConfig(configuration);
+                    final ExchangeSpool deadLetter = resilienceConfig.deadLetter() ? deadLetter(httpLoggingConfiguration.getCapture(), httpLogger.getName()) : null;
+                    loggers.put(new ResilientHttpLogger(httpLogger, resilienceConfig, deadLetter), laneConfig(configuration));
+                }
+        ));
 
         if (httpLoggingConfiguration.async())
         {
-            return new AsyncDelegateLogger(loggers);
+            return new AsyncDelegateLogger(loggers, spool(httpLoggingConfiguration.getCapture()));
         }
-        return new SyncDelegateLogger(loggers);
+        if (httpLoggingConfiguration.concurrent())
+        {
+            return new ConcurrentDelegateLogger(List.copyOf(loggers.keySet()), httpLoggingConfiguration.concurrentTimeout(), httpLoggingConfiguration.concurrentMaxInFlight());
+        }
+        return new SyncDelegateLogger(List.copyOf(loggers.keySet()));
+    }
+
+    @Bean
+    AsyncLoggerMetrics asyncLoggerMetrics(final DelegateHttpLogger delegateHttpLogger)
+    {
+        return new AsyncLoggerMetrics(delegateHttpLogger);
+    }
+
+    @Bean
+    AsyncLoggerShutdown asyncLoggerShutdown(final HttpLoggingConfiguration httpLoggingConfiguration, final DelegateHttpLogger delegateHttpLogger)
+    {
+        return new AsyncLoggerShutdown(delegateHttpLogger, httpLoggingConfiguration.shutdownTimeout());
+    }
+
+    @Bean
+    @ConditionalOnProperty("http-logging.capture.enabled")
+    ExchangeRecovery exchangeRecovery(final HttpLoggingConfiguration httpLoggingConfiguration, final DelegateHttpLogger delegateHttpLogger)
+    {
+        final CaptureConfiguration capture = httpLoggingConfiguration.getCapture();
+        final ExchangeSpool spool = delegateHttpLogger instanceof AsyncDelegateLogger asyncDelegateLogger ? asyncDelegateLogger.getSpool() : null;
+        return new ExchangeRecovery(capture.getLogDirectory(), delegateHttpLogger, capture.getRecovery(), spool);
+    }
+
+    /**
+     * The spool for exchanges the async lanes have no room for, if enabled
+     */
+    private static ExchangeSpool spool(CaptureConfiguration capture)
+    {
+        if (capture == null || !capture.isEnabled() || !capture.isSpoolOverflow())
+        {
+            return null;
+        }
+
+        try
+        {
+            return new ExchangeSpool(capture.getLogDirectory(), capture.getSpoolSegmentSize().toBytes());
+        }
+        catch (IOException exc)
+        {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * The dead-letter spool of a provider, kept in a directory of its own below the capture directory, if capture is
+     * enabled
+     */
+    private static ExchangeSpool deadLetter(CaptureConfiguration capture, String name)
+    {
+        if (capture == null || !capture.isEnabled())
+        {
+            return null;
+        }
+
+        try
+        {
+            return new ExchangeSpool(capture.getLogDirectory().resolve("dead-letter").resolve(name), capture.getSpoolSegmentSize().toBytes());
+        }
+        catch (IOException exc)
+        {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * The failure handling of a provider, such as <code>max-attempts</code> and <code>failure-threshold</code>
+     */
+    private static ResilienceConfig resilienceConfig(Map<String, Object> configuration)
+    {
+        return new Binder(new MapConfigurationPropertySource(configuration)).bind("", ResilienceConfig.class).orElse(ResilienceConfig.DEFAULT);
+    }
+
+    /**
+     * The lane settings of a provider, such as <code>queue-size</code> and <code>back-pressure</code>, used when logging
+     * asynchronously
+     */
+    private static LaneConfig laneConfig(Map<String, Object> configuration)
+    {
+        return new Binder(new MapConfigurationPropertySource(configuration)).bind("", LaneConfig.class).orElse(LaneConfig.DEFAULT);
     }
 }
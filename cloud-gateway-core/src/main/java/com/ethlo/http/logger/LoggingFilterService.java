@@ -25,7 +25,7 @@ public class LoggingFilterService
     {
         final HeaderPredicate requestMerged = mergeHeader(Optional.ofNullable(httpLoggingConfiguration.getFilter()).map(LogFilter::getRequestHeaders).orElse(new HeaderPredicate(null, null)), predicateConfig.request().headers());
         final HeaderPredicate responseMerged = mergeHeader(Optional.ofNullable(httpLoggingConfiguration.getFilter()).map(LogFilter::getResponseHeaders).orElse(new HeaderPredicate(null, null)), predicateConfig.response().headers());
-        return new PredicateConfig(predicateConfig.id(), predicateConfig.predicate(), new LogOptions(requestMerged, predicateConfig.request().raw(), predicateConfig.request().body()), new LogOptions(responseMerged, predicateConfig.response().raw(), predicateConfig.response().body()));
+        return new PredicateConfig(predicateConfig.id(), predicateConfig.predicate(), new LogOptions(requestMerged, predicateConfig.request().raw(), predicateConfig.request().body(), predicateConfig.request().maxBodyBytes(), predicateConfig.request().tailBytes()), new LogOptions(responseMerged, predicateConfig.response().raw(), predicateConfig.response().body(), predicateConfig.response().maxBodyBytes(), predicateConfig.response().tailBytes()));
     }
 
     public static HeaderPredicate mergeHeader(HeaderPredicate global, HeaderPredicate local)
@@ -0,0 +1,68 @@
+package com.ethlo.http.logger;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Recovery of exchanges that were persisted to the capture directory because a logger failed
+ */
+public class RecoveryConfiguration
+{
+    public static final int DEFAULT_RATE = 50;
+
+    public static final Duration DEFAULT_FRAGMENT_RETENTION = Duration.ofDays(1);
+
+    private Boolean enabled;
+    private Integer rate;
+    private Duration interval;
+    private Duration fragmentRetention;
+
+    public boolean isEnabled()
+    {
+        return Optional.ofNullable(enabled).orElse(true);
+    }
+
+    public void setEnabled(final Boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return The maximum number of recovered exchanges handed to the loggers per second
+     */
+    public int getRate()
+    {
+        return Optional.ofNullable(rate).orElse(DEFAULT_RATE);
+    }
+
+    public void setRate(final Integer rate)
+    {
+        this.rate = rate;
+    }
+
+    /**
+     * @return How often to scan for exchanges to recover after the scan at startup, zero for only at startup
+     */
+    public Duration getInterval()
+    {
+        return Optional.ofNullable(interval).orElse(Duration.ZERO);
+    }
+
+    public void setInterval(final Duration interval)
+    {
+        this.interval = interval;
+    }
+
+    /**
+     * @return The age at which persisted files that cannot be recovered are deleted
+     */
+    public Duration getFragmentRetention()
+    {
+        return Optional.ofNullable(fragmentRetention).orElse(DEFAULT_FRAGMENT_RETENTION);
+    }
+
+    public void setFragmentRetention(final Duration fragmentRetention)
+    {
+        this.fragmentRetention = fragmentRetention;
+    }
+}
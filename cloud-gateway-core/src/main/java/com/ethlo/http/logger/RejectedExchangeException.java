@@ -0,0 +1,14 @@
+package com.ethlo.http.logger;
+
+/**
+ * Thrown by a {@link HttpLogger} that cannot log an exchange because of the exchange itself, like for a body that cannot
+ * be read, or a value the backend rejects. Logging it again fails the same way, and says nothing about whether the
+ * provider can log other exchanges.
+ */
+public class RejectedExchangeException extends RuntimeException
+{
+    public RejectedExchangeException(final String message, final Throwable cause)
+    {
+        super(message, cause);
+    }
+}
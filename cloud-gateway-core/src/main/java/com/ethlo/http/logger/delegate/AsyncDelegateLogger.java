@@ -1,87 +1,644 @@
 package com.ethlo.http.logger.delegate;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import com.ethlo.chronograph.Chronograph;
 import com.ethlo.http.logger.HttpLogger;
 import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.ServerDirection;
 
-public class AsyncDelegateLogger extends BaseDelegateHttpLogger implements Runnable
+/**
+ * Runs each logger in a lane of its own, with a bounded {@link RingBuffer} and one or more worker threads, so a slow logger
+ * cannot stall the others. Workers drain their queue into batches, bounded by count, captured bytes and latency.
+ * <p>
+ * An exchange is handed to all lanes, and is cleaned up once the last lane is done with it. If any logger failed or
+ * dropped the exchange, the captured data is left behind instead.
+ * <p>
+ * What happens when a lane is full depends on its {@link BackPressurePolicy}, and is counted in its
+ * {@link LaneStatistics}. With the {@link BackPressurePolicy#SPOOL} policy, exchanges arriving while the lane is full
+ * are written to an {@link ExchangeSpool}, and replayed to all lanes once they are less than half full. Exchanges
+ * dropped by the last lane holding them have their captured data persisted on a background thread, rather than on the
+ * request thread, unless it has fallen too far behind.
+ * <p>
+ * On {@link #shutdown(Duration)}, the lanes are given until a deadline to log what they have queued. Exchanges left
+ * after that are spooled, or persisted for recovery without a spool, so they are logged after the next start.
+ */
+public class AsyncDelegateLogger extends BaseDelegateHttpLogger
 {
-    private final BlockingQueue<WebExchangeDataProvider> queue = new ArrayBlockingQueue<>(10_000);
-    private final Thread workerThread;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    private static final long HALT_TIMEOUT_MILLIS = 1000;
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    private static final long REPLAY_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int MAX_PENDING_DROPS = 1024;
+
+    private final List<Lane> lanes;
+    private final ExchangeSpool spool;
+    private final Thread replayer;
+    private final ThreadPoolExecutor dropper;
     private volatile boolean running = true;
+    private volatile boolean halted;
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+    private final AtomicInteger inFlight = new AtomicInteger();
 
     public AsyncDelegateLogger(final List<HttpLogger> httpLoggers)
     {
-        super(httpLoggers);
-        this.workerThread = new Thread(this, "http-logger-worker");
-        this.workerThread.setDaemon(true);
-        this.workerThread.start();
+        this(defaultLanes(httpLoggers));
+    }
+
+    public AsyncDelegateLogger(final Map<HttpLogger, LaneConfig> lanes)
+    {
+        this(lanes, null);
+    }
+
+    /**
+     * @param spool Where to put exchanges the lanes have no room for, or null to drop them
+     */
+    public AsyncDelegateLogger(final Map<HttpLogger, LaneConfig> lanes, final ExchangeSpool spool)
+    {
+        super(List.copyOf(lanes.keySet()));
+        this.spool = spool;
+        this.lanes = lanes.entrySet().stream().map(entry -> new Lane(entry.getKey(), entry.getValue())).toList();
+        this.lanes.forEach(Lane::start);
+
+        // Once behind, or shut down, the dropping thread persists the exchange itself, which bounds the memory held
+        this.dropper = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_PENDING_DROPS), runnable ->
+        {
+            final Thread thread = new Thread(runnable, "http-logger-dropped");
+            thread.setDaemon(true);
+            return thread;
+        }, (task, executor) -> task.run());
+
+        if (spool != null)
+        {
+            this.replayer = new Thread(this::replay, "http-logger-spool");
+            this.replayer.setDaemon(true);
+            this.replayer.start();
+        }
+        else
+        {
+            this.replayer = null;
+        }
+    }
+
+    private static Map<HttpLogger, LaneConfig> defaultLanes(final List<HttpLogger> httpLoggers)
+    {
+        final Map<HttpLogger, LaneConfig> lanes = new LinkedHashMap<>();
+        httpLoggers.forEach(httpLogger -> lanes.put(httpLogger, LaneConfig.DEFAULT));
+        return lanes;
     }
 
     @Override
     public void accessLog(final Chronograph chronograph, final WebExchangeDataProvider dataProvider)
+    {
+        // Counted before checking, so a shutdown either turns this away, or waits for it to be queued
+        inFlight.incrementAndGet();
+        try
+        {
+            if (shutdown.get())
+            {
+                persist(dataProvider);
+                return;
+            }
+            enqueue(chronograph, dataProvider);
+        } finally
+        {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void enqueue(final Chronograph chronograph, final WebExchangeDataProvider dataProvider)
     {
         chronograph.time("async_log", () ->
                 {
-                    if (!queue.offer(dataProvider))
+                    final Lane full = lanes.stream().filter(lane -> lane.policy == BackPressurePolicy.SPOOL && lane.isFull()).findFirst().orElse(null);
+                    if (full != null)
                     {
-                        logger.warn("Access log queue full, dropping request {}", dataProvider.getRequestId());
+                        try
+                        {
+                            spool.append(dataProvider);
+                            full.statistics.spooled();
+                            return;
+                        }
+                        catch (IOException | RuntimeException exc)
+                        {
+                            logger.warn("Unable to spool request {}: {}", dataProvider.getRequestId(), exc.getMessage());
+                        }
                     }
+                    dispatch(dataProvider);
                 }
         );
     }
 
-    @Override
-    public void run()
+    private void dispatch(final WebExchangeDataProvider dataProvider)
+    {
+        final Entry entry = new Entry(dataProvider, lanes.size());
+        if (lanes.isEmpty())
+        {
+            complete(entry);
+        }
+
+        for (Lane lane : lanes)
+        {
+            lane.offer(entry);
+        }
+    }
+
+    private void replay()
     {
-        while (running || !queue.isEmpty())
+        while (running)
         {
             try
             {
-                final WebExchangeDataProvider data = queue.poll(1, TimeUnit.SECONDS);
-                if (data != null)
+                final WebExchangeDataProvider spooled = lanes.stream().allMatch(Lane::hasRoom) ? spool.poll() : null;
+                if (spooled != null)
                 {
-                    final Chronograph asyncChronograph = Chronograph.create();
-                    if (logWebExchangeData(asyncChronograph, data))
-                    {
-                        data.cleanup();
-                    }
-                    else
-                    {
-                        data.loggerError();
-                    }
-
-                    logger.debug("Logger performance for request {}:\n{}", data.getRequestId(), asyncChronograph);
+                    dispatch(spooled);
+                }
+                else
+                {
+                    LockSupport.parkNanos(REPLAY_PAUSE_NANOS);
                 }
             }
-            catch (InterruptedException e)
+            catch (Exception e)
             {
-                Thread.currentThread().interrupt();
-                break;
+                logger.error("Error replaying spooled exchanges", e);
+                LockSupport.parkNanos(REPLAY_PAUSE_NANOS);
             }
-            catch (Exception e)
+        }
+    }
+
+    /**
+     * @return The spool for exchanges the lanes have no room for, or null if none
+     */
+    public ExchangeSpool getSpool()
+    {
+        return spool;
+    }
+
+    /**
+     * @return The back-pressure counters of each provider
+     */
+    public Map<String, LaneStatistics> getStatistics()
+    {
+        final Map<String, LaneStatistics> statistics = new LinkedHashMap<>();
+        lanes.forEach(lane -> statistics.put(lane.httpLogger.getName(), lane.statistics));
+        return statistics;
+    }
+
+    private void complete(Entry entry)
+    {
+        final WebExchangeDataProvider data = entry.data;
+        if (entry.degraded)
+        {
+            // A copy without captured data, as the original was completed when it was degraded
+            if (entry.failed)
             {
-                logger.error("Error in async logger worker", e);
+                logger.warn("Unable to log degraded request {}", data.getRequestId());
+            }
+            return;
+        }
+
+        try
+        {
+            notifyListeners(data);
+        } finally
+        {
+            if (entry.failed)
+            {
+                data.loggerError();
+            }
+            else
+            {
+                data.cleanup();
             }
         }
     }
 
-    @Override
-    public void close() throws Exception
+    /**
+     * Stop taking exchanges, and give the lanes until the timeout has passed to log the ones they have queued. Those
+     * left after that are spooled, or persisted for recovery without a spool. Exchanges arriving after this call are
+     * persisted the same way. Providers that already logged a persisted exchange log it again after the next start.
+     *
+     * @return The number of exchanges left in the queues once the workers stopped
+     */
+    public int shutdown(Duration timeout)
     {
+        if (!shutdown.compareAndSet(false, true))
+        {
+            return 0;
+        }
+
         this.running = false;
+        final long deadline = System.currentTimeMillis() + timeout.toMillis();
+        try
+        {
+            if (replayer != null)
+            {
+                replayer.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+
+            if (!drain(deadline))
+            {
+                // Past the deadline, so the workers stop after their current batch
+                this.halted = true;
+                final long haltDeadline = System.currentTimeMillis() + HALT_TIMEOUT_MILLIS;
+                for (Lane lane : lanes)
+                {
+                    lane.join(haltDeadline);
+                }
+            }
+        }
+        catch (InterruptedException ignored)
+        {
+            Thread.currentThread().interrupt();
+            this.halted = true;
+        }
+
+        // Offered after the workers stopped, even when they drained their queues in time, so only found below once queued
+        awaitInFlight(System.currentTimeMillis() + HALT_TIMEOUT_MILLIS);
+
+        // Queued in more than one lane, but persisted once
+        final Set<Entry> leftovers = new LinkedHashSet<>();
+        for (Lane lane : lanes)
+        {
+            Entry entry;
+            while ((entry = lane.queue.poll()) != null)
+            {
+                leftovers.add(entry);
+            }
+        }
+
+        if (!leftovers.isEmpty())
+        {
+            logger.warn("Unable to log {} exchanges before shutdown, persisting them to log after the next start", leftovers.size());
+            leftovers.forEach(entry -> persist(entry.data));
+        }
+
+        dropper.shutdown();
         try
         {
-            workerThread.join(5000);
+            if (!dropper.awaitTermination(HALT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                logger.warn("Gave up waiting for {} dropped exchanges to be persisted", dropper.getQueue().size());
+            }
         }
         catch (InterruptedException ignored)
         {
+            Thread.currentThread().interrupt();
+        }
+        return leftovers.size();
+    }
+
+    /**
+     * Wait for exchanges that got past the shutdown check to be queued or dropped
+     */
+    private void awaitInFlight(long deadline)
+    {
+        while (inFlight.get() > 0 && System.currentTimeMillis() < deadline)
+        {
+            LockSupport.parkNanos(REPLAY_PAUSE_NANOS);
+        }
+    }
+
+    /**
+     * @return Whether all lanes finished before the deadline
+     */
+    private boolean drain(long deadline) throws InterruptedException
+    {
+        while (true)
+        {
+            if (lanes.stream().noneMatch(Lane::isAlive))
+            {
+                return true;
+            }
+
+            final long now = System.currentTimeMillis();
+            if (now >= deadline)
+            {
+                return false;
+            }
+
+            final int queued = lanes.stream().mapToInt(lane -> lane.queue.size()).sum();
+            if (queued > 0)
+            {
+                logger.info("Draining access log queues, {} exchanges left", queued);
+            }
+            final long until = Math.min(deadline, now + PROGRESS_INTERVAL_MILLIS);
+            for (Lane lane : lanes)
+            {
+                lane.join(until);
+            }
+        }
+    }
+
+    /**
+     * Keep an exchange that cannot be logged now, to be logged after the next start
+     */
+    private void persist(WebExchangeDataProvider dataProvider)
+    {
+        if (spool != null)
+        {
+            try
+            {
+                spool.append(dataProvider);
+                return;
+            }
+            catch (IOException | RuntimeException exc)
+            {
+                logger.warn("Unable to spool request {}: {}", dataProvider.getRequestId(), exc.getMessage());
+            }
+        }
+        dataProvider.loggerError();
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        shutdown(Duration.ofMillis(CLOSE_TIMEOUT_MILLIS));
+        if (spool != null)
+        {
+            spool.close();
         }
         super.close();
     }
-}
\ No newline at end of file
+
+    /**
+     * An exchange handed to the lanes, reference counted by the lanes that have yet to finish with it
+     */
+    private static final class Entry
+    {
+        private final WebExchangeDataProvider data;
+        private final long bytes;
+        private final AtomicInteger remaining;
+        private final boolean degraded;
+        private volatile boolean failed;
+
+        private Entry(WebExchangeDataProvider data, int lanes)
+        {
+            this(data, lanes, false);
+        }
+
+        private Entry(WebExchangeDataProvider data, int lanes, boolean degraded)
+        {
+            this.data = data;
+            this.bytes = degraded ? 0 : data.getBodySize(ServerDirection.REQUEST).orElse(0L) + data.getBodySize(ServerDirection.RESPONSE).orElse(0L);
+            this.remaining = new AtomicInteger(lanes);
+            this.degraded = degraded;
+        }
+    }
+
+    private final class Lane implements Runnable
+    {
+        private final HttpLogger httpLogger;
+        private final LaneConfig config;
+        private final RingBuffer<Entry> queue;
+        private final BackPressurePolicy policy;
+        private final LaneStatistics statistics;
+        private final List<Thread> workers;
+
+        private Lane(HttpLogger httpLogger, LaneConfig config)
+        {
+            this.httpLogger = httpLogger;
+            this.config = config;
+            this.queue = new RingBuffer<>(config.queueSize(), config.waitStrategy());
+            this.policy = policy(config.backPressure());
+            this.statistics = new LaneStatistics(policy, queue);
+            this.workers = new ArrayList<>(config.parallelism());
+            for (int i = 0; i < config.parallelism(); i++)
+            {
+                final Thread worker = new Thread(this, "http-logger-" + httpLogger.getName() + "-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+            }
+        }
+
+        private BackPressurePolicy policy(BackPressurePolicy configured)
+        {
+            if (configured == null)
+            {
+                return spool != null ? BackPressurePolicy.SPOOL : BackPressurePolicy.DROP_NEWEST;
+            }
+
+            if (configured == BackPressurePolicy.SPOOL && spool == null)
+            {
+                logger.warn("No spool for the {} provider, as capture.spool-overflow is not enabled. Using {} instead.", httpLogger.getName(), BackPressurePolicy.DROP_NEWEST);
+                return BackPressurePolicy.DROP_NEWEST;
+            }
+            return configured;
+        }
+
+        private void start()
+        {
+            workers.forEach(Thread::start);
+        }
+
+        private boolean isFull()
+        {
+            return queue.size() >= queue.capacity();
+        }
+
+        /**
+         * @return Whether the queue is less than half full, leaving room for replayed exchanges
+         */
+        private boolean hasRoom()
+        {
+            return queue.size() * 2 < queue.capacity();
+        }
+
+        private void offer(Entry entry)
+        {
+            final boolean queued = switch (policy)
+            {
+                case DROP_OLDEST -> offerEvicting(entry);
+                case BLOCK -> queue.offer(entry) || offerBlocking(entry);
+                case DEGRADE -> offerDegrading(entry);
+                // Spooling happens before an exchange is dispatched, so this lane only filled up in the meantime
+                case DROP_NEWEST, SPOOL -> queue.offer(entry);
+            };
+
+            if (!queued)
+            {
+                logger.warn("Access log queue of {} full, dropping request {}", httpLogger.getName(), entry.data.getRequestId());
+                statistics.dropped();
+                drop(entry);
+            }
+        }
+
+        private boolean offerEvicting(Entry entry)
+        {
+            while (!queue.offer(entry))
+            {
+                final Entry oldest = queue.poll();
+                if (oldest != null)
+                {
+                    logger.warn("Access log queue of {} full, dropping queued request {}", httpLogger.getName(), oldest.data.getRequestId());
+                    statistics.evicted();
+                    drop(oldest);
+                }
+            }
+            return true;
+        }
+
+        private boolean offerBlocking(Entry entry)
+        {
+            statistics.blocked();
+            try
+            {
+                return queue.offer(entry, config.blockTimeout().toNanos(), TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private boolean offerDegrading(Entry entry)
+        {
+            if (queue.size() * 4 < queue.capacity() * 3)
+            {
+                return queue.offer(entry) || offerBlocking(entry);
+            }
+
+            // The copy is independent of the captured data, so this lane is done with the original right away
+            final Entry degraded = new Entry(entry.data.withoutBodies(), 1, true);
+            statistics.degraded();
+            done(entry, true);
+            if (!queue.offer(degraded) && !offerBlocking(degraded))
+            {
+                logger.warn("Access log queue of {} full, dropping degraded request {}", httpLogger.getName(), degraded.data.getRequestId());
+                statistics.dropped();
+                drop(degraded);
+            }
+            return true;
+        }
+
+        /**
+         * Done with an exchange this lane has no room for, on the request thread
+         */
+        private void drop(Entry entry)
+        {
+            entry.failed = true;
+            if (entry.remaining.decrementAndGet() == 0)
+            {
+                // Persisting the captured data for recovery writes to disk
+                dropper.execute(() -> complete(entry));
+            }
+        }
+
+        private void done(Entry entry, boolean success)
+        {
+            if (!success)
+            {
+                entry.failed = true;
+            }
+
+            if (entry.remaining.decrementAndGet() == 0)
+            {
+                complete(entry);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            final List<Entry> batch = new ArrayList<>(Math.min(config.batchSize(), 1024));
+            while (!halted && (running || !queue.isEmpty()))
+            {
+                try
+                {
+                    final Entry first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first != null)
+                    {
+                        collect(first, batch);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                catch (Exception e)
+                {
+                    logger.error("Error in async logger worker {}", httpLogger.getName(), e);
+                }
+            }
+        }
+
+        private void collect(Entry first, List<Entry> batch) throws InterruptedException
+        {
+            batch.add(first);
+            long bytes = first.bytes;
+            final long deadline = System.nanoTime() + config.maxBatchDelay().toNanos();
+            try
+            {
+                while (batch.size() < config.batchSize() && bytes < config.maxBatchBytes().toBytes())
+                {
+                    final long wait = deadline - System.nanoTime();
+                    final Entry next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null)
+                    {
+                        break;
+                    }
+                    batch.add(next);
+                    bytes += next.bytes;
+                }
+            } finally
+            {
+                // Whatever was taken off the queue is logged, even when interrupted
+                log(batch);
+            }
+        }
+
+        private void log(List<Entry> batch)
+        {
+            final Chronograph asyncChronograph = Chronograph.create();
+            final int size = batch.size();
+            final Set<WebExchangeDataProvider> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+            boolean logged = false;
+            try
+            {
+                failed.addAll(logTo(httpLogger, asyncChronograph, batch.stream().map(entry -> entry.data).toList()));
+                logged = true;
+            } finally
+            {
+                // Only the exchanges the logger failed for are left behind for recovery
+                for (Entry entry : batch)
+                {
+                    done(entry, logged && !failed.contains(entry.data));
+                }
+                batch.clear();
+            }
+
+            logger.debug("Logger {} performance for {} requests:\n{}", httpLogger.getName(), size, asyncChronograph);
+        }
+
+        private boolean isAlive()
+        {
+            return workers.stream().anyMatch(Thread::isAlive);
+        }
+
+        private void join(long deadline) throws InterruptedException
+        {
+            for (Thread worker : workers)
+            {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        }
+    }
+}
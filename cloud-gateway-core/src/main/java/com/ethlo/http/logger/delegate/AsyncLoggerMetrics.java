@@ -0,0 +1,55 @@
+package com.ethlo.http.logger.delegate;
+
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exposes the queue sizes and back-pressure counters of each async logging provider, to tell which exchanges were
+ * dropped, degraded or spooled under overload
+ */
+public class AsyncLoggerMetrics implements MeterBinder
+{
+    private final DelegateHttpLogger delegateHttpLogger;
+
+    public AsyncLoggerMetrics(DelegateHttpLogger delegateHttpLogger)
+    {
+        this.delegateHttpLogger = delegateHttpLogger;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry)
+    {
+        if (!(delegateHttpLogger instanceof AsyncDelegateLogger asyncDelegateLogger))
+        {
+            return;
+        }
+
+        asyncDelegateLogger.getStatistics().forEach((provider, statistics) ->
+                {
+                    Gauge.builder("http.logger.queue.size", statistics, LaneStatistics::getQueued)
+                            .description("Exchanges waiting for the provider")
+                            .tag("provider", provider)
+                            .tag("policy", statistics.getPolicy().name().toLowerCase())
+                            .register(registry);
+                    overflow(registry, provider, statistics, "dropped", LaneStatistics::getDropped, "Exchanges lost to the provider as its queue was full");
+                    overflow(registry, provider, statistics, "evicted", LaneStatistics::getEvicted, "Queued exchanges dropped to make room for newer ones");
+                    overflow(registry, provider, statistics, "blocked", LaneStatistics::getBlocked, "Request threads that waited for room in the queue");
+                    overflow(registry, provider, statistics, "degraded", LaneStatistics::getDegraded, "Exchanges queued without their bodies");
+                    overflow(registry, provider, statistics, "spooled", LaneStatistics::getSpooled, "Exchanges spooled to disk as the queue was full");
+                }
+        );
+    }
+
+    private static void overflow(MeterRegistry registry, String provider, LaneStatistics statistics, String outcome, ToDoubleFunction<LaneStatistics> count, String description)
+    {
+        FunctionCounter.builder("http.logger.overflow", statistics, count)
+                .description(description)
+                .tag("provider", provider)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,61 @@
+package com.ethlo.http.logger.delegate;
+
+import java.time.Duration;
+
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * Drains the async logging providers on shutdown, once the web server has stopped taking requests and finished the
+ * ones in flight, so the exchanges of those are logged too.
+ *
+ * @see AsyncDelegateLogger#shutdown(Duration)
+ */
+public class AsyncLoggerShutdown implements SmartLifecycle
+{
+    /**
+     * Stopped after the phases of the web server and its graceful shutdown
+     */
+    public static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final DelegateHttpLogger delegateHttpLogger;
+    private final Duration timeout;
+    private volatile boolean running;
+
+    /**
+     * @param timeout How long the providers get to log the exchanges they have queued. Must be shorter than the
+     *                <code>spring.lifecycle.timeout-per-shutdown-phase</code>.
+     */
+    public AsyncLoggerShutdown(DelegateHttpLogger delegateHttpLogger, Duration timeout)
+    {
+        this.delegateHttpLogger = delegateHttpLogger;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void start()
+    {
+        this.running = true;
+    }
+
+    @Override
+    public void stop()
+    {
+        if (delegateHttpLogger instanceof AsyncDelegateLogger asyncDelegateLogger)
+        {
+            asyncDelegateLogger.shutdown(timeout);
+        }
+        this.running = false;
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public int getPhase()
+    {
+        return PHASE;
+    }
+}
@@ -0,0 +1,34 @@
+package com.ethlo.http.logger.delegate;
+
+/**
+ * What an async lane does with an exchange when its queue is full
+ */
+public enum BackPressurePolicy
+{
+    /**
+     * Drop the new exchange. The request thread does not wait for room, and its captured data is persisted on a
+     * background thread, unless that has fallen behind.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drop the oldest queued exchange to make room for the new one, favouring recent data
+     */
+    DROP_OLDEST,
+
+    /**
+     * Make the request thread wait for room, up to the block timeout, before dropping the new exchange
+     */
+    BLOCK,
+
+    /**
+     * Once the queue is three quarters full, queue exchanges without their bodies, and wait for room up to the block
+     * timeout rather than dropping them. Sheds body memory and logging work first, while keeping the metadata row.
+     */
+    DEGRADE,
+
+    /**
+     * Spool the exchange to disk, and replay it once the lanes catch up. Requires <code>capture.spool-overflow</code>.
+     */
+    SPOOL;
+}
@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ethlo.chronograph.Chronograph;
+import com.ethlo.http.logger.BatchLogException;
 import com.ethlo.http.logger.HttpLogger;
 import com.ethlo.http.model.WebExchangeDataProvider;
 
@@ -24,7 +25,12 @@ public abstract class BaseDelegateHttpLogger implements DelegateHttpLogger
         logger.info("Active loggers: {}", httpLoggers.stream().map(HttpLogger::getName).toList());
     }
 
-    private void notifyListeners(WebExchangeDataProvider result)
+    protected List<HttpLogger> getHttpLoggers()
+    {
+        return httpLoggers;
+    }
+
+    protected void notifyListeners(WebExchangeDataProvider result)
     {
         for (Consumer<WebExchangeDataProvider> listener : listeners)
         {
@@ -58,18 +64,7 @@ public abstract class BaseDelegateHttpLogger implements DelegateHttpLogger
         {
             for (HttpLogger httpLogger : httpLoggers)
             {
-                logger.debug("Delegating to log {}", httpLogger.getName());
-                try
-                {
-                    chronograph.time("logger_" + httpLogger.getName(), () -> httpLogger.accessLog(dataProvider));
-                }
-                catch (Exception e)
-                {
-                    success = false;
-                    logger.error("Logger {} failed for request {}",
-                            httpLogger.getClass().getSimpleName(), dataProvider.getRequestId(), e
-                    );
-                }
+                success &= logTo(httpLogger, chronograph, dataProvider);
             }
         } finally
         {
@@ -78,6 +73,50 @@ public abstract class BaseDelegateHttpLogger implements DelegateHttpLogger
         return success;
     }
 
+    protected boolean logTo(HttpLogger httpLogger, Chronograph chronograph, WebExchangeDataProvider dataProvider)
+    {
+        logger.debug("Delegating to log {}", httpLogger.getName());
+        try
+        {
+            chronograph.time("logger_" + httpLogger.getName(), () -> httpLogger.accessLog(dataProvider));
+            return true;
+        }
+        catch (Exception e)
+        {
+            logger.error("Logger {} failed for request {}",
+                    httpLogger.getName(), dataProvider.getRequestId(), e
+            );
+            return false;
+        }
+    }
+
+    /**
+     * @return The exchanges of the batch the logger failed for
+     */
+    protected List<WebExchangeDataProvider> logTo(HttpLogger httpLogger, Chronograph chronograph, List<WebExchangeDataProvider> batch)
+    {
+        logger.debug("Delegating batch of {} to log {}", batch.size(), httpLogger.getName());
+        try
+        {
+            chronograph.time("logger_" + httpLogger.getName(), () -> httpLogger.accessLog(batch));
+            return List.of();
+        }
+        catch (BatchLogException e)
+        {
+            logger.error("Logger {} failed for {} of a batch of {} requests, starting with {}",
+                    httpLogger.getName(), e.getFailed().size(), batch.size(), e.getFailed().getFirst().getRequestId(), e
+            );
+            return e.getFailed();
+        }
+        catch (Exception e)
+        {
+            logger.error("Logger {} failed for a batch of {} requests, starting with {}",
+                    httpLogger.getName(), batch.size(), batch.getFirst().getRequestId(), e
+            );
+            return batch;
+        }
+    }
+
     @Override
     public void close() throws Exception
     {
@@ -0,0 +1,210 @@
+package com.ethlo.http.logger.delegate;
+
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ethlo.chronograph.Chronograph;
+import com.ethlo.http.logger.HttpLogger;
+import com.ethlo.http.model.WebExchangeDataProvider;
+
+/**
+ * Runs all loggers concurrently on virtual threads, with the request thread waiting for the slowest of them, up to a
+ * timeout. Loggers still running when the timeout passes are left to finish on their own, and the exchange is cleaned
+ * up once the last of them is done. If any logger failed, the captured data is left behind instead.
+ * <p>
+ * Each logger has a limit on the exchanges it may be logging at once, so a hung logger cannot pile up threads, each
+ * holding on to the captured data of its exchange. Once a logger reaches it, further exchanges count as failed for it
+ * without starting a thread, and their captured data is left behind for recovery.
+ */
+public class ConcurrentDelegateLogger extends BaseDelegateHttpLogger
+{
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final Duration timeout;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-logger-", 0).factory());
+    private final Map<HttpLogger, Semaphore> inFlight = new IdentityHashMap<>();
+    private final LongAdder handedOff = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param timeout     How long the request thread waits for the loggers
+     * @param maxInFlight How many exchanges each logger may be logging at once
+     */
+    public ConcurrentDelegateLogger(final List<HttpLogger> httpLoggers, final Duration timeout, final int maxInFlight)
+    {
+        super(httpLoggers);
+        if (maxInFlight < 1)
+        {
+            throw new IllegalArgumentException("maxInFlight must be at least 1, was " + maxInFlight);
+        }
+        this.timeout = timeout;
+        httpLoggers.forEach(httpLogger -> inFlight.put(httpLogger, new Semaphore(maxInFlight)));
+    }
+
+    @Override
+    public void accessLog(final Chronograph chronograph, final WebExchangeDataProvider dataProvider)
+    {
+        final List<HttpLogger> httpLoggers = getHttpLoggers();
+        final Fanout fanout = new Fanout(dataProvider, httpLoggers.size());
+        if (httpLoggers.isEmpty())
+        {
+            complete(fanout);
+            return;
+        }
+
+        for (HttpLogger httpLogger : httpLoggers)
+        {
+            final Semaphore permits = inFlight.get(httpLogger);
+            if (!permits.tryAcquire())
+            {
+                rejected.increment();
+                logger.warn("Logger {} has too many requests in flight, unable to log request {}", httpLogger.getName(), dataProvider.getRequestId());
+                done(fanout, false);
+                continue;
+            }
+
+            try
+            {
+                executor.execute(() -> run(httpLogger, permits, fanout));
+            }
+            catch (RejectedExecutionException exc)
+            {
+                permits.release();
+                logger.warn("Logger {} is closed, unable to log request {}", httpLogger.getName(), dataProvider.getRequestId());
+                done(fanout, false);
+            }
+        }
+
+        chronograph.time("concurrent_log", () -> await(fanout));
+    }
+
+    /**
+     * @return The number of exchanges the request thread stopped waiting for, as a logger was still running
+     */
+    public long getHandedOff()
+    {
+        return handedOff.sum();
+    }
+
+    /**
+     * @return The number of times a logger was not given an exchange, as it had too many in flight already
+     */
+    public long getRejected()
+    {
+        return rejected.sum();
+    }
+
+    private void run(HttpLogger httpLogger, Semaphore permits, Fanout fanout)
+    {
+        // A chronograph of its own, as the one of the request is not shared between threads
+        final Chronograph loggerChronograph = Chronograph.create();
+        boolean success = false;
+        try
+        {
+            success = logTo(httpLogger, loggerChronograph, fanout.data);
+        } finally
+        {
+            permits.release();
+            done(fanout, success);
+        }
+        logger.debug("Logger {} performance for request {}:\n{}", httpLogger.getName(), fanout.data.getRequestId(), loggerChronograph);
+    }
+
+    private void await(Fanout fanout)
+    {
+        try
+        {
+            if (!fanout.latch.await(timeout.toNanos(), TimeUnit.NANOSECONDS))
+            {
+                handedOff.increment();
+                logger.debug("Handing off request {}, with {} loggers still running", fanout.data.getRequestId(), fanout.latch.getCount());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void done(Fanout fanout, boolean success)
+    {
+        if (!success)
+        {
+            fanout.failed = true;
+        }
+
+        try
+        {
+            if (fanout.remaining.decrementAndGet() == 0)
+            {
+                complete(fanout);
+            }
+        } finally
+        {
+            // Counted down last, so a request thread that did not time out returns after the cleanup
+            fanout.latch.countDown();
+        }
+    }
+
+    private void complete(Fanout fanout)
+    {
+        final WebExchangeDataProvider data = fanout.data;
+        try
+        {
+            notifyListeners(data);
+        } finally
+        {
+            if (fanout.failed)
+            {
+                data.loggerError();
+            }
+            else
+            {
+                data.cleanup();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        executor.shutdown();
+        try
+        {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                logger.warn("Loggers still running after {}ms, closing anyway", CLOSE_TIMEOUT_MILLIS);
+            }
+        }
+        catch (InterruptedException ignored)
+        {
+            Thread.currentThread().interrupt();
+        }
+        super.close();
+    }
+
+    private static final class Fanout
+    {
+        private final WebExchangeDataProvider data;
+        private final CountDownLatch latch;
+        private final AtomicInteger remaining;
+        private volatile boolean failed;
+
+        private Fanout(WebExchangeDataProvider data, int loggers)
+        {
+            this.data = data;
+            this.latch = new CountDownLatch(loggers);
+            this.remaining = new AtomicInteger(loggers);
+        }
+    }
+}
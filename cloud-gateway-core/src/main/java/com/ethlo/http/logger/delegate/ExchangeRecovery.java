@@ -0,0 +1,232 @@
+package com.ethlo.http.logger.delegate;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import com.ethlo.chronograph.Chronograph;
+import com.ethlo.http.capture.CaptureFiles;
+import com.ethlo.http.capture.ExchangeRecord;
+import com.ethlo.http.logger.RecoveryConfiguration;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+
+/**
+ * Hands exchanges that were persisted after a logger failure back to the loggers.
+ * <p>
+ * The capture directory is scanned once the application is ready, and optionally on an interval after that. Each
+ * {@link ExchangeRecord} found is replayed at a throttled rate, so a backlog does not overwhelm a logger that just
+ * came back. A recovered exchange that fails again is persisted again, and retried by the next scan. Persisted files
+ * without a record cannot be recovered, and are deleted once older than the fragment retention.
+ */
+public class ExchangeRecovery implements ApplicationListener<@NonNull ApplicationReadyEvent>, AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(ExchangeRecovery.class);
+
+    private final Path captureDirectory;
+    private final DelegateHttpLogger delegateHttpLogger;
+    private final RecoveryConfiguration config;
+    private final ExchangeSpool spool;
+    private final Bucket bucket;
+    private final ScheduledExecutorService executor;
+
+    // Handed to the loggers, and not yet released or persisted again
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    /**
+     * @param spool The spool whose bodies are persisted in the capture directory as well, or null
+     */
+    public ExchangeRecovery(Path captureDirectory, DelegateHttpLogger delegateHttpLogger, RecoveryConfiguration config, ExchangeSpool spool)
+    {
+        this.captureDirectory = captureDirectory;
+        this.delegateHttpLogger = delegateHttpLogger;
+        this.config = config;
+        this.spool = spool;
+        this.bucket = Bucket.builder()
+                .addLimit(Bandwidth.builder()
+                        .capacity(config.getRate())
+                        .refillGreedy(config.getRate(), Duration.ofSeconds(1))
+                        .build())
+                .build();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            final Thread thread = new Thread(runnable, "capture-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(final ApplicationReadyEvent event)
+    {
+        if (!config.isEnabled())
+        {
+            return;
+        }
+
+        final Duration interval = config.getInterval();
+        if (interval.isPositive())
+        {
+            executor.scheduleWithFixedDelay(this::scan, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            executor.execute(this::scan);
+        }
+    }
+
+    /**
+     * @return The number of exchanges handed back to the loggers since startup
+     */
+    public long getRecovered()
+    {
+        return recovered.sum();
+    }
+
+    /**
+     * @return The number of unrecoverable records and fragments deleted since startup
+     */
+    public long getDiscarded()
+    {
+        return discarded.sum();
+    }
+
+    void scan()
+    {
+        try
+        {
+            final int count = recover();
+            if (count > 0)
+            {
+                logger.info("Recovered {} exchanges persisted after a logger failure", count);
+            }
+            discardFragments(Instant.now().minus(config.getFragmentRetention()));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (Exception e)
+        {
+            logger.error("Error recovering persisted exchanges", e);
+        }
+    }
+
+    int recover() throws IOException, InterruptedException
+    {
+        // The request ids start with a timestamp, so the oldest exchanges are recovered first
+        final List<Path> records = list("error_*.exchange");
+        records.sort(Comparator.comparing(Path::getFileName));
+
+        int count = 0;
+        for (Path record : records)
+        {
+            final String requestId = CaptureFiles.exchangeRequestId(record).orElseThrow();
+            if (inFlight.contains(requestId) || !Files.exists(record))
+            {
+                continue;
+            }
+
+            final WebExchangeDataProvider data;
+            try
+            {
+                data = ExchangeRecord.decode(Files.readAllBytes(record), captureDirectory, () -> inFlight.remove(requestId));
+            }
+            catch (IOException | RuntimeException exc)
+            {
+                logger.warn("Discarding unreadable exchange record {}: {}", record, exc.getMessage());
+                delete(record);
+                continue;
+            }
+
+            bucket.asBlocking().consume(1);
+            inFlight.add(requestId);
+            delegateHttpLogger.accessLog(Chronograph.create(), data);
+            recovered.increment();
+            count++;
+        }
+        return count;
+    }
+
+    void discardFragments(Instant cutoff) throws IOException
+    {
+        final Set<String> recoverable = new HashSet<>();
+        for (Path record : list("error_*.exchange"))
+        {
+            CaptureFiles.exchangeRequestId(record).ifPresent(recoverable::add);
+        }
+
+        // Spooled exchanges keep their bodies here without a record, until the spool is replayed
+        final boolean spooling = spool != null && spool.getSegmentCount() > 0;
+        for (Path file : list("error_*"))
+        {
+            final Optional<String> requestId = CaptureFiles.errorFragmentRequestId(file);
+            if (requestId.isEmpty()
+                    || recoverable.contains(requestId.get())
+                    || inFlight.contains(requestId.get())
+                    || (spooling && !file.getFileName().toString().endsWith(".headers"))
+                    || Files.getLastModifiedTime(file).toInstant().isAfter(cutoff))
+            {
+                continue;
+            }
+
+            logger.warn("Discarding unrecoverable fragment {}", file);
+            delete(file);
+        }
+    }
+
+    private List<Path> list(String glob) throws IOException
+    {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(captureDirectory, glob))
+        {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private void delete(Path file)
+    {
+        try
+        {
+            if (Files.deleteIfExists(file))
+            {
+                discarded.increment();
+            }
+        }
+        catch (IOException exc)
+        {
+            logger.warn("Unable to delete {}", file, exc);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,320 @@
+package com.ethlo.http.logger.delegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ethlo.http.capture.CaptureFiles;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.ExchangeRecord;
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.util.IoUtil;
+
+/**
+ * A write-ahead spool for exchanges the logger lanes have no room for.
+ * <p>
+ * Spooled exchanges are appended as length and checksum framed records to segment files in the <code>spool</code>
+ * sub-directory of the capture directory, while their bodies are persisted next to the other capture files. Records
+ * are read back in order once the lanes catch up, and a segment is deleted once it has been read to the end. Segments
+ * left behind by a previous run are replayed after a restart, and a torn record at the end of a segment is skipped.
+ * Neither the segments nor the bodies are forced to disk, so spooled exchanges survive the gateway stopping or crashing,
+ * but not the machine crashing or losing power.
+ * <p>
+ * A spool of its own, holding copies, is used as the dead-letter spool of a provider whose circuit breaker is open.
+ * <p>
+ * Appends may come from any thread, while {@link #poll()} is called from a single replay thread. Each append persists
+ * the bodies of its exchange before taking the write lock, so only writing the record itself is serialized.
+ */
+public class ExchangeSpool implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(ExchangeSpool.class);
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    private final Path captureDirectory;
+    private final Path directory;
+    private final long segmentSize;
+    private final Deque<Path> segments = new ConcurrentLinkedDeque<>();
+    private final Object writeLock = new Object();
+
+    // Written under the write lock
+    private FileChannel writeChannel;
+    private long writePosition;
+    private long nextSegmentId;
+    private volatile Active active;
+
+    // Only touched by the replay thread
+    private FileChannel readChannel;
+    private Path readSegment;
+    private long readPosition;
+
+    /**
+     * @param captureDirectory The capture directory, holding the persisted bodies of spooled exchanges
+     * @param segmentSize      The size at which a new segment file is started
+     */
+    public ExchangeSpool(Path captureDirectory, long segmentSize) throws IOException
+    {
+        this.captureDirectory = captureDirectory;
+        this.directory = Files.createDirectories(captureDirectory.resolve("spool"));
+        this.segmentSize = segmentSize;
+
+        final List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+        {
+            files.forEach(existing::add);
+        }
+        existing.sort(Comparator.comparing(Path::getFileName));
+        segments.addAll(existing);
+        if (!existing.isEmpty())
+        {
+            nextSegmentId = segmentId(existing.getLast()) + 1;
+            logger.info("Found {} spool segments with exchanges to replay", existing.size());
+        }
+    }
+
+    /**
+     * Spool an exchange, persisting its bodies and releasing its memory. Once its bodies are persisted, the exchange
+     * belongs to the spool, so if its record cannot be written then, it is persisted for recovery instead.
+     *
+     * @throws IOException If the exchange could not be encoded, leaving it untouched
+     */
+    public void append(WebExchangeDataProvider data) throws IOException
+    {
+        // Encoded first, as persisting the bodies releases the in-memory data. Persisted before the record is written,
+        // so it is only read back once the bodies are on disk.
+        final byte[] record = ExchangeRecord.encode(data);
+        data.getCaptureSession().persistBodies();
+        try
+        {
+            write(record);
+        }
+        catch (IOException | RuntimeException exc)
+        {
+            logger.warn("Unable to spool request {}, persisting it for recovery: {}", data.getRequestId(), exc.getMessage());
+            try
+            {
+                ExchangeRecord.persist(data.getRequestId(), record, captureDirectory);
+            }
+            catch (IOException e)
+            {
+                logger.error("Failed to persist the record of {}", data.getRequestId(), e);
+            }
+        }
+    }
+
+    /**
+     * Spool a copy of an exchange, leaving the exchange itself to its current owner. The bodies are copied to the
+     * capture directory of this spool, so each spool can release its copy independently.
+     */
+    public void appendCopy(WebExchangeDataProvider data) throws IOException
+    {
+        final CaptureSession session = data.getCaptureSession();
+        for (ServerDirection direction : ServerDirection.values())
+        {
+            final Optional<BodyProvider> body = session.getBody(direction);
+            if (body.isPresent())
+            {
+                // As stored, but without the capture compression, as the content encoding is reapplied when read back
+                try (InputStream in = body.get().withoutDecoding().getInputStream())
+                {
+                    Files.copy(in, CaptureFiles.errorBodyFile(captureDirectory, data.getRequestId(), direction, false), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        write(ExchangeRecord.encode(data));
+    }
+
+    /**
+     * @return The oldest spooled exchange, or null if there is none
+     */
+    public WebExchangeDataProvider poll() throws IOException
+    {
+        while (true)
+        {
+            if (readChannel == null)
+            {
+                readSegment = segments.peekFirst();
+                if (readSegment == null)
+                {
+                    return null;
+                }
+                readChannel = FileChannel.open(readSegment, StandardOpenOption.READ);
+                readPosition = 0;
+            }
+
+            // All writes to a segment happen before it is replaced as the active one
+            final Active current = active;
+            final boolean sealed = current == null || !current.segment().equals(readSegment);
+            final long limit = sealed ? readChannel.size() : current.written();
+
+            final byte[] record = read(limit);
+            if (record != null)
+            {
+                try
+                {
+                    return ExchangeRecord.decode(record, captureDirectory);
+                }
+                catch (IOException | RuntimeException exc)
+                {
+                    logger.warn("Skipping unreadable spooled exchange in {}: {}", readSegment, exc.getMessage());
+                    continue;
+                }
+            }
+
+            if (!sealed)
+            {
+                return null;
+            }
+
+            // Fully read
+            closeQuietly(readChannel);
+            readChannel = null;
+            segments.remove(readSegment);
+            Files.deleteIfExists(readSegment);
+        }
+    }
+
+    /**
+     * @return The number of segment files with exchanges left to replay
+     */
+    public int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (writeLock)
+        {
+            closeQuietly(writeChannel);
+            writeChannel = null;
+        }
+        closeQuietly(readChannel);
+        readChannel = null;
+    }
+
+    private void write(byte[] record) throws IOException
+    {
+        final CRC32C crc = new CRC32C();
+        crc.update(record);
+        final ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + record.length)
+                .putInt(record.length)
+                .putInt((int) crc.getValue())
+                .put(record)
+                .flip();
+
+        synchronized (writeLock)
+        {
+            if (writeChannel == null || (writePosition > 0 && writePosition + frame.remaining() > segmentSize))
+            {
+                roll();
+            }
+            IoUtil.writeFully(writeChannel, frame);
+            writePosition += FRAME_HEADER_SIZE + record.length;
+            active = new Active(active.segment(), writePosition);
+        }
+    }
+
+    private byte[] read(long limit) throws IOException
+    {
+        if (readPosition + FRAME_HEADER_SIZE > limit)
+        {
+            return null;
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        readFully(header, readPosition);
+        final int length = header.flip().getInt();
+        final int checksum = header.getInt();
+        if (length < 0 || readPosition + FRAME_HEADER_SIZE + length > limit)
+        {
+            logger.warn("Skipping incomplete record at the end of {}", readSegment);
+            readPosition = limit;
+            return null;
+        }
+
+        final byte[] record = new byte[length];
+        readFully(ByteBuffer.wrap(record), readPosition + FRAME_HEADER_SIZE);
+        final CRC32C crc = new CRC32C();
+        crc.update(record);
+        if ((int) crc.getValue() != checksum)
+        {
+            logger.warn("Skipping the rest of {}, as a record is corrupt", readSegment);
+            readPosition = limit;
+            return null;
+        }
+
+        readPosition += FRAME_HEADER_SIZE + length;
+        return record;
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException
+    {
+        while (target.hasRemaining())
+        {
+            if (readChannel.read(target, position + target.position()) < 0)
+            {
+                throw new IOException("Unexpected end of " + readSegment);
+            }
+        }
+    }
+
+    private void roll() throws IOException
+    {
+        closeQuietly(writeChannel);
+        final Path segment = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, nextSegmentId++, SEGMENT_SUFFIX));
+        writeChannel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writePosition = 0;
+
+        // Active before it is visible to the reader, so it is never mistaken for a sealed, empty segment
+        active = new Active(segment, 0);
+        segments.addLast(segment);
+    }
+
+    private static long segmentId(Path segment)
+    {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void closeQuietly(FileChannel channel)
+    {
+        if (channel == null)
+        {
+            return;
+        }
+
+        try
+        {
+            channel.close();
+        }
+        catch (IOException exc)
+        {
+            logger.warn("Unable to close spool segment", exc);
+        }
+    }
+
+    private record Active(Path segment, long written)
+    {
+    }
+}
@@ -0,0 +1,58 @@
+package com.ethlo.http.logger.delegate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * The async lane of a single logging provider
+ *
+ * @param parallelism   The number of worker threads running the provider
+ * @param queueSize     The number of exchanges that can wait for the provider before back-pressure applies, rounded up
+ *                      to a power of two
+ * @param batchSize     The maximum number of exchanges handed to the provider at once
+ * @param maxBatchBytes The captured body bytes at which a batch is handed over, even if not full
+ * @param maxBatchDelay How long to wait for a batch to fill up. With no delay, only already queued exchanges are batched.
+ * @param waitStrategy  How idle workers wait for new exchanges, and blocked request threads for room
+ * @param backPressure  What to do when the queue is full. Unless set, exchanges are spooled if a spool is configured,
+ *                      and dropped otherwise.
+ * @param blockTimeout  How long a request thread waits for room with the {@link BackPressurePolicy#BLOCK} and
+ *                      {@link BackPressurePolicy#DEGRADE} policies
+ */
+public record LaneConfig(Integer parallelism, Integer queueSize, Integer batchSize, DataSize maxBatchBytes,
+                         Duration maxBatchDelay, WaitStrategy waitStrategy, BackPressurePolicy backPressure,
+                         Duration blockTimeout)
+{
+    public static final int DEFAULT_QUEUE_SIZE = 10_000;
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final DataSize DEFAULT_MAX_BATCH_BYTES = DataSize.ofMegabytes(8);
+
+    public static final Duration DEFAULT_BLOCK_TIMEOUT = Duration.ofMillis(100);
+
+    public static final LaneConfig DEFAULT = new LaneConfig(null, null, null, null, null, null, null, null);
+
+    @ConstructorBinding
+    public LaneConfig
+    {
+        parallelism = Optional.ofNullable(parallelism).orElse(1);
+        queueSize = Optional.ofNullable(queueSize).orElse(DEFAULT_QUEUE_SIZE);
+        batchSize = Optional.ofNullable(batchSize).orElse(DEFAULT_BATCH_SIZE);
+        maxBatchBytes = Optional.ofNullable(maxBatchBytes).orElse(DEFAULT_MAX_BATCH_BYTES);
+        maxBatchDelay = Optional.ofNullable(maxBatchDelay).orElse(Duration.ZERO);
+        waitStrategy = Optional.ofNullable(waitStrategy).orElse(WaitStrategy.PARK);
+        blockTimeout = Optional.ofNullable(blockTimeout).orElse(DEFAULT_BLOCK_TIMEOUT);
+        if (parallelism < 1 || queueSize < 1 || batchSize < 1)
+        {
+            throw new IllegalArgumentException("parallelism, queue-size and batch-size must be positive");
+        }
+    }
+
+    public LaneConfig(Integer parallelism, Integer queueSize)
+    {
+        this(parallelism, queueSize, null, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,101 @@
+package com.ethlo.http.logger.delegate;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The back-pressure counters of a single async lane
+ */
+public class LaneStatistics
+{
+    private final BackPressurePolicy policy;
+    private final RingBuffer<?> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder degraded = new LongAdder();
+    private final LongAdder spooled = new LongAdder();
+
+    LaneStatistics(BackPressurePolicy policy, RingBuffer<?> queue)
+    {
+        this.policy = policy;
+        this.queue = queue;
+    }
+
+    public BackPressurePolicy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * @return The number of exchanges waiting for the provider
+     */
+    public int getQueued()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return Exchanges lost to this provider because there was no room for them
+     */
+    public long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    /**
+     * @return Queued exchanges dropped to make room for newer ones
+     */
+    public long getEvicted()
+    {
+        return evicted.sum();
+    }
+
+    /**
+     * @return Request threads that had to wait for room
+     */
+    public long getBlocked()
+    {
+        return blocked.sum();
+    }
+
+    /**
+     * @return Exchanges handed to the provider without their bodies
+     */
+    public long getDegraded()
+    {
+        return degraded.sum();
+    }
+
+    /**
+     * @return Exchanges spooled to disk because this lane was full
+     */
+    public long getSpooled()
+    {
+        return spooled.sum();
+    }
+
+    void dropped()
+    {
+        dropped.increment();
+    }
+
+    void evicted()
+    {
+        evicted.increment();
+    }
+
+    void blocked()
+    {
+        blocked.increment();
+    }
+
+    void degraded()
+    {
+        degraded.increment();
+    }
+
+    void spooled()
+    {
+        spooled.increment();
+    }
+}
@@ -0,0 +1,48 @@
+package com.ethlo.http.logger.delegate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+
+/**
+ * The failure handling of a single logging provider
+ *
+ * @param maxAttempts      The number of times a call that failed for the provider is made, including the first
+ * @param retryBackoff     The pause before the first retry, doubled for every retry after it
+ * @param maxRetryBackoff  The longest pause between retries
+ * @param failureThreshold The number of consecutive calls failing for the provider that opens its circuit breaker
+ * @param openDuration     How long the circuit breaker stays open before the provider is tried again
+ * @param deadLetter       Whether exchanges rejected by an open circuit breaker are spooled and replayed once it closes,
+ *                         rather than failed. Requires capture to be enabled.
+ */
+public record ResilienceConfig(Integer maxAttempts, Duration retryBackoff, Duration maxRetryBackoff,
+                               Integer failureThreshold, Duration openDuration, Boolean deadLetter)
+{
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    public static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofMillis(100);
+
+    public static final Duration DEFAULT_MAX_RETRY_BACKOFF = Duration.ofSeconds(2);
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    public static final ResilienceConfig DEFAULT = new ResilienceConfig(null, null, null, null, null, null);
+
+    @ConstructorBinding
+    public ResilienceConfig
+    {
+        maxAttempts = Optional.ofNullable(maxAttempts).orElse(DEFAULT_MAX_ATTEMPTS);
+        retryBackoff = Optional.ofNullable(retryBackoff).orElse(DEFAULT_RETRY_BACKOFF);
+        maxRetryBackoff = Optional.ofNullable(maxRetryBackoff).orElse(DEFAULT_MAX_RETRY_BACKOFF);
+        failureThreshold = Optional.ofNullable(failureThreshold).orElse(DEFAULT_FAILURE_THRESHOLD);
+        openDuration = Optional.ofNullable(openDuration).orElse(DEFAULT_OPEN_DURATION);
+        deadLetter = Optional.ofNullable(deadLetter).orElse(true);
+        if (maxAttempts < 1 || failureThreshold < 1)
+        {
+            throw new IllegalArgumentException("max-attempts and failure-threshold must be positive");
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.ethlo.http.logger.delegate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ethlo.http.logger.BatchLogException;
+import com.ethlo.http.logger.HttpLogger;
+import com.ethlo.http.logger.RejectedExchangeException;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+
+/**
+ * Retries a failing logging provider with exponential backoff, and stops calling it once it keeps failing.
+ * <p>
+ * A circuit breaker opens after a number of consecutive failures, and rejects exchanges until the open duration has
+ * passed and a trial call succeeds. Rejected exchanges are copied to a dead-letter spool of the provider, and replayed
+ * once the circuit breaker lets calls through again. Without a dead-letter spool, they fail like any other call, so
+ * they are persisted for recovery.
+ * <p>
+ * Only calls that failed as a whole, for the provider, are retried and counted by the circuit breaker. An exchange the
+ * provider rejects with a {@link RejectedExchangeException}, or the failed part of a batch that was otherwise logged,
+ * would fail the same way again, so it goes to the dead-letter spool right away, and leaves the circuit breaker alone.
+ */
+public class ResilientHttpLogger implements HttpLogger
+{
+    private static final Logger logger = LoggerFactory.getLogger(ResilientHttpLogger.class);
+
+    private final HttpLogger httpLogger;
+    private final ResilienceConfig config;
+    private final CircuitBreaker circuitBreaker;
+    private final ExchangeSpool deadLetter;
+    private final ExecutorService replayer;
+
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param deadLetter The spool for exchanges rejected by the open circuit breaker, owned by this logger, or null
+     */
+    public ResilientHttpLogger(HttpLogger httpLogger, ResilienceConfig config, ExchangeSpool deadLetter)
+    {
+        this.httpLogger = httpLogger;
+        this.config = config;
+        this.deadLetter = deadLetter;
+        this.circuitBreaker = CircuitBreaker.of(httpLogger.getName(), CircuitBreakerConfig.custom()
+                // Only a window of failures opens it, so these are consecutive failures
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(config.failureThreshold())
+                .minimumNumberOfCalls(config.failureThreshold())
+                .failureRateThreshold(100)
+                .waitDurationInOpenState(config.openDuration())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .permittedNumberOfCallsInHalfOpenState(1)
+                .build());
+
+        if (deadLetter != null)
+        {
+            this.replayer = Executors.newSingleThreadExecutor(runnable ->
+            {
+                final Thread thread = new Thread(runnable, "http-logger-dead-letter-" + httpLogger.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else
+        {
+            this.replayer = null;
+        }
+
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+        {
+            final CircuitBreaker.State state = event.getStateTransition().getToState();
+            logger.warn("Circuit breaker of logger {} is now {}", httpLogger.getName(), state);
+            if (state != CircuitBreaker.State.OPEN)
+            {
+                replay();
+            }
+        });
+
+        // Left behind by a previous run
+        replay();
+    }
+
+    @Override
+    public void accessLog(final WebExchangeDataProvider dataProvider)
+    {
+        try
+        {
+            call(() -> httpLogger.accessLog(dataProvider), 1);
+        }
+        catch (CallNotPermittedException exc)
+        {
+            deadLetter(List.of(dataProvider), exc);
+        }
+        catch (RuntimeException exc)
+        {
+            if (isProviderFailure(exc, 1))
+            {
+                throw exc;
+            }
+            deadLetter(List.of(dataProvider), exc);
+        }
+    }
+
+    @Override
+    public void accessLog(final List<WebExchangeDataProvider> batch)
+    {
+        try
+        {
+            call(() -> httpLogger.accessLog(batch), batch.size());
+        }
+        catch (CallNotPermittedException exc)
+        {
+            deadLetter(batch, exc);
+        }
+        catch (RuntimeException exc)
+        {
+            if (isProviderFailure(exc, batch.size()))
+            {
+                throw exc;
+            }
+            // Only retried after failing as a whole, so the exchanges left are those of the last attempt
+            deadLetter(exc instanceof BatchLogException partial ? partial.getFailed() : batch, exc);
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return httpLogger.getName();
+    }
+
+    public CircuitBreaker.State getState()
+    {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * @return The number of retried calls to the provider
+     */
+    public long getRetried()
+    {
+        return retried.sum();
+    }
+
+    /**
+     * @return The number of exchanges put in the dead-letter spool
+     */
+    public long getDeadLettered()
+    {
+        return deadLettered.sum();
+    }
+
+    /**
+     * @return The number of exchanges from the dead-letter spool the provider has logged
+     */
+    public long getReplayed()
+    {
+        return replayed.sum();
+    }
+
+    /**
+     * Call the provider until it succeeds, the attempts are used up, the circuit breaker rejects the call, or it fails
+     * for the exchanges rather than for the provider
+     *
+     * @param exchanges The number of exchanges logged by the call
+     */
+    private void call(Runnable call, int exchanges)
+    {
+        long backoffNanos = config.retryBackoff().toNanos();
+        for (int attempt = 1; ; attempt++)
+        {
+            circuitBreaker.acquirePermission();
+            final long start = System.nanoTime();
+            try
+            {
+                call.run();
+                circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return;
+            }
+            catch (RuntimeException exc)
+            {
+                if (!isProviderFailure(exc, exchanges))
+                {
+                    // Says nothing about the provider, and fails the same way when retried
+                    circuitBreaker.releasePermission();
+                    throw exc;
+                }
+                circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, exc);
+                if (attempt >= config.maxAttempts() || !running)
+                {
+                    throw exc;
+                }
+                logger.debug("Logger {} failed, retrying in {}ms: {}", httpLogger.getName(), TimeUnit.NANOSECONDS.toMillis(backoffNanos), exc.getMessage());
+            }
+
+            retried.increment();
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(backoffNanos);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while retrying logger " + httpLogger.getName(), e);
+            }
+            backoffNanos = Math.min(backoffNanos * 2, config.maxRetryBackoff().toNanos());
+        }
+    }
+
+    /**
+     * @return Whether the call failed as a whole, for the provider, rather than for some of the exchanges it was given
+     */
+    private static boolean isProviderFailure(RuntimeException exc, int exchanges)
+    {
+        if (exc instanceof BatchLogException batch && batch.getFailed().size() < exchanges)
+        {
+            return false;
+        }
+
+        for (Throwable cause = exc; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof RejectedExchangeException)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deadLetter(List<WebExchangeDataProvider> batch, RuntimeException exc)
+    {
+        if (deadLetter == null)
+        {
+            throw exc;
+        }
+
+        for (WebExchangeDataProvider dataProvider : batch)
+        {
+            try
+            {
+                deadLetter.appendCopy(dataProvider);
+                deadLettered.increment();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException("Unable to dead-letter request " + dataProvider.getRequestId(), e);
+            }
+        }
+
+        // The circuit breaker may have let calls through again while appending, after the replay found nothing
+        if (circuitBreaker.getState() != CircuitBreaker.State.OPEN)
+        {
+            replay();
+        }
+    }
+
+    private void replay()
+    {
+        if (replayer != null && running)
+        {
+            replayer.execute(this::drain);
+        }
+    }
+
+    /**
+     * Hand the dead-lettered exchanges to the provider, until the spool is empty or the provider fails again
+     */
+    private void drain()
+    {
+        try
+        {
+            WebExchangeDataProvider data;
+            while (running && (data = deadLetter.poll()) != null)
+            {
+                final WebExchangeDataProvider exchange = data;
+                try
+                {
+                    call(() -> httpLogger.accessLog(exchange), 1);
+                }
+                catch (RuntimeException exc)
+                {
+                    if (!isProviderFailure(exc, 1))
+                    {
+                        // Would fail the same way every time, so left behind for recovery instead
+                        logger.warn("Logger {} rejected dead-lettered request {}: {}", httpLogger.getName(), exchange.getRequestId(), exc.getMessage());
+                        exchange.loggerError();
+                        continue;
+                    }
+
+                    // Back in the spool, with the bodies left in place, to be replayed when the circuit breaker closes
+                    deadLetter.append(exchange);
+                    logger.info("Stopped replaying dead-lettered exchanges of logger {}: {}", httpLogger.getName(), exc.getMessage());
+                    return;
+                }
+                replayed.increment();
+                exchange.cleanup();
+            }
+        }
+        catch (IOException exc)
+        {
+            logger.error("Error replaying dead-lettered exchanges of logger {}", httpLogger.getName(), exc);
+        }
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        running = false;
+        if (replayer != null)
+        {
+            replayer.shutdown();
+            if (!replayer.awaitTermination(5, TimeUnit.SECONDS))
+            {
+                replayer.shutdownNow();
+            }
+            deadLetter.close();
+        }
+        httpLogger.close();
+    }
+}
@@ -0,0 +1,305 @@
+package com.ethlo.http.logger.delegate;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated, bounded ring buffer for handing exchanges from the request threads to the logger workers.
+ * <p>
+ * Each slot carries a sequence number telling whether it is ready to be written or read, so producers and consumers
+ * only contend on a compare-and-set of their own counter, and never on a shared lock. Consumers claim slots the same
+ * way, which is uncontended with a single consumer, and still correct for lanes with several workers.
+ * <p>
+ * A consumer that has been idle for a while goes to sleep, and the next producer wakes it up. Producers only pay for a
+ * read of the sleeper count as long as consumers keep finding data.
+ *
+ * @param <E> The element type
+ */
+public class RingBuffer<E>
+{
+    private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int mask;
+    private final long[] sequences;
+    private final Object[] elements;
+    private final Sequence tail = new Sequence();
+    private final Sequence head = new Sequence();
+    private final WaitStrategy waitStrategy;
+    private final AtomicInteger sleeping = new AtomicInteger();
+    private final Set<Thread> sleepers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param capacity     The minimum capacity, rounded up to a power of two of at least two
+     * @param waitStrategy How a consumer waits in {@link #poll(long, TimeUnit)}, and a producer in
+     *                     {@link #offer(Object, long, TimeUnit)}
+     */
+    public RingBuffer(int capacity, WaitStrategy waitStrategy)
+    {
+        if (capacity < 1 || capacity > 1 << 30)
+        {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        // With a single slot, a published element would look like room for the next lap
+        final int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new long[size];
+        this.elements = new Object[size];
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        for (int i = 0; i < size; i++)
+        {
+            sequences[i] = i;
+        }
+    }
+
+    /**
+     * @return Whether the element was added, false if the buffer is full
+     */
+    public boolean offer(E element)
+    {
+        Objects.requireNonNull(element);
+        long position = tail.get();
+        while (true)
+        {
+            final int index = (int) position & mask;
+            final long difference = (long) SEQUENCES.getAcquire(sequences, index) - position;
+            if (difference == 0)
+            {
+                final long witness = tail.compareAndExchange(position, position + 1);
+                if (witness == position)
+                {
+                    elements[index] = element;
+                    // Publishes the element along with the sequence
+                    SEQUENCES.setRelease(sequences, index, position + 1);
+                    if (sleeping.get() > 0)
+                    {
+                        wakeUp();
+                    }
+                    return true;
+                }
+                position = witness;
+            }
+            else if (difference < 0)
+            {
+                // The slot still holds an element from the previous lap
+                return false;
+            }
+            else
+            {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return The oldest element, or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        long position = head.get();
+        while (true)
+        {
+            final int index = (int) position & mask;
+            final long difference = (long) SEQUENCES.getAcquire(sequences, index) - (position + 1);
+            if (difference == 0)
+            {
+                final long witness = head.compareAndExchange(position, position + 1);
+                if (witness == position)
+                {
+                    final E element = (E) elements[index];
+                    elements[index] = null;
+                    // Hands the slot back to the producers, for the next lap
+                    SEQUENCES.setRelease(sequences, index, position + mask + 1);
+                    return element;
+                }
+                position = witness;
+            }
+            else if (difference < 0)
+            {
+                // Not yet published
+                return null;
+            }
+            else
+            {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Wait for room using the configured {@link WaitStrategy}
+     *
+     * @return Whether the element was added, false if the buffer stayed full for the whole timeout
+     */
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        if (offer(element))
+        {
+            return true;
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int idleCount = 0;
+        while (true)
+        {
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+
+            if (offer(element))
+            {
+                return true;
+            }
+
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+            {
+                return false;
+            }
+            waitStrategy.idle(idleCount++, remaining);
+        }
+    }
+
+    /**
+     * Wait for an element using the configured {@link WaitStrategy}
+     *
+     * @return The oldest element, or null if none arrived within the timeout
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        E element = poll();
+        if (element != null)
+        {
+            return element;
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int idleCount = 0;
+        while (true)
+        {
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+
+            element = poll();
+            if (element != null)
+            {
+                return element;
+            }
+
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+            {
+                return null;
+            }
+
+            if (waitStrategy.isIdle(idleCount))
+            {
+                sleep(remaining);
+            }
+            else
+            {
+                waitStrategy.idle(idleCount++, remaining);
+            }
+        }
+    }
+
+    private void sleep(long maxNanos)
+    {
+        final Thread thread = Thread.currentThread();
+        sleepers.add(thread);
+        sleeping.incrementAndGet();
+        try
+        {
+            // Registered before checking for data, while producers claim a slot before checking for sleepers, so
+            // either this sees the new element, or the producer sees this sleeper
+            if (isEmpty())
+            {
+                LockSupport.parkNanos(this, maxNanos);
+            }
+        } finally
+        {
+            sleeping.decrementAndGet();
+            sleepers.remove(thread);
+        }
+    }
+
+    private void wakeUp()
+    {
+        for (Thread sleeper : sleepers)
+        {
+            LockSupport.unpark(sleeper);
+        }
+    }
+
+    /**
+     * @return The number of elements, which is only a snapshot while producers or consumers are active
+     */
+    public int size()
+    {
+        return (int) Math.clamp(tail.get() - head.get(), 0, elements.length);
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    public int capacity()
+    {
+        return elements.length;
+    }
+
+    /**
+     * Padding to keep a sequence off the cache lines of its neighbours
+     */
+    @SuppressWarnings("unused")
+    private abstract static class LeftPadding
+    {
+        private long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    private abstract static class Value extends LeftPadding
+    {
+        protected volatile long value;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Sequence extends Value
+    {
+        private static final VarHandle VALUE;
+
+        static
+        {
+            try
+            {
+                VALUE = MethodHandles.lookup().findVarHandle(Value.class, "value", long.class);
+            }
+            catch (ReflectiveOperationException exc)
+            {
+                throw new ExceptionInInitializerError(exc);
+            }
+        }
+
+        private long p11, p12, p13, p14, p15, p16, p17;
+
+        private long get()
+        {
+            return value;
+        }
+
+        private long compareAndExchange(long expected, long update)
+        {
+            return (long) VALUE.compareAndExchange(this, expected, update);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ethlo.http.logger.delegate;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How an idle consumer of a {@link RingBuffer} waits for data. While data keeps coming, the consumer polls with a short
+ * back-off, so producers never have to signal it. Only once it has been idle for a while does it go to sleep until a
+ * producer wakes it up, so an idle lane does not keep waking up either.
+ */
+public enum WaitStrategy
+{
+    /**
+     * Park right away, backing off from {@value #MIN_PARK_NANOS}ns to {@value #MAX_PARK_NANOS}ns. Uses the least CPU,
+     * at the cost of some latency after an idle period.
+     */
+    PARK
+            {
+                @Override
+                void idle(int idleCount, long maxNanos)
+                {
+                    park(idleCount, maxNanos);
+                }
+
+                @Override
+                boolean isIdle(int idleCount)
+                {
+                    return idleCount >= BACK_OFFS;
+                }
+            },
+
+    /**
+     * Spin and yield for a short while before parking. Picks up new data the fastest, while burning some CPU whenever
+     * the consumer runs out of data.
+     */
+    SPIN_THEN_PARK
+            {
+                @Override
+                void idle(int idleCount, long maxNanos)
+                {
+                    if (idleCount < SPINS)
+                    {
+                        Thread.onSpinWait();
+                    }
+                    else if (idleCount < SPINS + YIELDS)
+                    {
+                        Thread.yield();
+                    }
+                    else
+                    {
+                        park(idleCount - SPINS - YIELDS, maxNanos);
+                    }
+                }
+
+                @Override
+                boolean isIdle(int idleCount)
+                {
+                    return idleCount >= SPINS + YIELDS + BACK_OFFS;
+                }
+            };
+
+    private static final long MIN_PARK_NANOS = 50_000;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+    private static final int SPINS = 1000;
+    private static final int YIELDS = 100;
+    private static final int BACK_OFFS = 20;
+
+    /**
+     * @param idleCount The number of times the consumer found no data in a row
+     * @param maxNanos  The longest the consumer is willing to wait
+     */
+    abstract void idle(int idleCount, long maxNanos);
+
+    /**
+     * @param idleCount The number of times the consumer found no data in a row
+     * @return Whether the consumer should rather sleep until a producer signals new data, after roughly
+     * {@value #BACK_OFFS} parks without any
+     */
+    abstract boolean isIdle(int idleCount);
+
+    private static void park(int idleCount, long maxNanos)
+    {
+        final long backoff = MIN_PARK_NANOS << Math.min(idleCount, 5);
+        LockSupport.parkNanos(Math.min(Math.min(backoff, MAX_PARK_NANOS), maxNanos));
+    }
+}
@@ -2,13 +2,29 @@ package com.ethlo.http.match;
 
 import java.util.Optional;
 
-public record LogOptions(HeaderPredicate headers, ContentProcessing raw, ContentProcessing body)
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * @param maxBodyBytes The maximum number of body bytes to capture. Bytes past the limit are only counted.
+ * @param tailBytes    How many of the <code>maxBodyBytes</code> to keep from the end of the body, rather than the start
+ */
+public record LogOptions(HeaderPredicate headers, ContentProcessing raw, ContentProcessing body, DataSize maxBodyBytes,
+                         DataSize tailBytes)
 {
-    public LogOptions(final HeaderPredicate headers, final ContentProcessing raw, final ContentProcessing body)
+    @ConstructorBinding
+    public LogOptions(final HeaderPredicate headers, final ContentProcessing raw, final ContentProcessing body, final DataSize maxBodyBytes, final DataSize tailBytes)
     {
         this.headers = Optional.ofNullable(headers).orElse(HeaderPredicate.ALL);
         this.raw = Optional.ofNullable(raw).orElse(ContentProcessing.NONE);
         this.body = Optional.ofNullable(body).orElse(ContentProcessing.NONE);
+        this.maxBodyBytes = maxBodyBytes;
+        this.tailBytes = Optional.ofNullable(tailBytes).orElse(DataSize.ofBytes(0));
+    }
+
+    public LogOptions(final HeaderPredicate headers, final ContentProcessing raw, final ContentProcessing body)
+    {
+        this(headers, raw, body, null, null);
     }
 
     public boolean mustBuffer()
@@ -18,6 +34,31 @@ public record LogOptions(HeaderPredicate headers, ContentProcessing raw, Content
                 || body == ContentProcessing.STORE;
     }
 
+    /**
+     * @return Whether the body bytes themselves are needed, rather than just the size
+     */
+    public boolean mustStore()
+    {
+        return raw == ContentProcessing.STORE
+                || body == ContentProcessing.STORE;
+    }
+
+    /**
+     * @return The maximum number of body bytes to capture, {@link Long#MAX_VALUE} if unlimited
+     */
+    public long bodyLimit()
+    {
+        return Optional.ofNullable(maxBodyBytes).map(DataSize::toBytes).orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * @return The number of bytes kept from the end of a body that exceeds {@link #bodyLimit()}
+     */
+    public long bodyTail()
+    {
+        return Math.min(tailBytes.toBytes(), bodyLimit());
+    }
+
     public enum ContentProcessing
     {
         NONE, SIZE, STORE;
@@ -5,34 +5,56 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
 import org.jspecify.annotations.Nullable;
 
+import com.ethlo.http.util.ByteBufferInputStream;
+
 /**
  * Provides a unified way to access the request/response body,
  * regardless of whether it is stored in memory or on disk.
+ * <p>
+ * In-memory bodies are exposed as read-only views of the capture buffers, and are only valid until the
+ * exchange is cleaned up.
+ *
+ * @param gzipped Whether the stored bytes were gzip-compressed by the capture, on top of any content encoding
  */
-public record BodyProvider(@Nullable Path file, byte @Nullable [] bytes, @Nullable String contentEncoding)
+public record BodyProvider(@Nullable Path file, @Nullable List<ByteBuffer> buffers, @Nullable String contentEncoding,
+                           boolean gzipped)
 {
     public static final BodyProvider NONE = new BodyProvider("<<None>>".getBytes(StandardCharsets.UTF_8), null);
 
+    // The content encodings decoded by getInputStream
+    private static final Set<String> DECODED_ENCODINGS = Set.of("gzip", "deflate");
+
     // Constructor for Disk-based storage
     public BodyProvider(Path file, String contentEncoding)
     {
-        this(Objects.requireNonNull(file), null, contentEncoding);
+        this(Objects.requireNonNull(file), null, contentEncoding, false);
     }
 
     // Constructor for Memory-based storage
+    public BodyProvider(List<ByteBuffer> buffers, String contentEncoding)
+    {
+        this(null, buffers.stream().map(ByteBuffer::asReadOnlyBuffer).toList(), contentEncoding, false);
+    }
+
+    // Constructor for heap storage
     public BodyProvider(byte[] bytes, String contentEncoding)
     {
-        this(null, Objects.requireNonNull(bytes), contentEncoding);
+        this(List.of(ByteBuffer.wrap(Objects.requireNonNull(bytes))), contentEncoding);
     }
 
     public InputStream getInputStream()
@@ -59,12 +81,69 @@ public record BodyProvider(@Nullable Path file, byte @Nullable [] bytes, @Nullab
         }
     }
 
+    /**
+     * @return This body without content decoding, for data that cannot be decoded, like a truncated body
+     */
+    public BodyProvider withoutDecoding()
+    {
+        return contentEncoding == null ? this : new BodyProvider(file, buffers, null, gzipped);
+    }
+
+    /**
+     * @return This body, with the stored bytes marked as gzip-compressed by the capture
+     */
+    public BodyProvider asGzipped()
+    {
+        return gzipped ? this : new BodyProvider(file, buffers, contentEncoding, true);
+    }
+
+    /**
+     * @return The number of stored (possibly encoded or compressed) bytes
+     */
+    public long size()
+    {
+        if (buffers != null)
+        {
+            return buffers.stream().mapToLong(ByteBuffer::remaining).sum();
+        }
+        else if (file != null)
+        {
+            try
+            {
+                return Files.size(file);
+            }
+            catch (IOException exc)
+            {
+                throw new UncheckedIOException(exc);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return Whether {@link #getInputStream()} hands out the stored bytes as they are, so its length is {@link #size()}
+     */
+    public boolean isReadAsStored()
+    {
+        if (gzipped)
+        {
+            return false;
+        }
+        return contentEncoding == null || !DECODED_ENCODINGS.contains(contentEncoding.toLowerCase());
+    }
+
     private InputStream createRawStream() throws IOException
     {
-        if (bytes != null)
+        final InputStream stored = createStoredStream();
+        return gzipped ? new GZIPInputStream(stored) : stored;
+    }
+
+    private InputStream createStoredStream() throws IOException
+    {
+        if (buffers != null)
         {
             // Data is in RAM
-            return new ByteArrayInputStream(bytes);
+            return new ByteBufferInputStream(buffers);
         }
         else if (file != null)
         {
@@ -93,14 +172,24 @@ public record BodyProvider(@Nullable Path file, byte @Nullable [] bytes, @Nullab
                 // Atomically move the file if on the same partition
                 Files.createDirectories(target.getParent());
                 Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
-                return new BodyProvider(target, contentEncoding);
+                return new BodyProvider(target, null, contentEncoding, gzipped);
             }
-            else if (bytes != null)
+            else if (buffers != null)
             {
                 // If it was only in memory, persist it to the target path now
                 Files.createDirectories(target.getParent());
-                Files.write(target, bytes);
-                return new BodyProvider(target, contentEncoding);
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+                {
+                    for (ByteBuffer buffer : buffers)
+                    {
+                        final ByteBuffer view = buffer.duplicate();
+                        while (view.hasRemaining())
+                        {
+                            out.write(view);
+                        }
+                    }
+                }
+                return new BodyProvider(target, null, contentEncoding, gzipped);
             }
             return this; // Nothing to do
         }
@@ -109,4 +198,4 @@ public record BodyProvider(@Nullable Path file, byte @Nullable [] bytes, @Nullab
             throw new UncheckedIOException(e);
         }
     }
-}
\ No newline at end of file
+}
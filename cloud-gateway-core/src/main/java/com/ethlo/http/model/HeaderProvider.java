@@ -1,6 +1,6 @@
 package com.ethlo.http.model;
 
-import com.ethlo.http.DataBufferRepository;
+import com.ethlo.http.capture.CaptureSession;
 import com.ethlo.http.netty.ServerDirection;
 
 import org.springframework.http.HttpHeaders;
@@ -11,15 +11,13 @@ import org.springframework.http.HttpHeaders;
  */
 public class HeaderProvider
 {
-    private final DataBufferRepository repository;
-    private final String requestId;
+    private final CaptureSession captureSession;
     private final ServerDirection serverDirection;
     private HttpHeaders cache;
 
-    public HeaderProvider(final DataBufferRepository repository, final String requestId, final ServerDirection serverDirection)
+    public HeaderProvider(final CaptureSession captureSession, final ServerDirection serverDirection)
     {
-        this.repository = repository;
-        this.requestId = requestId;
+        this.captureSession = captureSession;
         this.serverDirection = serverDirection;
     }
 
@@ -27,7 +25,7 @@ public class HeaderProvider
     {
         if (cache == null)
         {
-            cache = repository.getHeaders(serverDirection, requestId).orElseGet(HttpHeaders::new);
+            cache = captureSession.getHeaders(serverDirection).orElseGet(HttpHeaders::new);
         }
         return cache;
     }
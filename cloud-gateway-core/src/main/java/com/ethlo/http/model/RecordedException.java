@@ -0,0 +1,23 @@
+package com.ethlo.http.model;
+
+/**
+ * Stands in for an exception that was recorded rather than thrown in this JVM, like one read back from disk
+ */
+public class RecordedException extends RuntimeException
+{
+    private final String type;
+
+    public RecordedException(String type, String message)
+    {
+        super(message, null, false, false);
+        this.type = type;
+    }
+
+    /**
+     * @return The class name of the original exception
+     */
+    public String getType()
+    {
+        return type;
+    }
+}
@@ -16,8 +16,10 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 
-import com.ethlo.http.DataBufferRepository;
 import com.ethlo.http.Route;
+import com.ethlo.http.capture.BodyCapture;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.HeadersOnlyCaptureSession;
 import com.ethlo.http.netty.PredicateConfig;
 import com.ethlo.http.netty.ServerDirection;
 import com.ethlo.http.processors.auth.RealmUser;
@@ -25,7 +27,7 @@ import com.ethlo.http.processors.auth.RealmUser;
 public class WebExchangeDataProvider
 {
     private static final Logger logger = LoggerFactory.getLogger(WebExchangeDataProvider.class);
-    private final DataBufferRepository dataBufferRepository;
+    private final CaptureSession captureSession;
     private final PredicateConfig predicateConfig;
     private String requestId;
     private Route route;
@@ -42,11 +44,15 @@ public class WebExchangeDataProvider
     private RealmUser user;
     private Throwable exception;
     private Runnable cleanupTask;
-    private Map<String, Object> metamap;
+    private BodyCapture requestCapture;
+    private BodyCapture responseCapture;
+    private Long requestBodySize;
+    private Long responseBodySize;
+    private volatile Map<String, Object> metamap;
 
-    public WebExchangeDataProvider(DataBufferRepository dataBufferRepository, final PredicateConfig predicateConfig)
+    public WebExchangeDataProvider(CaptureSession captureSession, final PredicateConfig predicateConfig)
     {
-        this.dataBufferRepository = Objects.requireNonNull(dataBufferRepository);
+        this.captureSession = Objects.requireNonNull(captureSession);
         this.predicateConfig = Objects.requireNonNull(predicateConfig);
     }
 
@@ -68,6 +74,23 @@ public class WebExchangeDataProvider
         }
     }
 
+    public WebExchangeDataProvider bodyCapture(BodyCapture requestCapture, BodyCapture responseCapture)
+    {
+        this.requestCapture = requestCapture;
+        this.responseCapture = responseCapture;
+        return this;
+    }
+
+    /**
+     * Body sizes known up front, for exchanges whose bodies were not captured by this instance
+     */
+    public WebExchangeDataProvider bodySizes(Long requestBodySize, Long responseBodySize)
+    {
+        this.requestBodySize = requestBodySize;
+        this.responseBodySize = responseBodySize;
+        return this;
+    }
+
     public WebExchangeDataProvider requestId(String requestId)
     {
         this.requestId = requestId;
@@ -118,12 +141,46 @@ public class WebExchangeDataProvider
 
     public Optional<BodyProvider> getRequestBody()
     {
-        return dataBufferRepository.getBody(ServerDirection.REQUEST, requestId);
+        return getBody(ServerDirection.REQUEST);
     }
 
     public Optional<BodyProvider> getResponseBody()
     {
-        return dataBufferRepository.getBody(ServerDirection.RESPONSE, requestId);
+        return getBody(ServerDirection.RESPONSE);
+    }
+
+    private Optional<BodyProvider> getBody(ServerDirection direction)
+    {
+        final Optional<BodyProvider> body = captureSession.getBody(direction);
+        // A truncated body cannot be decoded, so it is handed out as captured
+        return isBodyTruncated(direction) ? body.map(BodyProvider::withoutDecoding) : body;
+    }
+
+    /**
+     * @return The number of body bytes seen, including any that were not captured
+     */
+    public Optional<Long> getBodySize(ServerDirection direction)
+    {
+        final BodyCapture capture = direction == ServerDirection.REQUEST ? requestCapture : responseCapture;
+        if (capture != null)
+        {
+            return Optional.of(capture.getTotalBytes());
+        }
+        return Optional.ofNullable(direction == ServerDirection.REQUEST ? requestBodySize : responseBodySize);
+    }
+
+    /**
+     * @return Whether the captured body is incomplete, due to the configured body limit or capture overload
+     */
+    public boolean isBodyTruncated(ServerDirection direction)
+    {
+        final BodyCapture capture = direction == ServerDirection.REQUEST ? requestCapture : responseCapture;
+        return (capture != null && capture.isTruncated()) || captureSession.isTruncated(direction);
+    }
+
+    public CaptureSession getCaptureSession()
+    {
+        return captureSession;
     }
 
     public String getRequestId()
@@ -155,7 +212,7 @@ public class WebExchangeDataProvider
     {
         if (requestHeaders == null)
         {
-            requestHeaders = new HeaderProvider(dataBufferRepository, requestId, ServerDirection.REQUEST);
+            requestHeaders = new HeaderProvider(captureSession, ServerDirection.REQUEST);
         }
         return requestHeaders.getHeaders();
     }
@@ -164,7 +221,7 @@ public class WebExchangeDataProvider
     {
         if (responseHeaders == null)
         {
-            responseHeaders = new HeaderProvider(dataBufferRepository, requestId, ServerDirection.RESPONSE);
+            responseHeaders = new HeaderProvider(captureSession, ServerDirection.RESPONSE);
         }
         return responseHeaders.getHeaders();
     }
@@ -186,9 +243,11 @@ public class WebExchangeDataProvider
 
     public Map<String, Object> asMetaMap()
     {
-        if (metamap == null)
+        Map<String, Object> result = metamap;
+        if (result == null)
         {
-            metamap = new TreeMap<>();
+            // Built locally and published once complete, as several loggers may ask at the same time
+            final Map<String, Object> metamap = new TreeMap<>();
             metamap.put("route_id", route.id());
             metamap.put("route_uri", route.uri().toString());
             metamap.put("realm_claim", getUser().map(RealmUser::realm).orElse(null));
@@ -207,11 +266,14 @@ public class WebExchangeDataProvider
             metamap.put("duration", getDuration().toMillis());
             metamap.put("status", getStatusCode().value());
             metamap.put("is_error", getStatusCode().isError());
+            metamap.put("request_body_truncated", isBodyTruncated(ServerDirection.REQUEST));
+            metamap.put("response_body_truncated", isBodyTruncated(ServerDirection.RESPONSE));
             metamap.put("request_headers", getRequestHeaders());
             metamap.put("response_headers", getResponseHeaders());
-            metamap = Collections.unmodifiableMap(metamap);
+            result = Collections.unmodifiableMap(metamap);
+            this.metamap = result;
         }
-        return metamap;
+        return result;
     }
 
     public Route getRoute()
@@ -263,9 +325,45 @@ public class WebExchangeDataProvider
         return Optional.ofNullable(exception);
     }
 
+    /**
+     * @return The class name of the exception, if any, also for a {@link RecordedException}
+     */
+    public Optional<String> getExceptionType()
+    {
+        return getException().map(exc -> exc instanceof RecordedException recorded ? recorded.getType() : exc.getClass().getName());
+    }
+
+    /**
+     * @return A copy with the metadata and headers, but none of the captured body data, for when bodies have to be shed.
+     * The copy has nothing to clean up, and is independent of the cleanup of this instance.
+     */
+    public WebExchangeDataProvider withoutBodies()
+    {
+        final Long requestBodySize = getBodySize(ServerDirection.REQUEST).orElse(null);
+        final Long responseBodySize = getBodySize(ServerDirection.RESPONSE).orElse(null);
+        final CaptureSession headersOnly = new HeadersOnlyCaptureSession(getRequestHeaders(), getResponseHeaders(),
+                requestBodySize != null && requestBodySize > 0, responseBodySize != null && responseBodySize > 0
+        );
+        return new WebExchangeDataProvider(headersOnly, predicateConfig)
+                .requestId(requestId)
+                .cleanupTask(() -> {})
+                .bodySizes(requestBodySize, responseBodySize)
+                .route(route)
+                .method(method)
+                .path(path)
+                .uri(uri)
+                .statusCode(statusCode)
+                .protocol(protocol)
+                .timestamp(timestamp)
+                .duration(duration)
+                .remoteAddress(remoteAddress)
+                .user(user)
+                .exception(exception);
+    }
+
     public void loggerError()
     {
         logger.warn("Unable to ingest into all loggers for request {}, leaving request/response files behind", requestId);
-        dataBufferRepository.persistForError(requestId);
+        captureSession.persistForError(this);
     }
 }
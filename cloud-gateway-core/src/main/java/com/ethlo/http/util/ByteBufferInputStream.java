@@ -0,0 +1,72 @@
+package com.ethlo.http.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An {@link InputStream} reading sequentially over a list of buffers without copying them.
+ * The buffers are duplicated, so the positions of the supplied buffers are left untouched.
+ */
+public class ByteBufferInputStream extends InputStream
+{
+    private final ByteBuffer[] buffers;
+    private int index;
+
+    public ByteBufferInputStream(List<ByteBuffer> buffers)
+    {
+        this.buffers = new ByteBuffer[buffers.size()];
+        for (int i = 0; i < this.buffers.length; i++)
+        {
+            this.buffers[i] = buffers.get(i).duplicate();
+        }
+    }
+
+    @Override
+    public int read()
+    {
+        final ByteBuffer current = current();
+        return current != null ? current.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len)
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        final ByteBuffer current = current();
+        if (current == null)
+        {
+            return -1;
+        }
+
+        final int chunk = Math.min(len, current.remaining());
+        current.get(b, off, chunk);
+        return chunk;
+    }
+
+    @Override
+    public int available()
+    {
+        final ByteBuffer current = current();
+        return current != null ? current.remaining() : 0;
+    }
+
+    private ByteBuffer current()
+    {
+        while (index < buffers.length)
+        {
+            if (buffers[index].hasRemaining())
+            {
+                return buffers[index];
+            }
+            index++;
+        }
+        return null;
+    }
+}
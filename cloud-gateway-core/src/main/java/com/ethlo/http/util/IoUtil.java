@@ -3,6 +3,9 @@ package com.ethlo.http.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
 
 public class IoUtil
 {
@@ -27,6 +30,26 @@ public class IoUtil
         }
     }
 
+    public static void writeFully(FileChannel fc, ByteBuffer src) throws IOException
+    {
+        while (src.hasRemaining())
+        {
+            if (fc.write(src) == 0)
+            {
+                // Standard retry logic for edge cases/interrupts
+                Thread.yield();
+            }
+        }
+    }
+
+    public static void writeFully(FileChannel fc, List<ByteBuffer> views) throws IOException
+    {
+        for (ByteBuffer view : views)
+        {
+            writeFully(fc, view.duplicate());
+        }
+    }
+
     public static String formatSize(long v)
     {
         if (v < 1024) return v + " B";
@@ -0,0 +1,217 @@
+package com.ethlo.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.CaptureSink;
+import com.ethlo.http.logger.CaptureConfiguration;
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+import com.ethlo.http.netty.ServerDirection;
+
+class DefaultDataBufferRepositoryTest
+{
+    @TempDir
+    Path logDirectory;
+
+    @Test
+    void smallBodyStaysInMemory()
+    {
+        final CaptureSession session = repository(1024).open("abc");
+        session.putHeaders(ServerDirection.REQUEST, new HttpHeaders());
+        final CaptureSink sink = session.sink(ServerDirection.REQUEST);
+        sink.write(ByteBuffer.wrap("Hello ".getBytes()));
+        sink.write(ByteBuffer.wrap("world".getBytes()));
+
+        final BodyProvider body = session.getBody(ServerDirection.REQUEST).orElseThrow();
+        assertThat(body.file()).isNull();
+        assertThat(read(body)).isEqualTo("Hello world".getBytes());
+        assertThat(logDirectory).isEmptyDirectory();
+
+        session.release();
+    }
+
+    @Test
+    void largeBodyIsSpilledAndDeletedOnRelease()
+    {
+        final DefaultDataBufferRepository repository = repository(16);
+        final CaptureSession session = repository.open("abc");
+        session.putHeaders(ServerDirection.RESPONSE, new HttpHeaders());
+        final byte[] data = new byte[100];
+        Arrays.fill(data, (byte) 'x');
+        final CaptureSink sink = session.sink(ServerDirection.RESPONSE);
+        sink.write(ByteBuffer.wrap(data, 0, 10));
+        sink.write(ByteBuffer.wrap(data, 10, 90));
+
+        final BodyProvider body = session.getBody(ServerDirection.RESPONSE).orElseThrow();
+        assertThat(body.file()).exists();
+        assertThat(read(body)).isEqualTo(data);
+
+        session.release();
+        repository.close();
+        assertThat(body.file()).doesNotExist();
+    }
+
+    @Test
+    void persistForErrorLeavesFilesBehind()
+    {
+        final CaptureSession session = repository(1024).open("abc");
+        final HttpHeaders headers = new HttpHeaders();
+        headers.add("Foo", "bar");
+        session.putHeaders(ServerDirection.REQUEST, headers);
+        session.sink(ServerDirection.REQUEST).write(ByteBuffer.wrap("payload".getBytes()));
+
+        session.persistForError(new WebExchangeDataProvider(session, new PredicateConfig("test", request -> true, null, null)).requestId("abc"));
+
+        assertThat(logDirectory.resolve("error_abc_request.headers")).hasContent("Foo: bar\r\n");
+        assertThat(logDirectory.resolve("error_abc_request.body")).hasContent("payload");
+        assertThat(logDirectory.resolve("error_abc.exchange")).exists();
+    }
+
+    @Test
+    void sessionIsReleasedWithTheLastReference()
+    {
+        final DefaultDataBufferRepository repository = repository(16);
+        final CaptureSession session = repository.open("abc");
+        session.sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(100));
+        final BodyProvider body = session.getBody(ServerDirection.REQUEST).orElseThrow();
+
+        session.retain();
+        session.release();
+        assertThat(repository.getOpenSessions()).isEqualTo(1);
+        assertThat(session.getBody(ServerDirection.REQUEST)).isPresent();
+
+        session.release();
+        repository.close();
+        assertThat(repository.getOpenSessions()).isZero();
+        assertThat(body.file()).doesNotExist();
+    }
+
+    @Test
+    void reaperReleasesLeakedSessionsAndOrphanedFiles() throws Exception
+    {
+        final CaptureConfiguration config = new CaptureConfiguration();
+        config.setSessionTtl(Duration.ofMillis(1));
+        final DefaultDataBufferRepository repository = repository(config, 1024);
+        final CaptureSession leaked = repository.open("leaked");
+        leaked.sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(100));
+        final Path orphan = Files.writeString(logDirectory.resolve("crashed_response.body"), "data");
+        Files.setLastModifiedTime(orphan, FileTime.from(Instant.now().minusSeconds(60)));
+        Thread.sleep(10);
+
+        repository.reap();
+
+        assertThat(repository.getReapedSessions()).isEqualTo(1);
+        assertThat(repository.getReapedFiles()).isEqualTo(1);
+        assertThat(repository.getOpenSessions()).isZero();
+        assertThat(repository.getMemoryUsed()).isZero();
+        assertThat(orphan).doesNotExist();
+
+        // Late data is ignored rather than captured into a released session
+        leaked.sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(100));
+        assertThat(repository.getMemoryUsed()).isZero();
+
+        leaked.release();
+        repository.close();
+    }
+
+    @Test
+    void reaperMeasuresTheTtlFromTheLastActivity() throws Exception
+    {
+        final CaptureConfiguration config = new CaptureConfiguration();
+        config.setSessionTtl(Duration.ofMillis(500));
+        final DefaultDataBufferRepository repository = repository(config, 1024);
+        final CaptureSession session = repository.open("slow");
+
+        // Open for longer than the TTL, but never idle for that long
+        for (int i = 0; i < 3; i++)
+        {
+            Thread.sleep(200);
+            session.sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(10));
+        }
+        session.sink(ServerDirection.REQUEST).complete();
+        repository.reap();
+        assertThat(repository.getReapedSessions()).isZero();
+
+        Thread.sleep(600);
+        repository.reap();
+        assertThat(repository.getReapedSessions()).isEqualTo(1);
+
+        session.release();
+        repository.close();
+    }
+
+    @Test
+    void largeBodiesSpillEarlyAboveHighWatermark()
+    {
+        final CaptureConfiguration config = new CaptureConfiguration();
+        config.setMemoryArenaSize(DataSize.ofKilobytes(16));
+        config.setMemoryHighWatermark(0.5);
+        final DefaultDataBufferRepository repository = repository(config, 2048);
+
+        // Fill the arena to 10 of 16 KB, above the 8 KB high watermark
+        for (int i = 0; i < 5; i++)
+        {
+            repository.open("fill" + i).sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(2048));
+        }
+        assertThat(repository.getOpenSpills()).isZero();
+        assertThat(repository.effectiveThreshold()).isEqualTo(1536);
+
+        repository.open("large").sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(2048));
+        assertThat(repository.getOpenSpills()).isEqualTo(1);
+        assertThat(repository.getSpilledBytes()).isEqualTo(2048);
+
+        repository.open("small").sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(1024));
+        assertThat(repository.getOpenSpills()).isEqualTo(1);
+        assertThat(repository.getMemoryUsed()).isEqualTo(11 * 1024);
+
+        repository.close();
+    }
+
+    private DefaultDataBufferRepository repository(int threshold)
+    {
+        return repository(new CaptureConfiguration(), threshold);
+    }
+
+    private DefaultDataBufferRepository repository(CaptureConfiguration config, int threshold)
+    {
+        config.setLogDirectory(logDirectory);
+        try
+        {
+            return new DefaultDataBufferRepository(config, DataSize.ofBytes(threshold));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] read(BodyProvider body)
+    {
+        try (InputStream in = body.getInputStream())
+        {
+            return in.readAllBytes();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ethlo.http.capture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.ethlo.http.util.ByteBufferInputStream;
+
+class ArenaBufferTest
+{
+    @Test
+    void writeAcrossSegments() throws IOException
+    {
+        final BufferArena arena = new BufferArena(16, 1024);
+        final ArenaBuffer buffer = new ArenaBuffer(arena);
+        final byte[] data = new byte[100];
+        new Random(1).nextBytes(data);
+
+        assertThat(buffer.write(ByteBuffer.wrap(data, 0, 7))).isTrue();
+        assertThat(buffer.write(ByteBuffer.wrap(data, 7, 93))).isTrue();
+        assertThat(buffer.size()).isEqualTo(100);
+        assertThat(arena.getUsed()).isEqualTo(112);
+
+        try (InputStream in = new ByteBufferInputStream(buffer.views()))
+        {
+            assertThat(in.readAllBytes()).isEqualTo(data);
+        }
+
+        buffer.release();
+        assertThat(arena.getUsed()).isZero();
+    }
+
+    @Test
+    void writeIsAllOrNothingWhenExhausted()
+    {
+        final BufferArena arena = new BufferArena(16, 32);
+        final ArenaBuffer buffer = new ArenaBuffer(arena);
+
+        assertThat(buffer.write(ByteBuffer.wrap(new byte[20]))).isTrue();
+        final ByteBuffer tooLarge = ByteBuffer.wrap(new byte[20]);
+        assertThat(buffer.write(tooLarge)).isFalse();
+        assertThat(tooLarge.remaining()).isEqualTo(20);
+        assertThat(buffer.size()).isEqualTo(20);
+    }
+
+    @Test
+    void segmentsAreRecycled()
+    {
+        final BufferArena arena = new BufferArena(16, 16);
+        final ArenaBuffer first = new ArenaBuffer(arena);
+        assertThat(first.reserve(10)).isTrue();
+        assertThat(new ArenaBuffer(arena).reserve(1)).isFalse();
+
+        first.release();
+        final ArenaBuffer second = new ArenaBuffer(arena);
+        assertThat(second.write(ByteBuffer.wrap(new byte[]{1, 2, 3}))).isTrue();
+        assertThat(second.views()).hasSize(1);
+        assertThat(second.views().getFirst().remaining()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,92 @@
+package com.ethlo.http.capture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncCaptureWriterTest
+{
+    @Test
+    void tasksRunInSubmissionOrder()
+    {
+        final List<Integer> executed = new CopyOnWriteArrayList<>();
+        try (AsyncCaptureWriter writer = new AsyncCaptureWriter(1024))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                final int value = i;
+                writer.submit(0, () -> executed.add(value));
+            }
+            writer.barrier().join();
+        }
+        assertThat(executed).hasSize(100).isSorted();
+    }
+
+    @Test
+    void pendingBytesAreBounded()
+    {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try (AsyncCaptureWriter writer = new AsyncCaptureWriter(100))
+        {
+            assertThat(writer.tryAcquire(60)).isTrue();
+            writer.submit(60, () ->
+            {
+                try
+                {
+                    blocked.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            assertThat(writer.tryAcquire(60)).isFalse();
+            assertThat(writer.tryAcquire(40)).isTrue();
+            writer.submit(40, () -> {});
+
+            blocked.countDown();
+            writer.barrier().join();
+            assertThat(writer.getPendingBytes()).isZero();
+            assertThat(writer.tryAcquire(60)).isTrue();
+        }
+    }
+
+    @Test
+    void tasksSubmittedWhileClosingRunInOrderOnOneThreadAtATime() throws InterruptedException
+    {
+        final List<Integer> executed = new CopyOnWriteArrayList<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AsyncCaptureWriter writer = new AsyncCaptureWriter(1024);
+        final Thread submitter = Thread.ofPlatform().start(() ->
+        {
+            for (int i = 0; i < 10_000; i++)
+            {
+                final int value = i;
+                writer.submit(0, () ->
+                {
+                    if (running.incrementAndGet() > 1)
+                    {
+                        overlaps.incrementAndGet();
+                    }
+                    executed.add(value);
+                    running.decrementAndGet();
+                });
+            }
+        });
+
+        writer.close();
+        submitter.join();
+        writer.barrier().join();
+
+        assertThat(overlaps).hasValue(0);
+        assertThat(executed).hasSize(10_000).isSorted();
+    }
+}
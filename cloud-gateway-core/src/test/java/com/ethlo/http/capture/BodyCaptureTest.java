@@ -0,0 +1,74 @@
+package com.ethlo.http.capture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BodyCaptureTest
+{
+    private final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+    private final CaptureSink sink = data -> {
+        final byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        stored.writeBytes(bytes);
+    };
+
+    @Test
+    void unlimitedPassesEverything()
+    {
+        final byte[] data = random(1000);
+        final BodyCapture capture = new BodyCapture(sink, Long.MAX_VALUE, 0);
+        writeInChunks(capture, data, 7);
+
+        assertThat(stored.toByteArray()).isEqualTo(data);
+        assertThat(capture.getTotalBytes()).isEqualTo(1000);
+        assertThat(capture.isTruncated()).isFalse();
+    }
+
+    @Test
+    void keepsHeadAndTail()
+    {
+        final byte[] data = random(1000);
+        final BodyCapture capture = new BodyCapture(sink, 100, 30);
+        writeInChunks(capture, data, 13);
+
+        final byte[] expected = new byte[100];
+        System.arraycopy(data, 0, expected, 0, 70);
+        System.arraycopy(data, 970, expected, 70, 30);
+        assertThat(stored.toByteArray()).isEqualTo(expected);
+        assertThat(capture.getTotalBytes()).isEqualTo(1000);
+        assertThat(capture.isTruncated()).isTrue();
+    }
+
+    @Test
+    void keepsHeadOnly()
+    {
+        final byte[] data = random(1000);
+        final BodyCapture capture = new BodyCapture(sink, 100, 0);
+        writeInChunks(capture, data, 1000);
+
+        assertThat(stored.toByteArray()).isEqualTo(Arrays.copyOf(data, 100));
+        assertThat(capture.isTruncated()).isTrue();
+    }
+
+    private void writeInChunks(BodyCapture capture, byte[] data, int chunkSize)
+    {
+        for (int offset = 0; offset < data.length; offset += chunkSize)
+        {
+            capture.write(ByteBuffer.wrap(data, offset, Math.min(chunkSize, data.length - offset)));
+        }
+        capture.complete();
+    }
+
+    private byte[] random(int size)
+    {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,55 @@
+package com.ethlo.http.capture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CoalescingCaptureSinkTest
+{
+    private final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+    private final List<Integer> writes = new ArrayList<>();
+    private final CaptureSink sink = data -> {
+        writes.add(data.remaining());
+        final byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        stored.writeBytes(bytes);
+    };
+
+    @Test
+    void singleBytesAreCoalesced()
+    {
+        final byte[] data = new byte[10_000];
+        new Random(1).nextBytes(data);
+
+        final CoalescingCaptureSink coalescing = new CoalescingCaptureSink(sink);
+        for (byte b : data)
+        {
+            coalescing.write(b);
+        }
+        coalescing.complete();
+
+        assertThat(stored.toByteArray()).isEqualTo(data);
+        assertThat(writes).containsExactly(4096, 4096, 1808);
+    }
+
+    @Test
+    void orderIsKeptAroundLargeWrites()
+    {
+        final CoalescingCaptureSink coalescing = new CoalescingCaptureSink(sink);
+        coalescing.write('a');
+        coalescing.write(ByteBuffer.wrap("bc".getBytes()));
+        coalescing.write(ByteBuffer.wrap(new byte[1000]));
+        coalescing.write('d');
+        coalescing.complete();
+
+        assertThat(writes).containsExactly(3, 1000, 1);
+        assertThat(new String(stored.toByteArray(), 0, 3)).isEqualTo("abc");
+        assertThat(stored.toByteArray()[1003]).isEqualTo((byte) 'd');
+    }
+}
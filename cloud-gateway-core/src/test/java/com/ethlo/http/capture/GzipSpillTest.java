@@ -0,0 +1,63 @@
+package com.ethlo.http.capture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.netty.ServerDirection;
+
+class GzipSpillTest
+{
+    @TempDir
+    Path logDirectory;
+
+    @Test
+    void compressedSpillReadsBackDecompressed() throws IOException
+    {
+        final byte[] data = new byte[100_000];
+        Arrays.fill(data, (byte) 'a');
+
+        final FileSpillStore store = new FileSpillStore(logDirectory);
+        final SpillStore.Spill spill = store.create("abc", ServerDirection.REQUEST, true);
+        spill.write(ByteBuffer.wrap(data, 0, 40_000));
+        spill.write(ByteBuffer.allocateDirect(60_000).put(data, 40_000, 60_000).flip());
+        spill.finish();
+
+        final BodyProvider body = spill.body(null);
+        assertThat(body.gzipped()).isTrue();
+        assertThat(body.file()).isEqualTo(logDirectory.resolve("abc_request.body.gz"));
+        assertThat(body.size()).isLessThan(data.length / 10);
+        try (InputStream in = body.getInputStream())
+        {
+            assertThat(in.readAllBytes()).isEqualTo(data);
+        }
+
+        spill.release();
+        assertThat(Files.exists(body.file())).isFalse();
+    }
+
+    @Test
+    void emptySpillIsValidGzip() throws IOException
+    {
+        try (SegmentLogStore store = new SegmentLogStore(logDirectory.resolve("segments"), logDirectory, 1024, 0))
+        {
+            final SpillStore.Spill spill = store.create("abc", ServerDirection.RESPONSE, true);
+            spill.finish();
+
+            try (InputStream in = spill.body(null).getInputStream())
+            {
+                assertThat(in.readAllBytes()).isEmpty();
+            }
+            spill.release();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ethlo.http.capture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.netty.ServerDirection;
+
+class SegmentLogStoreTest
+{
+    @TempDir
+    Path logDirectory;
+
+    @Test
+    void interleavedBodiesShareSegments() throws IOException
+    {
+        try (SegmentLogStore store = new SegmentLogStore(logDirectory.resolve("segments"), logDirectory, 64, 0))
+        {
+            final SpillStore.Spill first = store.create("a", ServerDirection.REQUEST, false);
+            final SpillStore.Spill second = store.create("b", ServerDirection.REQUEST, false);
+            final byte[] firstData = random(100, 1);
+            final byte[] secondData = random(50, 2);
+
+            first.write(ByteBuffer.wrap(firstData, 0, 30));
+            second.write(ByteBuffer.wrap(secondData, 0, 20));
+            first.write(ByteBuffer.wrap(firstData, 30, 70));
+            second.write(ByteBuffer.wrap(secondData, 20, 30));
+
+            assertThat(read(first.body(null))).isEqualTo(firstData);
+            assertThat(read(second.body(null))).isEqualTo(secondData);
+            assertThat(store.getSegmentCount()).isEqualTo(3);
+
+            first.release();
+            second.release();
+            assertThat(store.getSegmentCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void persistWritesErrorFile() throws IOException
+    {
+        try (SegmentLogStore store = new SegmentLogStore(logDirectory.resolve("segments"), logDirectory, 64, 0))
+        {
+            final SpillStore.Spill spill = store.create("abc", ServerDirection.RESPONSE, false);
+            spill.write(ByteBuffer.wrap("payload".getBytes()));
+
+            spill.persist();
+
+            assertThat(logDirectory.resolve("error_abc_response.body")).hasContent("payload");
+        }
+    }
+
+    private byte[] random(int size, long seed)
+    {
+        final byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private byte[] read(BodyProvider body) throws IOException
+    {
+        try (InputStream in = body.getInputStream())
+        {
+            return in.readAllBytes();
+        }
+    }
+}
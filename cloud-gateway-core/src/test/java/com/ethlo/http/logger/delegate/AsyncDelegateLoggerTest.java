@@ -0,0 +1,442 @@
+package com.ethlo.http.logger.delegate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+
+import com.ethlo.chronograph.Chronograph;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.HeadersOnlyCaptureSession;
+import com.ethlo.http.capture.NopCaptureSession;
+import com.ethlo.http.logger.HttpLogger;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+import com.ethlo.http.netty.ServerDirection;
+
+class AsyncDelegateLoggerTest
+{
+    @TempDir
+    Path spoolDirectory;
+
+    @Test
+    void slowLoggerDoesNotStallOthers() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastLogged = new CountDownLatch(3);
+        final CountDownLatch cleanedUp = new CountDownLatch(3);
+        final AtomicInteger cleanups = new AtomicInteger();
+
+        final Map<HttpLogger, LaneConfig> lanes = new LinkedHashMap<>();
+        lanes.put(logger("slow", data -> await(release)), new LaneConfig(1, 10));
+        lanes.put(logger("fast", data -> fastLogged.countDown()), new LaneConfig(2, 10));
+
+        try (AsyncDelegateLogger delegate = new AsyncDelegateLogger(lanes))
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                delegate.accessLog(Chronograph.create(), exchange("req-" + i, () ->
+                {
+                    cleanups.incrementAndGet();
+                    cleanedUp.countDown();
+                }));
+            }
+
+            assertThat(fastLogged.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(cleanups).hasValue(0);
+
+            release.countDown();
+            assertThat(cleanedUp.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(cleanups).hasValue(3);
+        }
+    }
+
+    @Test
+    void queuedExchangesAreDrainedIntoBatches() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch cleanedUp = new CountDownLatch(5);
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        final HttpLogger batching = new HttpLogger()
+        {
+            @Override
+            public void accessLog(final WebExchangeDataProvider dataProvider)
+            {
+                throw new AssertionError("Should be called with batches");
+            }
+
+            @Override
+            public void accessLog(final List<WebExchangeDataProvider> batch)
+            {
+                batchSizes.add(batch.size());
+                await(release);
+            }
+
+            @Override
+            public String getName()
+            {
+                return "batching";
+            }
+
+            @Override
+            public void close()
+            {
+
+            }
+        };
+
+        try (AsyncDelegateLogger delegate = new AsyncDelegateLogger(Map.of(batching, new LaneConfig(1, 10, 3, null, null, null, null, null))))
+        {
+            delegate.accessLog(Chronograph.create(), exchange("req-0", cleanedUp::countDown));
+            while (batchSizes.isEmpty())
+            {
+                Thread.onSpinWait();
+            }
+
+            for (int i = 1; i < 5; i++)
+            {
+                delegate.accessLog(Chronograph.create(), exchange("req-" + i, cleanedUp::countDown));
+            }
+            release.countDown();
+
+            assertThat(cleanedUp.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(batchSizes).containsExactly(1, 3, 1);
+        }
+    }
+
+    @Test
+    void failingExchangeDoesNotFailTheRestOfItsBatch() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(4);
+        final CountDownLatch cleaned = new CountDownLatch(3);
+        final List<String> logged = new CopyOnWriteArrayList<>();
+        final List<String> cleanedUp = new CopyOnWriteArrayList<>();
+
+        final HttpLogger flaky = logger("flaky", data ->
+        {
+            logged.add(data.getRequestId());
+            await(release);
+            if (data.getRequestId().equals("req-2"))
+            {
+                throw new IllegalStateException("Unreadable body");
+            }
+        });
+        try (AsyncDelegateLogger delegate = new AsyncDelegateLogger(Map.of(flaky, new LaneConfig(1, 10, 3, null, null, null, null, null))))
+        {
+            delegate.addListener(data -> completed.countDown());
+            for (int i = 0; i < 4; i++)
+            {
+                final String requestId = "req-" + i;
+                delegate.accessLog(Chronograph.create(), exchange(requestId, () ->
+                {
+                    cleanedUp.add(requestId);
+                    cleaned.countDown();
+                }));
+                while (i == 0 && logged.isEmpty())
+                {
+                    Thread.onSpinWait();
+                }
+            }
+            release.countDown();
+
+            // The failed one is completed without a cleanup
+            assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(cleaned.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(logged).containsExactly("req-0", "req-1", "req-2", "req-3");
+            assertThat(cleanedUp).containsExactly("req-0", "req-1", "req-3");
+        }
+    }
+
+    @Test
+    void dropOldestKeepsTheNewestExchanges() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch cleanedUp = new CountDownLatch(3);
+        final List<String> logged = new CopyOnWriteArrayList<>();
+
+        final HttpLogger slow = logger("slow", data ->
+        {
+            logged.add(data.getRequestId());
+            await(release);
+        });
+        final LaneConfig laneConfig = new LaneConfig(1, 2, 1, null, null, null, BackPressurePolicy.DROP_OLDEST, null);
+        try (AsyncDelegateLogger delegate = new AsyncDelegateLogger(Map.of(slow, laneConfig)))
+        {
+            delegate.accessLog(Chronograph.create(), exchange("req-0", cleanedUp::countDown));
+            while (logged.isEmpty())
+            {
+                Thread.onSpinWait();
+            }
+
+            for (int i = 1; i < 5; i++)
+            {
+                delegate.accessLog(Chronograph.create(), exchange("req-" + i, cleanedUp::countDown));
+            }
+            release.countDown();
+
+            assertThat(cleanedUp.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(logged).containsExactly("req-0", "req-3", "req-4");
+            assertThat(delegate.getStatistics().get("slow").getEvicted()).isEqualTo(2);
+            assertThat(delegate.getStatistics().get("slow").getDropped()).isZero();
+        }
+    }
+
+    @Test
+    void droppedExchangeIsPersistedOffTheRequestThread() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch persisted = new CountDownLatch(1);
+        final List<String> logged = new CopyOnWriteArrayList<>();
+        final List<Thread> persisting = new CopyOnWriteArrayList<>();
+
+        final HttpLogger stuck = logger("stuck", data ->
+        {
+            logged.add(data.getRequestId());
+            await(release);
+        });
+        final CaptureSession slowDisk = new HeadersOnlyCaptureSession(new HttpHeaders(), new HttpHeaders(), false, false)
+        {
+            @Override
+            public void persistForError(final WebExchangeDataProvider exchange)
+            {
+                persisting.add(Thread.currentThread());
+                await(release);
+                persisted.countDown();
+            }
+        };
+
+        final LaneConfig laneConfig = new LaneConfig(1, 2, 1, null, null, null, BackPressurePolicy.DROP_NEWEST, null);
+        try (AsyncDelegateLogger delegate = new AsyncDelegateLogger(Map.of(stuck, laneConfig)))
+        {
+            delegate.accessLog(Chronograph.create(), exchange("req-0", () ->
+            {
+            }));
+            while (logged.isEmpty())
+            {
+                Thread.onSpinWait();
+            }
+            for (int i = 1; i <= 2; i++)
+            {
+                delegate.accessLog(Chronograph.create(), exchange("req-" + i, () ->
+                {
+                }));
+            }
+
+            // Returns while the dropped exchange is still being persisted
+            final Thread caller = Thread.ofPlatform().start(() -> delegate.accessLog(Chronograph.create(),
+                    new WebExchangeDataProvider(slowDisk, new PredicateConfig("test", request -> true, null, null)).requestId("req-3")));
+            caller.join(5000);
+            assertThat(caller.isAlive()).isFalse();
+            assertThat(delegate.getStatistics().get("stuck").getDropped()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(persisted.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(persisting).doesNotContain(caller);
+        }
+    }
+
+    @Test
+    void shutdownSpoolsWhatIsLeftAfterTheTimeout() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> logged = new CopyOnWriteArrayList<>();
+
+        final HttpLogger stuck = logger("stuck", data ->
+        {
+            logged.add(data.getRequestId());
+            await(release);
+        });
+        final LaneConfig laneConfig = new LaneConfig(1, 10, 1, null, null, null, BackPressurePolicy.DROP_NEWEST, null);
+        try (AsyncDelegateLogger delegate = new AsyncDelegateLogger(Map.of(stuck, laneConfig), new ExchangeSpool(spoolDirectory, 1024 * 1024)))
+        {
+            delegate.accessLog(Chronograph.create(), exchange("req-0", () ->
+            {
+            }));
+            while (logged.isEmpty())
+            {
+                Thread.onSpinWait();
+            }
+            delegate.accessLog(Chronograph.create(), exchange("req-1", () ->
+            {
+            }));
+            delegate.accessLog(Chronograph.create(), exchange("req-2", () ->
+            {
+            }));
+
+            assertThat(delegate.shutdown(Duration.ofMillis(100))).isEqualTo(2);
+
+            // Taken after the shutdown, so persisted right away
+            delegate.accessLog(Chronograph.create(), exchange("req-3", () ->
+            {
+            }));
+            release.countDown();
+        }
+
+        try (ExchangeSpool spool = new ExchangeSpool(spoolDirectory, 1024 * 1024))
+        {
+            assertThat(spool.poll().getRequestId()).isEqualTo("req-1");
+            assertThat(spool.poll().getRequestId()).isEqualTo("req-2");
+            assertThat(spool.poll().getRequestId()).isEqualTo("req-3");
+            assertThat(spool.poll()).isNull();
+        }
+    }
+
+    @Test
+    void exchangesArrivingDuringShutdownAreNotLost() throws Exception
+    {
+        final Set<String> submitted = ConcurrentHashMap.newKeySet();
+        final Set<String> handled = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final HttpLogger backend = logger("backend", data ->
+        {
+        });
+
+        final List<Thread> producers = new ArrayList<>();
+        try (AsyncDelegateLogger delegate = new AsyncDelegateLogger(Map.of(backend, new LaneConfig(1, 10, 1, null, null, null, null, null)), new ExchangeSpool(spoolDirectory, 1024 * 1024)))
+        {
+            // Replayed exchanges are logged as decoded from the spool, so they are tracked by request id
+            delegate.addListener(data -> handled.add(data.getRequestId()));
+            for (int p = 0; p < 2; p++)
+            {
+                final String producer = "req-" + p + "-";
+                producers.add(Thread.ofPlatform().start(() ->
+                {
+                    for (int i = 0; !stop.get(); i++)
+                    {
+                        delegate.accessLog(Chronograph.create(), exchange(producer + i, () ->
+                        {
+                        }));
+                        submitted.add(producer + i);
+                    }
+                }));
+            }
+            Thread.sleep(50);
+            delegate.shutdown(Duration.ofSeconds(5));
+            stop.set(true);
+            for (Thread thread : producers)
+            {
+                thread.join();
+            }
+        }
+
+        // Whatever was not logged is in the spool
+        try (ExchangeSpool spool = new ExchangeSpool(spoolDirectory, 1024 * 1024))
+        {
+            WebExchangeDataProvider spooled;
+            while ((spooled = spool.poll()) != null)
+            {
+                handled.add(spooled.getRequestId());
+            }
+        }
+        assertThat(handled).containsAll(submitted);
+    }
+
+    @Test
+    void exchangeQueuedAfterACleanDrainIsSpooled() throws Exception
+    {
+        final CountDownLatch checked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> logged = new CopyOnWriteArrayList<>();
+        final HttpLogger backend = logger("backend", data -> logged.add(data.getRequestId()));
+
+        // Past the shutdown check, but not yet queued
+        final WebExchangeDataProvider late = new WebExchangeDataProvider(NopCaptureSession.INSTANCE, new PredicateConfig("test", request -> true, null, null))
+        {
+            @Override
+            public Optional<Long> getBodySize(final ServerDirection direction)
+            {
+                checked.countDown();
+                await(release);
+                return super.getBodySize(direction);
+            }
+        }.requestId("req-late");
+
+        try (AsyncDelegateLogger delegate = new AsyncDelegateLogger(Map.of(backend, new LaneConfig(1, 10)), new ExchangeSpool(spoolDirectory, 1024 * 1024)))
+        {
+            final Thread caller = Thread.ofPlatform().start(() -> delegate.accessLog(Chronograph.create(), late));
+            assertThat(checked.await(5, TimeUnit.SECONDS)).isTrue();
+
+            final AtomicInteger left = new AtomicInteger(-1);
+            final Thread stopper = Thread.ofPlatform().start(() -> left.set(delegate.shutdown(Duration.ofSeconds(5))));
+            while (Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().equals("http-logger-backend-0")))
+            {
+                Thread.sleep(1);
+            }
+
+            // The workers drained their queue and stopped, before the exchange is queued
+            release.countDown();
+            caller.join();
+            stopper.join();
+            assertThat(left).hasValue(1);
+        }
+
+        assertThat(logged).isEmpty();
+        try (ExchangeSpool spool = new ExchangeSpool(spoolDirectory, 1024 * 1024))
+        {
+            assertThat(spool.poll().getRequestId()).isEqualTo("req-late");
+            assertThat(spool.poll()).isNull();
+        }
+    }
+
+    private WebExchangeDataProvider exchange(String requestId, Runnable cleanup)
+    {
+        return new WebExchangeDataProvider(NopCaptureSession.INSTANCE, new PredicateConfig("test", request -> true, null, null))
+                .requestId(requestId)
+                .cleanupTask(cleanup);
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HttpLogger logger(String name, Consumer<WebExchangeDataProvider> action)
+    {
+        return new HttpLogger()
+        {
+            @Override
+            public void accessLog(final WebExchangeDataProvider dataProvider)
+            {
+                action.accept(dataProvider);
+            }
+
+            @Override
+            public String getName()
+            {
+                return name;
+            }
+
+            @Override
+            public void close()
+            {
+
+            }
+        };
+    }
+}
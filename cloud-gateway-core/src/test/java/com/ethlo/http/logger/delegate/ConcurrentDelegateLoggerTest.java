@@ -0,0 +1,171 @@
+package com.ethlo.http.logger.delegate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import com.ethlo.chronograph.Chronograph;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.HeadersOnlyCaptureSession;
+import com.ethlo.http.capture.NopCaptureSession;
+import com.ethlo.http.logger.HttpLogger;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+
+class ConcurrentDelegateLoggerTest
+{
+    @Test
+    void requestWaitsForTheSlowestLoggerOnly() throws Exception
+    {
+        final AtomicInteger cleanups = new AtomicInteger();
+        final List<HttpLogger> loggers = List.of(logger("first", data -> sleep(200)), logger("second", data -> sleep(200)));
+
+        try (ConcurrentDelegateLogger delegate = new ConcurrentDelegateLogger(loggers, Duration.ofSeconds(5), 10))
+        {
+            final long start = System.nanoTime();
+            delegate.accessLog(Chronograph.create(), exchange("req-1", cleanups::incrementAndGet));
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertThat(elapsedMillis).isBetween(200L, 390L);
+            assertThat(cleanups).hasValue(1);
+            assertThat(delegate.getHandedOff()).isZero();
+        }
+    }
+
+    @Test
+    void stragglersAreHandedOffAfterTheTimeout() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch cleanedUp = new CountDownLatch(1);
+        final List<HttpLogger> loggers = List.of(logger("fast", data ->
+        {
+        }), logger("stuck", data -> await(release)));
+
+        try (ConcurrentDelegateLogger delegate = new ConcurrentDelegateLogger(loggers, Duration.ofMillis(50), 10))
+        {
+            delegate.accessLog(Chronograph.create(), exchange("req-1", cleanedUp::countDown));
+            assertThat(delegate.getHandedOff()).isEqualTo(1);
+            assertThat(cleanedUp.getCount()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(cleanedUp.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void hungLoggerIsNotGivenMoreThanItsLimit() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> logged = new CopyOnWriteArrayList<>();
+        final List<String> persisted = new CopyOnWriteArrayList<>();
+        final List<String> cleanedUp = new CopyOnWriteArrayList<>();
+        final CaptureSession session = new HeadersOnlyCaptureSession(new HttpHeaders(), new HttpHeaders(), false, false)
+        {
+            @Override
+            public void persistForError(final WebExchangeDataProvider exchange)
+            {
+                persisted.add(exchange.getRequestId());
+            }
+        };
+        final List<HttpLogger> loggers = List.of(logger("hung", data ->
+        {
+            logged.add(data.getRequestId());
+            await(release);
+        }));
+
+        try (ConcurrentDelegateLogger delegate = new ConcurrentDelegateLogger(loggers, Duration.ofMillis(50), 2))
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                final String requestId = "req-" + i;
+                delegate.accessLog(Chronograph.create(), exchange(session, requestId, () -> cleanedUp.add(requestId)));
+            }
+
+            assertThat(logged).containsExactlyInAnyOrder("req-0", "req-1");
+            assertThat(delegate.getHandedOff()).isEqualTo(2);
+            assertThat(delegate.getRejected()).isEqualTo(3);
+            assertThat(persisted).containsExactly("req-2", "req-3", "req-4");
+
+            release.countDown();
+            while (cleanedUp.size() < 2)
+            {
+                Thread.onSpinWait();
+            }
+
+            // The limit is freed up again once the logger returns
+            delegate.accessLog(Chronograph.create(), exchange(session, "req-5", () -> cleanedUp.add("req-5")));
+            assertThat(logged).contains("req-5");
+            assertThat(cleanedUp).containsExactlyInAnyOrder("req-0", "req-1", "req-5");
+            assertThat(delegate.getRejected()).isEqualTo(3);
+        }
+    }
+
+    private WebExchangeDataProvider exchange(String requestId, Runnable cleanup)
+    {
+        return exchange(NopCaptureSession.INSTANCE, requestId, cleanup);
+    }
+
+    private WebExchangeDataProvider exchange(CaptureSession session, String requestId, Runnable cleanup)
+    {
+        return new WebExchangeDataProvider(session, new PredicateConfig("test", request -> true, null, null))
+                .requestId(requestId)
+                .cleanupTask(cleanup);
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HttpLogger logger(String name, Consumer<WebExchangeDataProvider> action)
+    {
+        return new HttpLogger()
+        {
+            @Override
+            public void accessLog(final WebExchangeDataProvider dataProvider)
+            {
+                action.accept(dataProvider);
+            }
+
+            @Override
+            public String getName()
+            {
+                return name;
+            }
+
+            @Override
+            public void close()
+            {
+
+            }
+        };
+    }
+}
@@ -0,0 +1,245 @@
+package com.ethlo.http.logger.delegate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+
+import com.ethlo.http.DefaultDataBufferRepository;
+import com.ethlo.http.Route;
+import com.ethlo.http.capture.CaptureFiles;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.FileSpillStore;
+import com.ethlo.http.capture.SpillStore;
+import com.ethlo.http.logger.CaptureConfiguration;
+import com.ethlo.http.logger.HttpLogger;
+import com.ethlo.http.logger.RecoveryConfiguration;
+import com.ethlo.http.match.HeaderPredicate;
+import com.ethlo.http.match.LogOptions;
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+import com.ethlo.http.netty.ServerDirection;
+
+class ExchangeRecoveryTest
+{
+    @TempDir
+    Path logDirectory;
+
+    @Test
+    void failedExchangeIsRecovered() throws Exception
+    {
+        final CaptureConfiguration config = new CaptureConfiguration();
+        config.setLogDirectory(logDirectory);
+        final DefaultDataBufferRepository repository = new DefaultDataBufferRepository(config, DataSize.ofKilobytes(1));
+        final CaptureSession session = repository.open("abc");
+        final HttpHeaders headers = new HttpHeaders();
+        headers.add("Foo", "bar");
+        session.putHeaders(ServerDirection.REQUEST, headers);
+        session.sink(ServerDirection.REQUEST).write(ByteBuffer.wrap("payload".getBytes()));
+
+        final LogOptions logOptions = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.STORE);
+        new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, logOptions, logOptions))
+                .requestId("abc")
+                .method(HttpMethod.PUT)
+                .path("/foo")
+                .statusCode(HttpStatus.OK)
+                .timestamp(OffsetDateTime.now())
+                .duration(Duration.ofMillis(5))
+                .route(new Route("foo", URI.create("http://upstream")))
+                .loggerError();
+        repository.close();
+
+        final List<String> bodies = new CopyOnWriteArrayList<>();
+        final HttpLogger httpLogger = new HttpLogger()
+        {
+            @Override
+            public void accessLog(final WebExchangeDataProvider dataProvider)
+            {
+                assertThat(dataProvider.getMethod()).isEqualTo(HttpMethod.PUT);
+                assertThat(dataProvider.getRequestHeaders().getFirst("Foo")).isEqualTo("bar");
+                bodies.add(read(dataProvider));
+            }
+
+            @Override
+            public String getName()
+            {
+                return "test";
+            }
+
+            @Override
+            public void close()
+            {
+
+            }
+        };
+
+        try (SyncDelegateLogger delegate = new SyncDelegateLogger(List.of(httpLogger));
+             ExchangeRecovery recovery = new ExchangeRecovery(logDirectory, delegate, new RecoveryConfiguration(), null))
+        {
+            assertThat(recovery.recover()).isEqualTo(1);
+        }
+
+        assertThat(bodies).containsExactly("payload");
+        try (var files = Files.list(logDirectory))
+        {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void fragmentsAreDiscardedAfterRetention() throws Exception
+    {
+        final Path stale = Files.writeString(logDirectory.resolve("error_old_request.headers"), "Foo: bar\r\n");
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        final Path fresh = Files.writeString(logDirectory.resolve("error_new_request.headers"), "Foo: bar\r\n");
+        final Path torn = Files.writeString(logDirectory.resolve("error_torn.exchange.tmp"), "partial");
+        Files.setLastModifiedTime(torn, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+
+        try (ExchangeRecovery recovery = new ExchangeRecovery(logDirectory, new SyncDelegateLogger(List.of()), new RecoveryConfiguration(), null))
+        {
+            // Never mistaken for a record to recover
+            assertThat(recovery.recover()).isZero();
+            recovery.discardFragments(Instant.now().minus(Duration.ofDays(1)));
+            assertThat(recovery.getDiscarded()).isEqualTo(2);
+        }
+
+        assertThat(stale).doesNotExist();
+        assertThat(torn).doesNotExist();
+        assertThat(fresh).exists();
+    }
+
+    @Test
+    void spilledBodyIsOnDiskBeforeTheRecordIsWritten() throws Exception
+    {
+        final CaptureConfiguration config = new CaptureConfiguration();
+        config.setLogDirectory(logDirectory);
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final DefaultDataBufferRepository repository = new DefaultDataBufferRepository(config, DataSize.ofKilobytes(1), new StallingSpillStore(logDirectory, stalled))
+        {
+        };
+
+        // Holds up the capture writer, so persisting the body is still queued unless the record waits for it
+        repository.open("stall").sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(2048));
+
+        final CaptureSession session = repository.open("spilled");
+        session.sink(ServerDirection.REQUEST).write(ByteBuffer.allocate(2048));
+        session.sink(ServerDirection.REQUEST).complete();
+        final LogOptions logOptions = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.STORE);
+        final WebExchangeDataProvider exchange = new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, logOptions, logOptions))
+                .requestId("spilled")
+                .method(HttpMethod.POST)
+                .path("/foo")
+                .timestamp(OffsetDateTime.now());
+
+        Thread.ofPlatform().start(() ->
+        {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+            stalled.countDown();
+        });
+        exchange.loggerError();
+
+        assertThat(CaptureFiles.errorExchangeFile(logDirectory, "spilled")).exists();
+        assertThat(CaptureFiles.findErrorBodyFile(logDirectory, "spilled", ServerDirection.REQUEST)).isPresent();
+        repository.close();
+    }
+
+    private static String read(WebExchangeDataProvider dataProvider)
+    {
+        try (InputStream in = dataProvider.getRequestBody().orElseThrow().getInputStream())
+        {
+            return new String(in.readAllBytes());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Blocks the writes of the <code>stall</code> request until released
+     */
+    private static class StallingSpillStore implements SpillStore
+    {
+        private final FileSpillStore delegate;
+        private final CountDownLatch stalled;
+
+        private StallingSpillStore(Path directory, CountDownLatch stalled)
+        {
+            this.delegate = new FileSpillStore(directory);
+            this.stalled = stalled;
+        }
+
+        @Override
+        public Spill create(final String requestId, final ServerDirection direction, final boolean compress)
+        {
+            final Spill spill = delegate.create(requestId, direction, compress);
+            if (!requestId.equals("stall"))
+            {
+                return spill;
+            }
+
+            return new Spill()
+            {
+                @Override
+                public void write(final ByteBuffer data) throws IOException
+                {
+                    try
+                    {
+                        stalled.await();
+                    }
+                    catch (InterruptedException exc)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    spill.write(data);
+                }
+
+                @Override
+                public BodyProvider body(final String contentEncoding)
+                {
+                    return spill.body(contentEncoding);
+                }
+
+                @Override
+                public void persist()
+                {
+                    spill.persist();
+                }
+
+                @Override
+                public void release()
+                {
+                    spill.release();
+                }
+            };
+        }
+
+        @Override
+        public void close()
+        {
+            delegate.close();
+        }
+    }
+}
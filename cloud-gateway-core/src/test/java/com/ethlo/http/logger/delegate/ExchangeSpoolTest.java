@@ -0,0 +1,206 @@
+package com.ethlo.http.logger.delegate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+
+import com.ethlo.http.DefaultDataBufferRepository;
+import com.ethlo.http.Route;
+import com.ethlo.http.capture.CaptureFiles;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.HeadersOnlyCaptureSession;
+import com.ethlo.http.logger.CaptureConfiguration;
+import com.ethlo.http.match.HeaderPredicate;
+import com.ethlo.http.match.LogOptions;
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+import com.ethlo.http.netty.ServerDirection;
+
+class ExchangeSpoolTest
+{
+    @TempDir
+    Path logDirectory;
+
+    @Test
+    void spooledExchangeSurvivesRestart() throws Exception
+    {
+        final CaptureConfiguration config = new CaptureConfiguration();
+        config.setLogDirectory(logDirectory);
+        final DefaultDataBufferRepository repository = new DefaultDataBufferRepository(config, DataSize.ofKilobytes(1));
+        final CaptureSession session = repository.open("abc");
+        final HttpHeaders headers = new HttpHeaders();
+        headers.add("Foo", "bar");
+        session.putHeaders(ServerDirection.REQUEST, headers);
+        session.sink(ServerDirection.REQUEST).write(ByteBuffer.wrap("payload".getBytes()));
+
+        final LogOptions logOptions = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.STORE);
+        final WebExchangeDataProvider original = new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, logOptions, logOptions))
+                .requestId("abc")
+                .method(HttpMethod.POST)
+                .path("/foo")
+                .uri("http://localhost/foo")
+                .statusCode(HttpStatus.CREATED)
+                .timestamp(OffsetDateTime.parse("2024-01-02T03:04:05Z"))
+                .duration(Duration.ofMillis(42))
+                .route(new Route("foo", URI.create("http://upstream")));
+
+        try (ExchangeSpool spool = new ExchangeSpool(logDirectory, 1024))
+        {
+            spool.append(original);
+        }
+        repository.close();
+
+        final WebExchangeDataProvider replayed;
+        try (ExchangeSpool spool = new ExchangeSpool(logDirectory, 1024))
+        {
+            assertThat(spool.getSegmentCount()).isEqualTo(1);
+            replayed = spool.poll();
+            assertThat(spool.poll()).isNull();
+            assertThat(spool.getSegmentCount()).isZero();
+        }
+
+        assertThat(replayed.getRequestId()).isEqualTo("abc");
+        assertThat(replayed.getMethod()).isEqualTo(HttpMethod.POST);
+        assertThat(replayed.getPath()).isEqualTo("/foo");
+        assertThat(replayed.getStatusCode().value()).isEqualTo(201);
+        assertThat(replayed.getTimestamp()).isEqualTo(original.getTimestamp());
+        assertThat(replayed.getDuration()).isEqualTo(Duration.ofMillis(42));
+        assertThat(replayed.getRoute()).isEqualTo(original.getRoute());
+        assertThat(replayed.getRequestHeaders().getFirst("Foo")).isEqualTo("bar");
+        assertThat(read(replayed.getRequestBody().orElseThrow())).isEqualTo("payload".getBytes());
+
+        replayed.cleanup();
+        assertThat(Files.exists(logDirectory.resolve("error_abc_request.body"))).isFalse();
+    }
+
+    @Test
+    void spilledBodyIsOnDiskBeforeTheExchangeIsReadBack() throws Exception
+    {
+        final CaptureConfiguration config = new CaptureConfiguration();
+        config.setLogDirectory(logDirectory);
+        final DefaultDataBufferRepository repository = new DefaultDataBufferRepository(config, DataSize.ofKilobytes(1));
+        final CaptureSession session = repository.open("spilled");
+        final byte[] payload = new byte[256 * 1024];
+        Arrays.fill(payload, (byte) 'x');
+        session.sink(ServerDirection.REQUEST).write(ByteBuffer.wrap(payload));
+        session.sink(ServerDirection.REQUEST).complete();
+
+        final LogOptions logOptions = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.STORE);
+        final WebExchangeDataProvider original = new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, logOptions, logOptions))
+                .requestId("spilled")
+                .method(HttpMethod.POST)
+                .path("/foo")
+                .timestamp(OffsetDateTime.parse("2024-01-02T03:04:05Z"));
+
+        // Keeps the capture writer busy, so persisting the body is still queued when appending returns without waiting
+        final CaptureSession busy = repository.open("busy");
+        for (int i = 0; i < 64; i++)
+        {
+            busy.sink(ServerDirection.REQUEST).write(ByteBuffer.wrap(payload));
+        }
+
+        try (ExchangeSpool spool = new ExchangeSpool(logDirectory, 1024 * 1024))
+        {
+            spool.append(original);
+            assertThat(CaptureFiles.findErrorBodyFile(logDirectory, "spilled", ServerDirection.REQUEST)).isPresent();
+
+            // Read back right away, by the same spool
+            final WebExchangeDataProvider replayed = spool.poll();
+            assertThat(read(replayed.getRequestBody().orElseThrow())).isEqualTo(payload);
+            replayed.cleanup();
+        } finally
+        {
+            busy.release();
+            repository.close();
+        }
+    }
+
+    @Test
+    void appendDoesNotWaitForTheBodiesOfAnother() throws Exception
+    {
+        final CountDownLatch persisting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final WebExchangeDataProvider slow = exchange("slow", new HeadersOnlyCaptureSession(new HttpHeaders(), new HttpHeaders(), false, false)
+        {
+            @Override
+            public void persistBodies()
+            {
+                persisting.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final WebExchangeDataProvider fast = exchange("fast", new HeadersOnlyCaptureSession(new HttpHeaders(), new HttpHeaders(), false, false));
+
+        try (ExchangeSpool spool = new ExchangeSpool(logDirectory, 1024 * 1024);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            final Future<?> slowAppend = executor.submit(() ->
+            {
+                spool.append(slow);
+                return null;
+            });
+            assertThat(persisting.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // Written while the other is still persisting its bodies, and only that one is read back
+            executor.submit(() ->
+            {
+                spool.append(fast);
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+            assertThat(spool.poll().getRequestId()).isEqualTo("fast");
+            assertThat(spool.poll()).isNull();
+
+            release.countDown();
+            slowAppend.get(5, TimeUnit.SECONDS);
+            assertThat(spool.poll().getRequestId()).isEqualTo("slow");
+        }
+    }
+
+    private static WebExchangeDataProvider exchange(String requestId, CaptureSession session)
+    {
+        return new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, null, null))
+                .requestId(requestId)
+                .timestamp(OffsetDateTime.parse("2024-01-02T03:04:05Z"));
+    }
+
+    private byte[] read(BodyProvider body)
+    {
+        try (InputStream in = body.getInputStream())
+        {
+            return in.readAllBytes();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
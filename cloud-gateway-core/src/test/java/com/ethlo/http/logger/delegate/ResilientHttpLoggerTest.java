@@ -0,0 +1,223 @@
+package com.ethlo.http.logger.delegate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ethlo.http.capture.NopCaptureSession;
+import com.ethlo.http.logger.BatchLogException;
+import com.ethlo.http.logger.HttpLogger;
+import com.ethlo.http.logger.RejectedExchangeException;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+class ResilientHttpLoggerTest
+{
+    @TempDir
+    Path deadLetterDirectory;
+
+    @Test
+    void failedCallsAreRetried() throws Exception
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        final HttpLogger flaky = logger(data ->
+        {
+            if (calls.incrementAndGet() < 3)
+            {
+                throw new IllegalStateException("Unavailable");
+            }
+        });
+
+        final ResilienceConfig config = new ResilienceConfig(3, Duration.ofMillis(1), null, null, null, null);
+        try (ResilientHttpLogger resilient = new ResilientHttpLogger(flaky, config, null))
+        {
+            resilient.accessLog(exchange("req-1"));
+            assertThat(calls).hasValue(3);
+            assertThat(resilient.getRetried()).isEqualTo(2);
+            assertThat(resilient.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        }
+    }
+
+    @Test
+    void failedPartOfABatchIsNotRetried() throws Exception
+    {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        final HttpLogger flaky = logger(data ->
+        {
+            calls.add(data.getRequestId());
+            if (data.getRequestId().equals("req-2"))
+            {
+                throw new IllegalStateException("Unreadable body");
+            }
+        });
+
+        final ResilienceConfig config = new ResilienceConfig(3, Duration.ofMillis(1), null, 1, null, null);
+        try (ResilientHttpLogger resilient = new ResilientHttpLogger(flaky, config, null))
+        {
+            final WebExchangeDataProvider failing = exchange("req-2");
+            assertThatThrownBy(() -> resilient.accessLog(List.of(exchange("req-1"), failing, exchange("req-3"))))
+                    .isInstanceOfSatisfying(BatchLogException.class, exc -> assertThat(exc.getFailed()).containsExactly(failing));
+            assertThat(calls).containsExactly("req-1", "req-2", "req-3");
+            assertThat(resilient.getRetried()).isZero();
+            assertThat(resilient.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        }
+    }
+
+    @Test
+    void failedPartOfABatchIsDeadLettered() throws Exception
+    {
+        final List<List<String>> batches = new CopyOnWriteArrayList<>();
+        final List<String> logged = new CopyOnWriteArrayList<>();
+        final HttpLogger backend = new HttpLogger()
+        {
+            @Override
+            public void accessLog(final WebExchangeDataProvider dataProvider)
+            {
+                logged.add(dataProvider.getRequestId());
+            }
+
+            @Override
+            public void accessLog(final List<WebExchangeDataProvider> batch)
+            {
+                batches.add(batch.stream().map(WebExchangeDataProvider::getRequestId).toList());
+                throw new BatchLogException(List.of(batch.get(1)), new IllegalStateException("Timed out"));
+            }
+
+            @Override
+            public String getName()
+            {
+                return "test";
+            }
+
+            @Override
+            public void close()
+            {
+
+            }
+        };
+
+        final ResilienceConfig config = new ResilienceConfig(3, Duration.ofMillis(1), null, null, null, true);
+        try (ResilientHttpLogger resilient = new ResilientHttpLogger(backend, config, new ExchangeSpool(deadLetterDirectory, 1024 * 1024)))
+        {
+            resilient.accessLog(List.of(exchange("req-1"), exchange("req-2"), exchange("req-3")));
+            assertThat(resilient.getDeadLettered()).isEqualTo(1);
+            assertThat(eventually(() -> resilient.getReplayed() == 1)).isTrue();
+            assertThat(batches).containsExactly(List.of("req-1", "req-2", "req-3"));
+            assertThat(logged).containsExactly("req-2");
+        }
+    }
+
+    @Test
+    void poisonExchangeDoesNotOpenTheCircuitBreaker() throws Exception
+    {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        final HttpLogger backend = logger(data ->
+        {
+            calls.add(data.getRequestId());
+            if (data.getRequestId().startsWith("poison"))
+            {
+                throw new RejectedExchangeException("Cannot parse input", new IllegalArgumentException("Bad value"));
+            }
+        });
+
+        final ResilienceConfig config = new ResilienceConfig(3, Duration.ofMillis(1), null, 2, Duration.ofMinutes(1), null);
+        try (ResilientHttpLogger resilient = new ResilientHttpLogger(backend, config, null))
+        {
+            assertThatThrownBy(() -> resilient.accessLog(exchange("poison-1"))).isInstanceOf(RejectedExchangeException.class);
+            assertThatThrownBy(() -> resilient.accessLog(exchange("poison-2"))).isInstanceOf(RejectedExchangeException.class);
+            assertThat(resilient.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+            assertThat(resilient.getRetried()).isZero();
+
+            resilient.accessLog(exchange("req-1"));
+            assertThat(calls).containsExactly("poison-1", "poison-2", "req-1");
+        }
+    }
+
+    @Test
+    void openCircuitBreakerDeadLettersUntilItCloses() throws Exception
+    {
+        final AtomicBoolean down = new AtomicBoolean(true);
+        final List<String> logged = new CopyOnWriteArrayList<>();
+        final HttpLogger backend = logger(data ->
+        {
+            if (down.get())
+            {
+                throw new IllegalStateException("Unavailable");
+            }
+            logged.add(data.getRequestId());
+        });
+
+        final ResilienceConfig config = new ResilienceConfig(1, null, null, 2, Duration.ofMillis(100), true);
+        try (ResilientHttpLogger resilient = new ResilientHttpLogger(backend, config, new ExchangeSpool(deadLetterDirectory, 1024 * 1024)))
+        {
+            assertThatThrownBy(() -> resilient.accessLog(exchange("req-1"))).isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(() -> resilient.accessLog(exchange("req-2"))).isInstanceOf(IllegalStateException.class);
+            assertThat(resilient.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+            // Rejected without calling the backend
+            resilient.accessLog(exchange("req-3"));
+            assertThat(resilient.getDeadLettered()).isEqualTo(1);
+
+            down.set(false);
+            assertThat(eventually(() -> resilient.getReplayed() == 1)).isTrue();
+            assertThat(logged).containsExactly("req-3");
+            assertThat(resilient.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        }
+    }
+
+    private static boolean eventually(BooleanSupplier condition) throws InterruptedException
+    {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean())
+        {
+            if (System.nanoTime() > deadline)
+            {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private WebExchangeDataProvider exchange(String requestId)
+    {
+        return new WebExchangeDataProvider(NopCaptureSession.INSTANCE, new PredicateConfig("test", request -> true, null, null))
+                .requestId(requestId);
+    }
+
+    private HttpLogger logger(Consumer<WebExchangeDataProvider> action)
+    {
+        return new HttpLogger()
+        {
+            @Override
+            public void accessLog(final WebExchangeDataProvider dataProvider)
+            {
+                action.accept(dataProvider);
+            }
+
+            @Override
+            public String getName()
+            {
+                return "test";
+            }
+
+            @Override
+            public void close()
+            {
+
+            }
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package com.ethlo.http.logger.delegate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest
+{
+    @Test
+    void boundedAndOrdered()
+    {
+        final RingBuffer<Integer> ringBuffer = new RingBuffer<>(3, WaitStrategy.PARK);
+        assertThat(ringBuffer.capacity()).isEqualTo(4);
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertThat(ringBuffer.offer(i)).isTrue();
+        }
+        assertThat(ringBuffer.offer(4)).isFalse();
+        assertThat(ringBuffer.size()).isEqualTo(4);
+
+        assertThat(ringBuffer.poll()).isEqualTo(0);
+        assertThat(ringBuffer.offer(4)).isTrue();
+        assertThat(List.of(ringBuffer.poll(), ringBuffer.poll(), ringBuffer.poll(), ringBuffer.poll())).containsExactly(1, 2, 3, 4);
+        assertThat(ringBuffer.poll()).isNull();
+        assertThat(ringBuffer.isEmpty()).isTrue();
+    }
+
+    @Test
+    void smallestBufferDoesNotOverwriteUnreadElements()
+    {
+        final RingBuffer<Integer> ringBuffer = new RingBuffer<>(1, WaitStrategy.PARK);
+        assertThat(ringBuffer.capacity()).isEqualTo(2);
+
+        for (int lap = 0; lap < 3; lap++)
+        {
+            assertThat(ringBuffer.offer(lap * 2)).isTrue();
+            assertThat(ringBuffer.offer(lap * 2 + 1)).isTrue();
+            assertThat(ringBuffer.offer(-1)).isFalse();
+            assertThat(List.of(ringBuffer.poll(), ringBuffer.poll())).containsExactly(lap * 2, lap * 2 + 1);
+        }
+        assertThat(ringBuffer.poll()).isNull();
+    }
+
+    @Test
+    void pollTimesOutWhenEmpty() throws InterruptedException
+    {
+        final RingBuffer<Integer> ringBuffer = new RingBuffer<>(8, WaitStrategy.SPIN_THEN_PARK);
+        assertThat(ringBuffer.poll(10, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void idleConsumerIsWokenUpByTheNextOffer() throws Exception
+    {
+        final RingBuffer<Integer> ringBuffer = new RingBuffer<>(8, WaitStrategy.PARK);
+        final CompletableFuture<Long> polled = new CompletableFuture<>();
+        final Thread consumer = Thread.ofPlatform().start(() ->
+        {
+            try
+            {
+                assertThat(ringBuffer.poll(30, TimeUnit.SECONDS)).isEqualTo(1);
+                polled.complete(System.nanoTime());
+            }
+            catch (Throwable exc)
+            {
+                polled.completeExceptionally(exc);
+            }
+        });
+
+        // Long enough for the consumer to back off and go to sleep
+        Thread.sleep(500);
+        assertThat(consumer.getState()).isEqualTo(Thread.State.TIMED_WAITING);
+
+        final long offered = System.nanoTime();
+        assertThat(ringBuffer.offer(1)).isTrue();
+        assertThat(polled.get(5, TimeUnit.SECONDS) - offered).isLessThan(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void concurrentProducers() throws InterruptedException
+    {
+        final int producers = 4;
+        final int perProducer = 50_000;
+        final RingBuffer<Integer> ringBuffer = new RingBuffer<>(64, WaitStrategy.PARK);
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++)
+        {
+            final Thread producer = new Thread(() ->
+            {
+                for (int i = 1; i <= perProducer; i++)
+                {
+                    while (!ringBuffer.offer(i))
+                    {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            producer.start();
+            threads.add(producer);
+        }
+
+        final AtomicLong sum = new AtomicLong();
+        for (int received = 0; received < producers * perProducer; received++)
+        {
+            final Integer value = ringBuffer.poll(5, TimeUnit.SECONDS);
+            assertThat(value).isNotNull();
+            sum.addAndGet(value);
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertThat(sum).hasValue((long) producers * perProducer * (perProducer + 1) / 2);
+    }
+}
@@ -0,0 +1,365 @@
+package com.ethlo.http.logger.clickhouse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Group-commits rows into multi-row inserts.
+ * <p>
+ * Rows inserted one at a time are queued, and written by a single flusher thread once the row count or byte size limit
+ * is reached, the first row has waited the maximum delay, or the previous insert has finished. Each caller waits for
+ * the insert holding its row. Rows that arrive already batched are written right away, on the calling thread. An insert
+ * failing for some of its rows only, like for an unreadable body, is retried without them, so only their callers fail. Closing stops taking rows, flushes those still queued, and closes the inserter.
+ */
+public class ClickHouseBatcher implements MeterBinder, AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(ClickHouseBatcher.class);
+
+    private final ClickHouseInserter inserter;
+    private final int maxRows;
+    private final long maxBytes;
+    private final Duration maxDelay;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private Timer successTimer;
+    private Timer failureTimer;
+    private DistributionSummary rowsSummary;
+    private DistributionSummary bytesSummary;
+
+    public ClickHouseBatcher(ClickHouseInserter inserter, int maxRows, long maxBytes, Duration maxDelay)
+    {
+        this.inserter = inserter;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.maxDelay = maxDelay;
+        this.flusher = new Thread(this::run, "clickhouse-batcher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Insert a row along with those of other callers, waiting for it to be written
+     */
+    public void insert(ClickHouseRow row)
+    {
+        if (!running)
+        {
+            throw new IllegalStateException("ClickHouse batcher is closed");
+        }
+
+        final Pending pending = new Pending(row);
+        queuedBytes.addAndGet(pending.bytes);
+        queue.add(pending);
+        if (!running && queue.remove(pending))
+        {
+            // Closed meanwhile, possibly after the last drain of the queue, so nobody else would complete it
+            queuedBytes.addAndGet(-pending.bytes);
+            throw new IllegalStateException("ClickHouse batcher is closed");
+        }
+
+        try
+        {
+            pending.done.join();
+        }
+        catch (CompletionException exc)
+        {
+            if (exc.getCause() instanceof RuntimeException runtimeException)
+            {
+                throw runtimeException;
+            }
+            throw exc;
+        }
+    }
+
+    /**
+     * Insert rows that are already batched right away
+     *
+     * @return The failure of each row that could not be inserted, while the others were
+     * @throws RuntimeException If none of the rows could be inserted, see {@link #writeIsolating(List, long)}
+     */
+    public Map<ClickHouseRow, RuntimeException> insert(List<ClickHouseRow> rows)
+    {
+        return writeIsolating(rows, size(rows));
+    }
+
+    /**
+     * @return The number of queued row bytes
+     */
+    public long getQueuedBytes()
+    {
+        return queuedBytes.get();
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry)
+    {
+        successTimer = Timer.builder("http.logger.clickhouse.flush").tag("outcome", "success").register(registry);
+        failureTimer = Timer.builder("http.logger.clickhouse.flush").tag("outcome", "failure").register(registry);
+        rowsSummary = DistributionSummary.builder("http.logger.clickhouse.flush.rows").register(registry);
+        bytesSummary = DistributionSummary.builder("http.logger.clickhouse.flush.bytes").baseUnit("bytes").register(registry);
+        Gauge.builder("http.logger.clickhouse.pending", queue, BlockingQueue::size).register(registry);
+    }
+
+    private void run()
+    {
+        final List<Pending> batch = new ArrayList<>();
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                final Pending first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null)
+                {
+                    collect(first, batch);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch (Exception e)
+            {
+                logger.error("Error in ClickHouse batcher", e);
+            }
+        }
+    }
+
+    private void collect(Pending first, List<Pending> batch) throws InterruptedException
+    {
+        batch.add(first);
+        long bytes = first.bytes;
+        final long deadline = System.nanoTime() + maxDelay.toNanos();
+        try
+        {
+            while (batch.size() < maxRows && bytes < maxBytes)
+            {
+                final long wait = deadline - System.nanoTime();
+                final Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                if (next == null)
+                {
+                    break;
+                }
+                batch.add(next);
+                bytes += next.bytes;
+            }
+        } finally
+        {
+            // Whatever was taken off the queue is written, even when interrupted
+            flushPending(batch, bytes);
+        }
+    }
+
+    private void flushPending(List<Pending> batch, long bytes)
+    {
+        queuedBytes.addAndGet(-bytes);
+        try
+        {
+            final Map<ClickHouseRow, RuntimeException> failures = writeIsolating(batch.stream().map(pending -> pending.row).toList(), bytes);
+            for (Pending pending : batch)
+            {
+                final RuntimeException failure = failures.get(pending.row);
+                if (failure != null)
+                {
+                    pending.done.completeExceptionally(failure);
+                }
+                else
+                {
+                    pending.done.complete(null);
+                }
+            }
+        }
+        catch (RuntimeException exc)
+        {
+            batch.forEach(pending -> pending.done.completeExceptionally(exc));
+        } finally
+        {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write the rows with a single insert. If it fails for some of the rows, those are told apart from the others,
+     * which are inserted without them: a row with an unreadable body is left out, and a batch ClickHouse rejects is
+     * split in halves, down to the rows it rejects.
+     *
+     * @return The failure of each row that could not be inserted
+     * @throws RuntimeException If the insert failed for all rows alike, like when ClickHouse is unreachable, overloaded
+     *                          or refuses the credentials. None of the rows are inserted then, and the batch is not
+     *                          split, so a failing server is not sent more inserts.
+     */
+    private Map<ClickHouseRow, RuntimeException> writeIsolating(List<ClickHouseRow> rows, long bytes)
+    {
+        try
+        {
+            write(rows, bytes);
+            return Map.of();
+        }
+        catch (RuntimeException exc)
+        {
+            if (unreadableRow(exc, rows) == null && !(exc instanceof InvalidDataAccessResourceUsageException))
+            {
+                throw exc;
+            }
+
+            final Map<ClickHouseRow, RuntimeException> failures = new HashMap<>();
+            isolate(rows, exc, failures);
+            return failures;
+        }
+    }
+
+    private void isolate(List<ClickHouseRow> rows, RuntimeException exc, Map<ClickHouseRow, RuntimeException> failures)
+    {
+        final ClickHouseRow unreadable = unreadableRow(exc, rows);
+        if (unreadable != null)
+        {
+            logger.warn("Leaving out a row with an unreadable body from a ClickHouse insert of {} rows: {}", rows.size(), exc.getMessage());
+            failures.put(unreadable, exc);
+            retry(rows.stream().filter(row -> row != unreadable).toList(), failures);
+        }
+        else if (exc instanceof InvalidDataAccessResourceUsageException && rows.size() > 1)
+        {
+            logger.warn("ClickHouse rejected an insert of {} rows, splitting it: {}", rows.size(), exc.getMessage());
+            retry(rows.subList(0, rows.size() / 2), failures);
+            retry(rows.subList(rows.size() / 2, rows.size()), failures);
+        }
+        else
+        {
+            rows.forEach(row -> failures.put(row, exc));
+        }
+    }
+
+    private void retry(List<ClickHouseRow> rows, Map<ClickHouseRow, RuntimeException> failures)
+    {
+        if (rows.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            write(rows, size(rows));
+        }
+        catch (RuntimeException exc)
+        {
+            isolate(rows, exc, failures);
+        }
+    }
+
+    /**
+     * @return The row of the batch with the body that could not be read, or null if the failure is not about one
+     */
+    private static ClickHouseRow unreadableRow(RuntimeException exc, List<ClickHouseRow> rows)
+    {
+        for (Throwable cause = exc; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof ClickHouseRow.UnreadableBodyException unreadable)
+            {
+                // Either a row of the batch, or a body row one of them refers to
+                return rows.stream()
+                        .filter(row -> row == unreadable.getRow() || row.getBodyRows().contains(unreadable.getRow()))
+                        .findFirst()
+                        .orElse(null);
+            }
+        }
+        return null;
+    }
+
+    private static long size(List<ClickHouseRow> rows)
+    {
+        return rows.stream().mapToLong(ClickHouseRow::size).sum();
+    }
+
+    private void write(List<ClickHouseRow> rows, long bytes)
+    {
+        final long start = System.nanoTime();
+        boolean success = false;
+        try
+        {
+            inserter.insert(rows);
+            success = true;
+        } finally
+        {
+            record(rows.size(), bytes, System.nanoTime() - start, success);
+        }
+    }
+
+    private void record(int rows, long bytes, long nanos, boolean success)
+    {
+        if (successTimer == null)
+        {
+            return;
+        }
+
+        (success ? successTimer : failureTimer).record(nanos, TimeUnit.NANOSECONDS);
+        rowsSummary.record(rows);
+        bytesSummary.record(bytes);
+    }
+
+    @Override
+    public void close()
+    {
+        this.running = false;
+        try
+        {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        // Left behind if the flusher got stuck, so written by the closing thread
+        final List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty())
+        {
+            flushPending(remaining, remaining.stream().mapToLong(pending -> pending.bytes).sum());
+        }
+
+        try
+        {
+            inserter.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Error closing the ClickHouse inserter", e);
+        }
+    }
+
+    private static final class Pending
+    {
+        private final ClickHouseRow row;
+        private final long bytes;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Pending(ClickHouseRow row)
+        {
+            this.row = row;
+            this.bytes = row.size();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.ethlo.http.logger.clickhouse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.entity.EntityTemplate;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.net.URIBuilder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream.BLOCKSIZE;
+import net.jpountz.lz4.LZ4FrameOutputStream.FLG;
+
+/**
+ * Inserts <code>RowBinary</code> rows over the ClickHouse HTTP interface, streaming them into the request body,
+ * LZ4 compressed if enabled. Bodies are streamed from their capture, so the memory used does not depend on their size.
+ * <p>
+ * An insert ClickHouse rejects for the data it holds fails with an {@link InvalidDataAccessResourceUsageException}. Any
+ * other failure, like an unreachable or overloaded server, a missing table or wrong credentials, fails with a
+ * {@link DataAccessResourceFailureException}.
+ */
+public class ClickHouseInserter implements AutoCloseable
+{
+    private static final String EXCEPTION_CODE_HEADER = "X-ClickHouse-Exception-Code";
+
+    /**
+     * Errors parsing or converting the inserted values, like CANNOT_PARSE_TEXT, CANNOT_READ_ALL_DATA, TYPE_MISMATCH or
+     * TOO_LARGE_STRING_SIZE
+     */
+    private static final Set<Integer> DATA_ERROR_CODES = Set.of(6, 26, 27, 32, 33, 38, 41, 53, 69, 70, 72, 117, 131);
+
+    private final CloseableHttpClient httpClient;
+    private final URI insertUri;
+    private final URI bodyInsertUri;
+    private final String username;
+    private final String password;
+    private final boolean compress;
+
+    /**
+     * @param insertUri     The insert query on the HTTP interface, see {@link #insertUri(URI, String, String, List, Map)}
+     * @param bodyInsertUri The insert query for the body table, null if bodies are not stored separately
+     */
+    public ClickHouseInserter(CloseableHttpClient httpClient, URI insertUri, URI bodyInsertUri, String username, String password, boolean compress)
+    {
+        this.httpClient = httpClient;
+        this.insertUri = insertUri;
+        this.bodyInsertUri = bodyInsertUri;
+        this.username = username;
+        this.password = password;
+        this.compress = compress;
+    }
+
+    /**
+     * @param baseUri  The HTTP interface, like <code>http://localhost:8123/</code>
+     * @param settings Settings for the insert query, like <code>async_insert</code>
+     * @return The URI that inserts <code>RowBinary</code> rows with the given columns into the table
+     */
+    public static URI insertUri(URI baseUri, String database, String table, List<String> columns, Map<String, String> settings)
+    {
+        try
+        {
+            final URIBuilder builder = new URIBuilder(baseUri)
+                    .addParameter("query", "INSERT INTO " + table + " (" + String.join(", ", columns) + ") FORMAT RowBinary");
+            if (database != null)
+            {
+                builder.addParameter("database", database);
+            }
+            settings.forEach(builder::addParameter);
+            return builder.build();
+        }
+        catch (URISyntaxException e)
+        {
+            throw new IllegalArgumentException("Invalid ClickHouse URL: " + baseUri, e);
+        }
+    }
+
+    /**
+     * Insert the rows with a single request, so they end up in one part on the server. The body rows they refer to are
+     * inserted first, so a logged body hash can always be looked up.
+     */
+    public void insert(List<ClickHouseRow> rows)
+    {
+        final List<ClickHouseRow> bodyRows = rows.stream().flatMap(row -> row.getBodyRows().stream()).toList();
+        if (!bodyRows.isEmpty())
+        {
+            insert(bodyInsertUri, bodyRows);
+            bodyRows.forEach(ClickHouseRow::inserted);
+        }
+
+        insert(insertUri, rows);
+        rows.forEach(ClickHouseRow::inserted);
+    }
+
+    private void insert(URI uri, List<ClickHouseRow> rows)
+    {
+        final HttpPost post = new HttpPost(uri);
+        if (username != null)
+        {
+            post.setHeader("X-ClickHouse-User", username);
+        }
+        if (password != null)
+        {
+            post.setHeader("X-ClickHouse-Key", password);
+        }
+        post.setEntity(new EntityTemplate(-1, ContentType.APPLICATION_OCTET_STREAM, compress ? "lz4" : null, out -> write(rows, out)));
+
+        try
+        {
+            httpClient.execute(post, response ->
+            {
+                final String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8) : "";
+                if (response.getCode() != 200)
+                {
+                    final String message = "ClickHouse insert failed with status " + response.getCode() + ": " + body.strip();
+                    final Header code = response.getFirstHeader(EXCEPTION_CODE_HEADER);
+                    if (rejectsData(response.getCode(), code != null ? code.getValue() : null))
+                    {
+                        throw new InvalidDataAccessResourceUsageException(message);
+                    }
+                    throw new DataAccessResourceFailureException(message);
+                }
+                return null;
+            });
+        }
+        catch (IOException e)
+        {
+            throw new DataAccessResourceFailureException("Unable to insert into ClickHouse at " + uri.getHost() + ":" + uri.getPort(), e);
+        }
+    }
+
+    /**
+     * @param exceptionCode The ClickHouse error code of the failure, if known
+     * @return Whether the insert failed for the data it holds, rather than for the server, the table or the credentials,
+     * so that inserting the rows apart can tell the rejected ones from the others
+     */
+    static boolean rejectsData(int status, String exceptionCode)
+    {
+        if (status == 400)
+        {
+            return true;
+        }
+
+        try
+        {
+            return exceptionCode != null && DATA_ERROR_CODES.contains(Integer.parseInt(exceptionCode.strip()));
+        }
+        catch (NumberFormatException exc)
+        {
+            return false;
+        }
+    }
+
+    private void write(List<ClickHouseRow> rows, OutputStream out) throws IOException
+    {
+        // Small frame blocks, as the compressor buffers a whole block. Closing writes the end mark, and ends the request body.
+        final OutputStream encoded = compress ? new LZ4FrameOutputStream(out, BLOCKSIZE.SIZE_64KB, FLG.Bits.BLOCK_INDEPENDENCE) : out;
+        try (RowBinaryOutputStream target = new RowBinaryOutputStream(encoded))
+        {
+            for (ClickHouseRow row : rows)
+            {
+                row.writeTo(target);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        httpClient.close();
+    }
+}
@@ -1,123 +1,123 @@
 package com.ethlo.http.logger.clickhouse;
 
-import static com.ethlo.http.match.LogOptions.ContentProcessing.STORE;
-import static com.ethlo.http.netty.ServerDirection.REQUEST;
-import static com.ethlo.http.netty.ServerDirection.RESPONSE;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpHeaders;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
 
+import com.ethlo.http.logger.BatchLogException;
 import com.ethlo.http.logger.HttpLogger;
-import com.ethlo.http.match.LogOptions;
-import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.logger.RejectedExchangeException;
 import com.ethlo.http.model.WebExchangeDataProvider;
-import com.ethlo.http.netty.PredicateConfig;
-import com.ethlo.http.netty.ServerDirection;
 
 public class ClickHouseLogger implements HttpLogger
 {
-    private static final Logger logger = LoggerFactory.getLogger(ClickHouseLogger.class);
-    private final ClickHouseLoggerRepository clickHouseLoggerRepository;
+    private final ClickHouseRowEncoder encoder;
+    private final ClickHouseBatcher batcher;
 
-    public ClickHouseLogger(ClickHouseLoggerRepository clickHouseLoggerRepository)
+    public ClickHouseLogger(ClickHouseRowEncoder encoder, ClickHouseBatcher batcher)
     {
-        this.clickHouseLoggerRepository = clickHouseLoggerRepository;
+        this.encoder = encoder;
+        this.batcher = batcher;
     }
 
     @Override
     public void accessLog(final WebExchangeDataProvider dataProvider)
     {
-        final PredicateConfig predicateConfig = dataProvider.getPredicateConfig();
-        final Map<String, Object> params = new TreeMap<>(dataProvider.asMetaMap());
-
-        initializeParams(params);
-
-        prepareHeaders(dataProvider, predicateConfig, params);
-        dataProvider.getException().ifPresent(exc -> {
-            params.put("exception_type", exc.getClass().getName());
-            params.put("exception_message", exc.getMessage());
-        });
-
-        dataProvider.getRequestBody().ifPresent(bodyProvider -> processContentSync(predicateConfig.request(), bodyProvider, REQUEST, params));
-        dataProvider.getResponseBody().ifPresent(bodyProvider -> processContentSync(predicateConfig.response(), bodyProvider, RESPONSE, params));
+        // Failures are left to the caller, which retries those of ClickHouse, and persists the exchange if it keeps failing
+        final ClickHouseRow row;
+        try
+        {
+            row = encoder.encode(dataProvider);
+        }
+        catch (RuntimeException exc)
+        {
+            throw new RejectedExchangeException("Unable to encode request " + dataProvider.getRequestId(), exc);
+        }
 
         try
         {
-            clickHouseLoggerRepository.insert(params);
+            batcher.insert(row);
         }
-        catch (Exception e)
+        catch (RuntimeException exc)
         {
-            logger.error("Failed to insert log into Clickhouse for request {}", dataProvider.getRequestId(), e);
+            throw rejected(exc);
         }
     }
 
     @Override
-    public String getName()
-    {
-        return "clickhouse";
-    }
-
-    private void processContentSync(LogOptions logConfig, BodyProvider bodyProvider, ServerDirection dir, Map<String, Object> params)
+    public void accessLog(final List<WebExchangeDataProvider> batch)
     {
-        try (final InputStream inputStream = bodyProvider.getInputStream())
+        final List<WebExchangeDataProvider> failed = new ArrayList<>();
+        RuntimeException cause = null;
+        final Map<ClickHouseRow, WebExchangeDataProvider> rows = new LinkedHashMap<>();
+        for (WebExchangeDataProvider dataProvider : batch)
         {
-            final byte[] body = inputStream.readAllBytes();
-            final String prefix = dir.name().toLowerCase();
-
-            params.put(prefix + "_total_size", body.length);
-            params.put(prefix + "_body_size", body.length);
-
-            if (logConfig.body() == STORE || logConfig.raw() == STORE)
+            try
             {
-                params.put(prefix + "_body", body);
+                rows.put(encoder.encode(dataProvider), dataProvider);
+            }
+            catch (RuntimeException exc)
+            {
+                failed.add(dataProvider);
+                cause = cause != null ? cause : new RejectedExchangeException("Unable to encode request " + dataProvider.getRequestId(), exc);
             }
         }
-        catch (IOException e)
+
+        if (!rows.isEmpty())
         {
-            logger.error("Failed to read captured body file for {} direction: {}", dir, bodyProvider.file(), e);
-            throw new UncheckedIOException(e);
+            try
+            {
+                for (Map.Entry<ClickHouseRow, RuntimeException> failure : batcher.insert(List.copyOf(rows.keySet())).entrySet())
+                {
+                    failed.add(rows.get(failure.getKey()));
+                    cause = cause != null ? cause : rejected(failure.getValue());
+                }
+            }
+            catch (RuntimeException exc)
+            {
+                if (failed.isEmpty())
+                {
+                    // None of the batch was logged
+                    throw exc;
+                }
+                failed.addAll(rows.values());
+            }
         }
-    }
 
-    private void initializeParams(Map<String, Object> params)
-    {
-        final List<String> prefixes = List.of("request", "response");
-        for (String prefix : prefixes)
+        if (cause != null)
         {
-            params.put(prefix + "_raw", null);
-            params.put(prefix + "_body", null);
-            params.put(prefix + "_body_size", null);
-            params.put(prefix + "_total_size", null);
+            throw new BatchLogException(failed, cause);
         }
-        params.put("exception_type", null);
-        params.put("exception_message", null);
     }
 
-    private void prepareHeaders(WebExchangeDataProvider dataProvider, PredicateConfig predicateConfig, Map<String, Object> params)
+    /**
+     * @return The failure as a {@link RejectedExchangeException} if it was caused by the row rather than by ClickHouse,
+     * so it is not retried, or the failure itself otherwise
+     */
+    private static RuntimeException rejected(RuntimeException exc)
     {
-        params.put("request_headers", flattenMap(dataProvider.getRequestHeaders()));
-        params.put("response_headers", flattenMap(dataProvider.getResponseHeaders()));
+        for (Throwable cause = exc; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof InvalidDataAccessResourceUsageException || cause instanceof ClickHouseRow.UnreadableBodyException)
+            {
+                return new RejectedExchangeException(exc.getMessage(), exc);
+            }
+        }
+        return exc;
     }
 
-    private Map<String, String> flattenMap(HttpHeaders headers)
+    @Override
+    public String getName()
     {
-        return headers.headerNames().stream()
-                .collect(Collectors.toMap(k -> k, k -> String.join(", ", Objects.requireNonNull(headers.get(k)))));
+        return "clickhouse";
     }
 
     @Override
     public void close()
     {
-        // Nothing
+        batcher.close();
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,62 @@
 package com.ethlo.http.logger.clickhouse;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.util.unit.DataSize;
+
 import com.ethlo.http.logger.BaseProviderConfig;
 
 public class ClickHouseProviderConfig extends BaseProviderConfig
 {
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final DataSize DEFAULT_MAX_BATCH_BYTES = DataSize.ofMegabytes(8);
+
+    public static final int DEFAULT_STORED_BODY_CACHE_SIZE = 10_000;
+
+    public static final Duration DEFAULT_BODY_TTL = Duration.ofDays(30);
+
+    public static final Duration DEFAULT_ROW_TTL = Duration.ofDays(365);
+
     private final String url;
     private final String username;
     private final String password;
     private final String connectionInitSql;
+    private final Integer batchSize;
+    private final DataSize maxBatchBytes;
+    private final Duration maxBatchDelay;
+    private final URI httpUrl;
+    private final Map<String, String> insertSettings;
+    private final Boolean compress;
+    private final Boolean separateBodies;
+    private final Integer storedBodyCacheSize;
+    private final Duration bodyTtl;
+    private final Duration rowTtl;
 
-    public ClickHouseProviderConfig(final boolean enabled, final String url, final String username, final String password, final String connectionInitSql)
+    public ClickHouseProviderConfig(final boolean enabled, final String url, final String username, final String password, final String connectionInitSql,
+                                    final Integer batchSize, final DataSize maxBatchBytes, final Duration maxBatchDelay,
+                                    final URI httpUrl, final Map<String, String> insertSettings, final Boolean compress,
+                                    final Boolean separateBodies, final Integer storedBodyCacheSize,
+                                    final Duration bodyTtl, final Duration rowTtl)
     {
         super(enabled);
         this.url = url;
         this.username = username;
         this.password = password;
         this.connectionInitSql = connectionInitSql;
+        this.batchSize = batchSize;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchDelay = maxBatchDelay;
+        this.httpUrl = httpUrl;
+        this.insertSettings = insertSettings;
+        this.compress = compress;
+        this.separateBodies = separateBodies;
+        this.storedBodyCacheSize = storedBodyCacheSize;
+        this.bodyTtl = bodyTtl;
+        this.rowTtl = rowTtl;
     }
 
     public String getUrl()
@@ -37,4 +78,100 @@ public class ClickHouseProviderConfig extends BaseProviderConfig
     {
         return connectionInitSql;
     }
+
+    /**
+     * @return The maximum number of rows per insert
+     */
+    public int getBatchSize()
+    {
+        return Optional.ofNullable(batchSize).orElse(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @return The encoded row bytes at which an insert is made, even if not full
+     */
+    public DataSize getMaxBatchBytes()
+    {
+        return Optional.ofNullable(maxBatchBytes).orElse(DEFAULT_MAX_BATCH_BYTES);
+    }
+
+    /**
+     * @return How long a row waits for others to be inserted with. With no delay, only rows that arrived while the
+     * previous insert was running are inserted together.
+     */
+    public Duration getMaxBatchDelay()
+    {
+        return Optional.ofNullable(maxBatchDelay).orElse(Duration.ZERO);
+    }
+
+    /**
+     * @return The HTTP interface rows are inserted through, by default the host and port of the JDBC URL
+     */
+    public URI getHttpUrl()
+    {
+        return Optional.ofNullable(httpUrl).orElseGet(() -> httpUrl(url));
+    }
+
+    /**
+     * @return Settings for the insert queries, like <code>async_insert</code>
+     */
+    public Map<String, String> getInsertSettings()
+    {
+        return Optional.ofNullable(insertSettings).orElse(Map.of());
+    }
+
+    /**
+     * @return Whether inserted rows are LZ4 compressed
+     */
+    public boolean isCompress()
+    {
+        return Optional.ofNullable(compress).orElse(true);
+    }
+
+    /**
+     * @return Whether bodies are stored once per distinct content in the <code>log_body</code> table, with the log table
+     * holding their hashes
+     */
+    public boolean isSeparateBodies()
+    {
+        return Optional.ofNullable(separateBodies).orElse(false);
+    }
+
+    /**
+     * @return The number of stored body hashes to remember, to avoid sending the same body again
+     */
+    public int getStoredBodyCacheSize()
+    {
+        return Optional.ofNullable(storedBodyCacheSize).orElse(DEFAULT_STORED_BODY_CACHE_SIZE);
+    }
+
+    /**
+     * @return How long the bodies and raw data are kept, in whole days
+     */
+    public Duration getBodyTtl()
+    {
+        return Optional.ofNullable(bodyTtl).orElse(DEFAULT_BODY_TTL);
+    }
+
+    /**
+     * @return How long the rows are kept, in whole days
+     */
+    public Duration getRowTtl()
+    {
+        return Optional.ofNullable(rowTtl).orElse(DEFAULT_ROW_TTL);
+    }
+
+    private static URI httpUrl(String jdbcUrl)
+    {
+        // Like jdbc:ch://localhost:8123?database=default or jdbc:clickhouse:https://localhost/default
+        String url = jdbcUrl.replaceFirst("^jdbc:(ch|clickhouse):", "");
+        if (url.startsWith("//"))
+        {
+            url = "http:" + url;
+        }
+        final URI uri = URI.create(url);
+        final boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        final int port = uri.getPort() != -1 ? uri.getPort() : secure ? 8443 : 8123;
+        return URI.create((secure ? "https" : "http") + "://" + uri.getHost() + ":" + port + "/");
+    }
 }
@@ -0,0 +1,213 @@
+package com.ethlo.http.logger.clickhouse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import com.ethlo.http.model.BodyProvider;
+
+/**
+ * A <code>RowBinary</code> row, with the columns around the bodies already encoded, and the bodies streamed from their
+ * capture when the row is written. The captured data must not be cleaned up before the row is written.
+ * <p>
+ * A row of the log table may come with rows of the body table, which must be inserted before it.
+ */
+public class ClickHouseRow
+{
+    private final byte[] head;
+    private final List<Body> bodies;
+    private final byte[] tail;
+    private final List<ClickHouseRow> bodyRows;
+    private final Runnable onInserted;
+    private final long size;
+
+    ClickHouseRow(byte[] head, List<Body> bodies, byte[] tail)
+    {
+        this(head, bodies, tail, List.of(), () -> {});
+    }
+
+    /**
+     * @param bodyRows   The rows of the body table this row refers to
+     * @param onInserted Called once the row is inserted
+     */
+    ClickHouseRow(byte[] head, List<Body> bodies, byte[] tail, List<ClickHouseRow> bodyRows, Runnable onInserted)
+    {
+        this.head = head;
+        this.bodies = bodies;
+        this.tail = tail;
+        this.bodyRows = bodyRows;
+        this.onInserted = onInserted;
+        this.size = head.length + tail.length + bodies.stream().mapToLong(Body::encodedSize).sum()
+                + bodyRows.stream().mapToLong(ClickHouseRow::size).sum();
+    }
+
+    /**
+     * @return A row that is encoded already
+     */
+    public static ClickHouseRow encoded(byte[] row)
+    {
+        return new ClickHouseRow(row, List.of(), new byte[0]);
+    }
+
+    /**
+     * @return The number of bytes written by {@link #writeTo(RowBinaryOutputStream)}, for this row and its body rows
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    public void writeTo(RowBinaryOutputStream out) throws IOException
+    {
+        out.write(head);
+        for (Body body : bodies)
+        {
+            if (body.nullable())
+            {
+                out.writeUInt8(body.provider() == null ? 1 : 0);
+            }
+            if (body.provider() == null)
+            {
+                continue;
+            }
+
+            try (InputStream in = new BodyInputStream(open(body), body.length()))
+            {
+                out.writeString(in, body.length());
+            }
+        }
+        out.write(tail);
+    }
+
+    private InputStream open(Body body) throws UnreadableBodyException
+    {
+        try
+        {
+            return body.provider().getInputStream();
+        }
+        catch (UncheckedIOException exc)
+        {
+            throw new UnreadableBodyException(this, "Unable to open body", exc);
+        }
+    }
+
+    /**
+     * @return The rows of the body table, to insert before this row
+     */
+    public List<ClickHouseRow> getBodyRows()
+    {
+        return bodyRows;
+    }
+
+    /**
+     * Called once the row is inserted
+     */
+    public void inserted()
+    {
+        onInserted.run();
+    }
+
+    /**
+     * Thrown when writing a row whose captured body can no longer be read as measured, so the row can never be
+     * written, unlike the others of the same insert
+     */
+    public static class UnreadableBodyException extends IOException
+    {
+        private final transient ClickHouseRow row;
+
+        UnreadableBodyException(ClickHouseRow row, String message, Throwable cause)
+        {
+            super(message, cause);
+            this.row = row;
+        }
+
+        /**
+         * @return The row holding the body
+         */
+        public ClickHouseRow getRow()
+        {
+            return row;
+        }
+    }
+
+    /**
+     * Reads exactly the measured length of a body, failing with {@link UnreadableBodyException} otherwise, so a failed
+     * read is told apart from a failed write of the insert
+     */
+    private final class BodyInputStream extends FilterInputStream
+    {
+        private final long length;
+        private long remaining;
+
+        private BodyInputStream(InputStream in, long length)
+        {
+            super(in);
+            this.length = length;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            try
+            {
+                if (remaining == 0)
+                {
+                    if (in.read() != -1)
+                    {
+                        throw new UnreadableBodyException(ClickHouseRow.this, "Expected " + length + " bytes, got more", null);
+                    }
+                    return -1;
+                }
+
+                final int read = in.read(b, off, (int) Math.min(len, remaining));
+                if (read == -1)
+                {
+                    throw new UnreadableBodyException(ClickHouseRow.this, "Expected " + length + " bytes, got " + (length - remaining), null);
+                }
+                remaining -= read;
+                return read;
+            }
+            catch (UnreadableBodyException exc)
+            {
+                throw exc;
+            }
+            catch (IOException | UncheckedIOException exc)
+            {
+                throw new UnreadableBodyException(ClickHouseRow.this, "Unable to read body", exc);
+            }
+        }
+    }
+
+    /**
+     * A <code>Nullable(String)</code> or <code>String</code> body column
+     *
+     * @param provider The body, null for a null column
+     * @param length   The number of bytes read from the body
+     */
+    record Body(BodyProvider provider, long length, boolean nullable)
+    {
+        static final Body NULL = new Body(null, 0, true);
+
+        Body(BodyProvider provider, long length)
+        {
+            this(provider, length, true);
+        }
+
+        long encodedSize()
+        {
+            // The null marker, and the length as a varint
+            final long marker = nullable ? 1 : 0;
+            return provider == null ? marker : marker + (64 - Long.numberOfLeadingZeros(length | 1) + 6) / 7 + length;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.ethlo.http.logger.clickhouse;
+
+import static com.ethlo.http.netty.ServerDirection.REQUEST;
+import static com.ethlo.http.netty.ServerDirection.RESPONSE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import com.ethlo.http.match.LogOptions;
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.processors.auth.RealmUser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Encodes exchanges as <code>RowBinary</code> rows of the log table, with the values taken straight from the exchange.
+ * Bodies are not read into memory, only measured, and streamed from their capture when the row is written.
+ * <p>
+ * With separate bodies, the log table holds the SHA-256 hash of each body, and the body itself goes into the body
+ * table, keyed by the hash. Bodies stored recently are remembered, so they are not sent again. The hash is needed
+ * before a body can be skipped or sent, so it takes a read of its own through each body, on top of the one streaming
+ * it to the body table.
+ */
+public class ClickHouseRowEncoder
+{
+    /**
+     * The columns of a row, in the order they are written
+     */
+    public static final List<String> COLUMNS = List.of(
+            "timestamp", "route_id", "route_uri", "gateway_request_id", "method", "path",
+            "response_time", "status", "is_error", "request_headers", "response_headers",
+            "request_content_type", "response_content_type", "host", "user_agent", "user_claim", "realm_claim",
+            "request_body_size", "request_total_size", "response_body_size", "response_total_size",
+            "request_body", "response_body", "request_raw", "response_raw", "exception_type", "exception_message",
+            "request_body_truncated", "response_body_truncated", "request_body_hash", "response_body_hash"
+    );
+
+    /**
+     * The columns of a row of the body table, in the order they are written
+     */
+    public static final List<String> BODY_COLUMNS = List.of("hash", "body", "timestamp");
+
+    private static final Logger logger = LoggerFactory.getLogger(ClickHouseRowEncoder.class);
+
+    // A body stored longer ago may have been dropped from the body table since
+    private static final Duration STORED_BODY_EXPIRY = Duration.ofHours(1);
+
+    private final boolean separateBodies;
+    private final Cache<String, Boolean> storedBodies;
+
+    public ClickHouseRowEncoder()
+    {
+        this(false, 0);
+    }
+
+    /**
+     * @param separateBodies      Whether bodies go into the body table
+     * @param storedBodyCacheSize The number of stored body hashes to remember
+     */
+    public ClickHouseRowEncoder(boolean separateBodies, long storedBodyCacheSize)
+    {
+        this.separateBodies = separateBodies;
+        this.storedBodies = Caffeine.newBuilder()
+                .maximumSize(storedBodyCacheSize)
+                .expireAfterWrite(STORED_BODY_EXPIRY)
+                .build();
+    }
+
+    public ClickHouseRow encode(WebExchangeDataProvider dataProvider)
+    {
+        final BodyColumns request = body(dataProvider, REQUEST);
+        final BodyColumns response = body(dataProvider, RESPONSE);
+        final HttpHeaders requestHeaders = dataProvider.getRequestHeaders();
+        final HttpHeaders responseHeaders = dataProvider.getResponseHeaders();
+        final Optional<RealmUser> user = dataProvider.getUser();
+
+        final ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+        final ByteArrayOutputStream tail = new ByteArrayOutputStream(64);
+        try (RowBinaryOutputStream out = new RowBinaryOutputStream(head))
+        {
+            out.writeDateTime64Millis(dataProvider.getTimestamp());
+            out.writeString(dataProvider.getRoute().id());
+            out.writeString(dataProvider.getRoute().uri().toString());
+            out.writeString(dataProvider.getRequestId());
+            out.writeString(dataProvider.getMethod().name());
+            out.writeString(dataProvider.getPath());
+            out.writeInt64(dataProvider.getDuration().toMillis());
+            out.writeInt16(dataProvider.getStatusCode().value());
+            out.writeBoolean(dataProvider.getStatusCode().isError());
+            writeHeaders(out, requestHeaders);
+            writeHeaders(out, responseHeaders);
+            out.writeNullableString(Optional.ofNullable(requestHeaders.getContentType()).map(MediaType::toString).orElse(null));
+            out.writeNullableString(Optional.ofNullable(responseHeaders.getContentType()).map(MediaType::toString).orElse(null));
+            out.writeNullableString(requestHeaders.getFirst(HttpHeaders.HOST));
+            out.writeNullableString(requestHeaders.getFirst(HttpHeaders.USER_AGENT));
+            out.writeNullableString(user.map(RealmUser::username).orElse(null));
+            out.writeNullableString(user.map(RealmUser::realm).orElse(null));
+            // The size is counted while streaming, so the body and total size are the same
+            out.writeNullableInt64(request.size());
+            out.writeNullableInt64(request.size());
+            out.writeNullableInt64(response.size());
+            out.writeNullableInt64(response.size());
+        }
+        catch (IOException e)
+        {
+            // Not thrown by the in-memory buffer
+            throw new UncheckedIOException(e);
+        }
+
+        // The bodies are streamed in between when the row is written
+        try (RowBinaryOutputStream out = new RowBinaryOutputStream(tail))
+        {
+            out.writeNullableString((byte[]) null);
+            out.writeNullableString((byte[]) null);
+            out.writeNullableString(dataProvider.getExceptionType().orElse(null));
+            out.writeNullableString(dataProvider.getException().map(Throwable::getMessage).orElse(null));
+            out.writeBoolean(dataProvider.isBodyTruncated(REQUEST));
+            out.writeBoolean(dataProvider.isBodyTruncated(RESPONSE));
+            out.writeNullableFixedString(request.hash());
+            out.writeNullableFixedString(response.hash());
+        }
+        catch (IOException e)
+        {
+            // Not thrown by the in-memory buffer
+            throw new UncheckedIOException(e);
+        }
+
+        final List<ClickHouseRow> bodyRows = new ArrayList<>(2);
+        final Set<String> added = new HashSet<>(2);
+        for (BodyColumns body : List.of(request, response))
+        {
+            if (body.hash() == null)
+            {
+                continue;
+            }
+
+            final String key = HexFormat.of().formatHex(body.hash());
+            if (storedBodies.getIfPresent(key) == null && added.add(key))
+            {
+                bodyRows.add(bodyRow(key, body, dataProvider.getTimestamp()));
+            }
+        }
+
+        return new ClickHouseRow(head.toByteArray(), List.of(request.data(), response.data()), tail.toByteArray(), bodyRows, () -> {});
+    }
+
+    private ClickHouseRow bodyRow(String key, BodyColumns body, OffsetDateTime timestamp)
+    {
+        final ByteArrayOutputStream tail = new ByteArrayOutputStream(8);
+        try (RowBinaryOutputStream out = new RowBinaryOutputStream(tail))
+        {
+            out.writeDateTime64Millis(timestamp);
+        }
+        catch (IOException e)
+        {
+            // Not thrown by the in-memory buffer
+            throw new UncheckedIOException(e);
+        }
+
+        // Only remembered once inserted, so a failed insert sends the body again when retried
+        return new ClickHouseRow(body.hash(), List.of(body.stored()), tail.toByteArray(), List.of(), () -> storedBodies.put(key, Boolean.TRUE));
+    }
+
+    private void writeHeaders(RowBinaryOutputStream out, HttpHeaders headers) throws IOException
+    {
+        out.writeVarInt(headers.headerNames().size());
+        for (String name : headers.headerNames())
+        {
+            out.writeString(name);
+            out.writeString(String.join(", ", Objects.requireNonNull(headers.get(name))));
+        }
+    }
+
+    private BodyColumns body(WebExchangeDataProvider dataProvider, ServerDirection dir)
+    {
+        final Long size = dataProvider.getBodySize(dir).orElse(null);
+        final LogOptions logConfig = dir == REQUEST ? dataProvider.getPredicateConfig().request() : dataProvider.getPredicateConfig().response();
+        if (!logConfig.mustStore())
+        {
+            return new BodyColumns(size, ClickHouseRow.Body.NULL, null, null);
+        }
+
+        final Optional<BodyProvider> body = dir == REQUEST ? dataProvider.getRequestBody() : dataProvider.getResponseBody();
+        if (body.isEmpty())
+        {
+            return new BodyColumns(size, ClickHouseRow.Body.NULL, null, null);
+        }
+
+        if (separateBodies)
+        {
+            final MessageDigest digest = sha256();
+            final long length = hash(body.get(), dir, digest);
+            return new BodyColumns(size != null ? size : Long.valueOf(length), ClickHouseRow.Body.NULL, digest.digest(),
+                    new ClickHouseRow.Body(body.get(), length, false)
+            );
+        }
+
+        final long length = length(body.get(), dir);
+        return new BodyColumns(size != null ? size : Long.valueOf(length), new ClickHouseRow.Body(body.get(), length), null, null);
+    }
+
+    /**
+     * @return The length of the body as read, which is hashed on the way. This is a full read of the body, even when its
+     * length is known without one
+     */
+    private long hash(BodyProvider bodyProvider, ServerDirection dir, MessageDigest digest)
+    {
+        try (final InputStream inputStream = new DigestInputStream(bodyProvider.getInputStream(), digest))
+        {
+            return inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to read captured body file for {} direction: {}", dir, bodyProvider.file(), e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest sha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Required of every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The length of the body as read, counted by reading through it if it is decoded on the way
+     */
+    private long length(BodyProvider bodyProvider, ServerDirection dir)
+    {
+        if (bodyProvider.isReadAsStored())
+        {
+            return bodyProvider.size();
+        }
+
+        try (final InputStream inputStream = bodyProvider.getInputStream())
+        {
+            return inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to read captured body file for {} direction: {}", dir, bodyProvider.file(), e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param data   The body column of the log table
+     * @param hash   The hash of the body, with separate bodies
+     * @param stored The body column of the body table, with separate bodies
+     */
+    private record BodyColumns(Long size, ClickHouseRow.Body data, byte[] hash, ClickHouseRow.Body stored)
+    {
+    }
+}
@@ -60,7 +60,8 @@ public class ClickHouseStatsEndpoint
                 select sum(length(request_raw)) as request_raw_size, 
                 sum(length(response_raw)) as response_raw_size, 
                 sum(length(response_body)) as response_body_size, 
-                sum(length(request_body)) as request_body_size from log""";
+                sum(length(request_body)) as request_body_size,
+                (select sum(length(body)) from log_body) as separate_body_size from log""";
         return tpl.queryForMap(sql, Collections.emptyMap());
     }
 
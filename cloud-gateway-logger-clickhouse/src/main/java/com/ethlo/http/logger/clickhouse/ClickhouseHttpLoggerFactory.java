@@ -1,12 +1,20 @@
 package com.ethlo.http.logger.clickhouse;
 
+import java.net.URI;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Properties;
 import java.util.function.BiFunction;
 
 import javax.sql.DataSource;
 
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.Timeout;
 import org.flywaydb.core.Flyway;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.DataAccessResourceFailureException;
@@ -42,7 +50,42 @@ public class ClickhouseHttpLoggerFactory implements HttpLoggerFactory
 
         beanRegistration.apply("clickHouseStatsEndpoint", clickHouseStatsEndpoint(tpl));
 
-        return new ClickHouseLogger(new ClickHouseLoggerRepository(tpl));
+        final ClickHouseBatcher batcher = new ClickHouseBatcher(inserter(clickHouseProviderConfig),
+                clickHouseProviderConfig.getBatchSize(),
+                clickHouseProviderConfig.getMaxBatchBytes().toBytes(),
+                clickHouseProviderConfig.getMaxBatchDelay()
+        );
+        beanRegistration.apply("clickHouseBatcher", batcher);
+
+        final ClickHouseRowEncoder encoder = new ClickHouseRowEncoder(clickHouseProviderConfig.isSeparateBodies(),
+                clickHouseProviderConfig.getStoredBodyCacheSize()
+        );
+        return new ClickHouseLogger(encoder, batcher);
+    }
+
+    private ClickHouseInserter inserter(ClickHouseProviderConfig clickHouseProviderConfig)
+    {
+        final CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setDefaultConnectionConfig(ConnectionConfig.custom().setConnectTimeout(Timeout.ofSeconds(10)).build())
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom().setResponseTimeout(Timeout.ofSeconds(60)).build())
+                .build();
+        final String database = extractSchema(clickHouseProviderConfig.getUrl());
+        final URI insertUri = ClickHouseInserter.insertUri(clickHouseProviderConfig.getHttpUrl(), database, "log",
+                ClickHouseRowEncoder.COLUMNS,
+                clickHouseProviderConfig.getInsertSettings()
+        );
+        final URI bodyInsertUri = clickHouseProviderConfig.isSeparateBodies()
+                ? ClickHouseInserter.insertUri(clickHouseProviderConfig.getHttpUrl(), database, "log_body",
+                ClickHouseRowEncoder.BODY_COLUMNS,
+                clickHouseProviderConfig.getInsertSettings())
+                : null;
+        return new ClickHouseInserter(httpClient, insertUri, bodyInsertUri,
+                clickHouseProviderConfig.getUsername(),
+                clickHouseProviderConfig.getPassword(),
+                clickHouseProviderConfig.isCompress()
+        );
     }
 
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate(ClickHouseProviderConfig clickHouseProviderConfig)
@@ -68,6 +111,10 @@ public class ClickhouseHttpLoggerFactory implements HttpLoggerFactory
                 .defaultSchema(extractSchema(clickHouseProviderConfig.getUrl()))
                 .locations("db/migration")
                 .baselineOnMigrate(true)
+                .placeholders(Map.of(
+                        "body_ttl_days", ttlDays(clickHouseProviderConfig.getBodyTtl()),
+                        "row_ttl_days", ttlDays(clickHouseProviderConfig.getRowTtl())
+                ))
                 .dataSource(
                         clickHouseProviderConfig.getUrl(),
                         clickHouseProviderConfig.getUsername(),
@@ -76,6 +123,12 @@ public class ClickhouseHttpLoggerFactory implements HttpLoggerFactory
         flyway.migrate();
     }
 
+    private static String ttlDays(Duration ttl)
+    {
+        // The TTL migration is applied again whenever the days change
+        return Long.toString(Math.max(1, ttl.toDays()));
+    }
+
     private String extractSchema(String url)
     {
         try
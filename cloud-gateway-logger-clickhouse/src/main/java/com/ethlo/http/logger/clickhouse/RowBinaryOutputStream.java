@@ -0,0 +1,156 @@
+package com.ethlo.http.logger.clickhouse;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+
+/**
+ * Writes values in the ClickHouse <code>RowBinary</code> format: little-endian fixed size numbers, and strings
+ * prefixed by their length as an unsigned LEB128 varint. <code>LowCardinality</code> columns are written as their
+ * inner type, and <code>Nullable</code> columns have a leading byte, set to 1 for null.
+ */
+public class RowBinaryOutputStream extends FilterOutputStream
+{
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final byte[] scratch = new byte[8];
+
+    public RowBinaryOutputStream(OutputStream out)
+    {
+        super(out);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException
+    {
+        // The default writes byte by byte
+        out.write(b, off, len);
+    }
+
+    public void writeUInt8(int value) throws IOException
+    {
+        out.write(value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException
+    {
+        out.write(value ? 1 : 0);
+    }
+
+    public void writeInt16(int value) throws IOException
+    {
+        scratch[0] = (byte) value;
+        scratch[1] = (byte) (value >>> 8);
+        out.write(scratch, 0, 2);
+    }
+
+    public void writeInt64(long value) throws IOException
+    {
+        for (int i = 0; i < 8; i++)
+        {
+            scratch[i] = (byte) (value >>> (8 * i));
+        }
+        out.write(scratch, 0, 8);
+    }
+
+    public void writeVarInt(long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * A <code>DateTime64(3)</code>, which is the number of milliseconds since the epoch
+     */
+    public void writeDateTime64Millis(OffsetDateTime value) throws IOException
+    {
+        writeInt64(value.toInstant().toEpochMilli());
+    }
+
+    public void writeString(String value) throws IOException
+    {
+        writeString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeString(byte[] value) throws IOException
+    {
+        writeVarInt(value.length);
+        out.write(value);
+    }
+
+    public void writeNullableString(String value) throws IOException
+    {
+        if (writeNullMarker(value))
+        {
+            writeString(value);
+        }
+    }
+
+    public void writeNullableString(byte[] value) throws IOException
+    {
+        if (writeNullMarker(value))
+        {
+            writeString(value);
+        }
+    }
+
+    /**
+     * Write a string streamed from the input, which must hold exactly <code>length</code> bytes
+     */
+    public void writeString(InputStream in, long length) throws IOException
+    {
+        writeVarInt(length);
+        final byte[] buffer = new byte[(int) Math.min(length, COPY_BUFFER_SIZE)];
+        long remaining = length;
+        while (remaining > 0)
+        {
+            final int read = in.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+            if (read == -1)
+            {
+                throw new EOFException("Expected " + length + " bytes, got " + (length - remaining));
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+        if (in.read() != -1)
+        {
+            throw new IOException("Expected " + length + " bytes, got more");
+        }
+    }
+
+    /**
+     * A <code>Nullable(FixedString(N))</code>, where the value holds exactly N bytes
+     */
+    public void writeNullableFixedString(byte[] value) throws IOException
+    {
+        if (writeNullMarker(value))
+        {
+            out.write(value);
+        }
+    }
+
+    public void writeNullableInt64(Long value) throws IOException
+    {
+        if (writeNullMarker(value))
+        {
+            writeInt64(value);
+        }
+    }
+
+    /**
+     * @return Whether there is a value to write after the marker
+     */
+    private boolean writeNullMarker(Object value) throws IOException
+    {
+        out.write(value == null ? 1 : 0);
+        return value != null;
+    }
+}
@@ -0,0 +1,15 @@
+-- Re-applied whenever the TTLs are changed. Bodies expire first, then whole rows.
+ALTER TABLE log
+    MODIFY TTL toDateTime(timestamp) + INTERVAL ${row_ttl_days} DAY;
+ALTER TABLE log
+    MODIFY COLUMN request_body TTL toDateTime(timestamp) + INTERVAL ${body_ttl_days} DAY;
+ALTER TABLE log
+    MODIFY COLUMN response_body TTL toDateTime(timestamp) + INTERVAL ${body_ttl_days} DAY;
+ALTER TABLE log
+    MODIFY COLUMN request_raw TTL toDateTime(timestamp) + INTERVAL ${body_ttl_days} DAY;
+ALTER TABLE log
+    MODIFY COLUMN response_raw TTL toDateTime(timestamp) + INTERVAL ${body_ttl_days} DAY;
+ALTER TABLE log_unpartitioned
+    MODIFY TTL toDateTime(timestamp) + INTERVAL ${row_ttl_days} DAY;
+ALTER TABLE log_body
+    MODIFY TTL toDateTime(timestamp) + INTERVAL ${body_ttl_days} DAY;
@@ -0,0 +1,12 @@
+ALTER TABLE log
+    ADD COLUMN request_body_truncated UInt8 DEFAULT 0;
+ALTER TABLE log
+    ADD COLUMN response_body_truncated UInt8 DEFAULT 0;
+ALTER TABLE log
+    MODIFY COLUMN request_body_size Nullable(Int64);
+ALTER TABLE log
+    MODIFY COLUMN response_body_size Nullable(Int64);
+ALTER TABLE log
+    MODIFY COLUMN request_total_size Nullable(Int64);
+ALTER TABLE log
+    MODIFY COLUMN response_total_size Nullable(Int64);
@@ -0,0 +1,12 @@
+CREATE TABLE IF NOT EXISTS log_body
+(
+    hash      FixedString(32),
+    body      String codec (ZSTD(3)),
+    timestamp DateTime64(3)
+)
+    ENGINE = ReplacingMergeTree
+    ORDER BY hash;
+ALTER TABLE log
+    ADD COLUMN request_body_hash Nullable(FixedString(32));
+ALTER TABLE log
+    ADD COLUMN response_body_hash Nullable(FixedString(32));
@@ -0,0 +1,85 @@
+-- The sort key and partitioning of a table cannot be altered, so the rows are copied into a new table that replaces it
+DROP TABLE IF EXISTS log_partitioned;
+CREATE TABLE log_partitioned
+(
+    timestamp               DateTime64(3),
+    route_id                LowCardinality(String),
+    route_uri               LowCardinality(String),
+    gateway_request_id      String,
+    method                  LowCardinality(String),
+    path                    String,
+    response_time           Int64,
+    status                  Int16,
+    is_error                UInt8,
+    request_headers         Map(String, String) codec (ZSTD(1)),
+    request_content_type    LowCardinality(Nullable(String)),
+    host                    LowCardinality(Nullable(String)),
+    user_agent              LowCardinality(Nullable(String)),
+    response_headers        Map(String, String) codec (ZSTD(1)),
+    response_content_type   LowCardinality(Nullable(String)),
+    user_claim              Nullable(String),
+    realm_claim             LowCardinality(Nullable(String)),
+    request_body_size       Nullable(Int64),
+    request_total_size      Nullable(Int64),
+    response_body_size      Nullable(Int64),
+    response_total_size     Nullable(Int64),
+    request_body            Nullable(String) codec (ZSTD(3)),
+    response_body           Nullable(String) codec (ZSTD(3)),
+    request_raw             Nullable(String) codec (ZSTD(3)),
+    response_raw            Nullable(String) codec (ZSTD(3)),
+    exception_type          LowCardinality(Nullable(String)),
+    exception_message       Nullable(String) codec (ZSTD(3)),
+    request_body_truncated  UInt8 DEFAULT 0,
+    response_body_truncated UInt8 DEFAULT 0,
+    request_body_hash       Nullable(FixedString(32)),
+    response_body_hash      Nullable(FixedString(32)),
+    INDEX idx_gateway_request_id gateway_request_id TYPE bloom_filter(0.01) GRANULARITY 1,
+    INDEX idx_user_claim user_claim TYPE bloom_filter(0.01) GRANULARITY 1
+)
+    ENGINE = MergeTree
+    PARTITION BY toDate(timestamp)
+    ORDER BY (route_id, status, timestamp)
+        SETTINGS index_granularity = 8192;
+-- Where the copy ends, so the rows logged by other instances meanwhile can be told apart afterwards
+DROP TABLE IF EXISTS log_copied_until;
+CREATE TABLE log_copied_until ENGINE = Memory AS
+SELECT max(timestamp) AS timestamp
+FROM log;
+INSERT INTO log_partitioned (timestamp, route_id, route_uri, gateway_request_id, method, path, response_time, status,
+                             is_error, request_headers, request_content_type, host, user_agent, response_headers,
+                             response_content_type, user_claim, realm_claim, request_body_size, request_total_size,
+                             response_body_size, response_total_size, request_body, response_body, request_raw,
+                             response_raw, exception_type, exception_message, request_body_truncated,
+                             response_body_truncated, request_body_hash, response_body_hash)
+SELECT timestamp, route_id, route_uri, gateway_request_id, method, path, response_time, status,
+       is_error, request_headers, request_content_type, host, user_agent, response_headers,
+       response_content_type, user_claim, realm_claim, request_body_size, request_total_size,
+       response_body_size, response_total_size, request_body, response_body, request_raw,
+       response_raw, exception_type, exception_message, request_body_truncated,
+       response_body_truncated, request_body_hash, response_body_hash
+FROM log
+SETTINGS max_partitions_per_insert_block = 0;
+EXCHANGE TABLES log AND log_partitioned;
+-- Rows logged by other instances since the copy started only reached the previous table, so copy them over. Only rows
+-- from an hour before the end of the copy are compared, allowing for rows logged late, so memory use stays bounded.
+INSERT INTO log (timestamp, route_id, route_uri, gateway_request_id, method, path, response_time, status,
+                 is_error, request_headers, request_content_type, host, user_agent, response_headers,
+                 response_content_type, user_claim, realm_claim, request_body_size, request_total_size,
+                 response_body_size, response_total_size, request_body, response_body, request_raw,
+                 response_raw, exception_type, exception_message, request_body_truncated,
+                 response_body_truncated, request_body_hash, response_body_hash)
+SELECT timestamp, route_id, route_uri, gateway_request_id, method, path, response_time, status,
+       is_error, request_headers, request_content_type, host, user_agent, response_headers,
+       response_content_type, user_claim, realm_claim, request_body_size, request_total_size,
+       response_body_size, response_total_size, request_body, response_body, request_raw,
+       response_raw, exception_type, exception_message, request_body_truncated,
+       response_body_truncated, request_body_hash, response_body_hash
+FROM log_partitioned
+WHERE timestamp >= (SELECT timestamp - INTERVAL 1 HOUR FROM log_copied_until)
+  AND gateway_request_id NOT IN (SELECT gateway_request_id
+                                 FROM log
+                                 WHERE timestamp >= (SELECT timestamp - INTERVAL 1 HOUR FROM log_copied_until))
+SETTINGS max_partitions_per_insert_block = 0;
+DROP TABLE log_copied_until;
+-- The previous table is kept until its rows expire, see R__log_ttl.sql
+RENAME TABLE log_partitioned TO log_unpartitioned;
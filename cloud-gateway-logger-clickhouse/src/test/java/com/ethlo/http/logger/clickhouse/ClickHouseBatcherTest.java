@@ -0,0 +1,259 @@
+package com.ethlo.http.logger.clickhouse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+import com.ethlo.http.model.BodyProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ClickHouseBatcherTest
+{
+    @Test
+    void rowsArrivingDuringAnInsertAreInsertedTogether() throws Exception
+    {
+        final CountDownLatch firstInsertStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingInserter inserter = new RecordingInserter(rows ->
+        {
+            firstInsertStarted.countDown();
+            await(release);
+        });
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        try (ClickHouseBatcher batcher = new ClickHouseBatcher(inserter, 100, Long.MAX_VALUE, Duration.ZERO);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            batcher.bindTo(registry);
+            final List<Future<?>> inserts = new ArrayList<>();
+            inserts.add(executor.submit(() -> batcher.insert(row("req-0"))));
+            assertThat(firstInsertStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            for (int i = 1; i <= 5; i++)
+            {
+                final String requestId = "req-" + i;
+                inserts.add(executor.submit(() -> batcher.insert(row(requestId))));
+            }
+            while (batcher.getQueuedBytes() < 5 * 100)
+            {
+                Thread.onSpinWait();
+            }
+
+            release.countDown();
+            for (Future<?> insert : inserts)
+            {
+                insert.get(5, TimeUnit.SECONDS);
+            }
+        }
+
+        assertThat(inserter.batchSizes).containsExactly(1, 5);
+        assertThat(registry.get("http.logger.clickhouse.flush").tag("outcome", "success").timer().count()).isEqualTo(2);
+        assertThat(registry.get("http.logger.clickhouse.flush.rows").summary().totalAmount()).isEqualTo(6);
+    }
+
+    @Test
+    void failedInsertFailsItsCallers()
+    {
+        final RecordingInserter inserter = new RecordingInserter(rows ->
+        {
+            throw new DataAccessResourceFailureException("Connection refused");
+        });
+
+        try (ClickHouseBatcher batcher = new ClickHouseBatcher(inserter, 100, Long.MAX_VALUE, Duration.ZERO))
+        {
+            assertThatThrownBy(() -> batcher.insert(row("req-0"))).isInstanceOf(DataAccessResourceFailureException.class);
+            assertThatThrownBy(() -> batcher.insert(List.of(row("req-1")))).isInstanceOf(DataAccessResourceFailureException.class);
+        }
+    }
+
+    @Test
+    void batchesAreInsertedOnTheCallingThread()
+    {
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        final RecordingInserter inserter = new RecordingInserter(rows -> threads.add(Thread.currentThread()));
+
+        try (ClickHouseBatcher batcher = new ClickHouseBatcher(inserter, 2, Long.MAX_VALUE, Duration.ZERO))
+        {
+            batcher.insert(List.of(row("req-0"), row("req-1"), row("req-2")));
+        }
+
+        assertThat(inserter.batchSizes).containsExactly(3);
+        assertThat(threads).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    void rejectedBatchIsSplitDownToTheRejectedRow()
+    {
+        final ClickHouseRow rejected = row("req-2");
+        final RecordingInserter inserter = new RecordingInserter(rows ->
+        {
+            if (rows.contains(rejected))
+            {
+                throw new InvalidDataAccessResourceUsageException("Cannot parse input");
+            }
+        });
+
+        try (ClickHouseBatcher batcher = new ClickHouseBatcher(inserter, 100, Long.MAX_VALUE, Duration.ZERO))
+        {
+            final Map<ClickHouseRow, RuntimeException> failures = batcher.insert(List.of(row("req-0"), row("req-1"), rejected, row("req-3")));
+            assertThat(failures).containsOnlyKeys(rejected);
+        }
+
+        assertThat(inserter.batchSizes).containsExactly(4, 2, 2, 1, 1);
+    }
+
+    @Test
+    void failingServerIsNotSentTheBatchSplitUp()
+    {
+        final RecordingInserter inserter = new RecordingInserter(rows ->
+        {
+            throw new DataAccessResourceFailureException("ClickHouse insert failed with status 503");
+        });
+
+        try (ClickHouseBatcher batcher = new ClickHouseBatcher(inserter, 100, Long.MAX_VALUE, Duration.ZERO))
+        {
+            assertThatThrownBy(() -> batcher.insert(List.of(row("req-0"), row("req-1"), row("req-2"), row("req-3"))))
+                    .isInstanceOf(DataAccessResourceFailureException.class);
+        }
+
+        assertThat(inserter.batchSizes).containsExactly(4);
+    }
+
+    @Test
+    void rowWithAnUnreadableBodyIsLeftOut() throws Exception
+    {
+        // Measured longer than it reads
+        final ClickHouseRow unreadable = new ClickHouseRow(new byte[0], List.of(new ClickHouseRow.Body(new BodyProvider(new byte[5], null), 10)), new byte[0]);
+        final RecordingInserter inserter = new RecordingInserter(rows ->
+        {
+            try (RowBinaryOutputStream out = new RowBinaryOutputStream(OutputStream.nullOutputStream()))
+            {
+                for (ClickHouseRow row : rows)
+                {
+                    row.writeTo(out);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new DataAccessResourceFailureException("Unable to insert", e);
+            }
+        });
+
+        try (ClickHouseBatcher batcher = new ClickHouseBatcher(inserter, 100, Long.MAX_VALUE, Duration.ZERO);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            final Map<ClickHouseRow, RuntimeException> failures = batcher.insert(List.of(row("req-0"), unreadable, row("req-2")));
+            assertThat(failures).containsOnlyKeys(unreadable);
+            assertThat(failures.get(unreadable)).hasRootCauseInstanceOf(ClickHouseRow.UnreadableBodyException.class);
+
+            // Also for rows inserted one at a time
+            final Future<?> failing = executor.submit(() -> batcher.insert(unreadable));
+            final Future<?> succeeding = executor.submit(() -> batcher.insert(row("req-3")));
+            assertThatThrownBy(() -> failing.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(DataAccessResourceFailureException.class);
+            succeeding.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(inserter.batchSizes).startsWith(3, 2);
+    }
+
+    @Test
+    void insertsRacingCloseAreWrittenOrRejected() throws Exception
+    {
+        final RecordingInserter inserter = new RecordingInserter(rows ->
+        {
+        });
+        final ClickHouseBatcher batcher = new ClickHouseBatcher(inserter, 10, Long.MAX_VALUE, Duration.ZERO);
+        final List<Future<?>> inserts = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4))
+        {
+            for (int t = 0; t < 4; t++)
+            {
+                inserts.add(executor.submit(() ->
+                {
+                    try
+                    {
+                        while (true)
+                        {
+                            batcher.insert(row("req"));
+                        }
+                    }
+                    catch (IllegalStateException closed)
+                    {
+                        return;
+                    }
+                }));
+            }
+            Thread.sleep(50);
+            batcher.close();
+
+            // None is left waiting for a flush that never comes
+            for (Future<?> insert : inserts)
+            {
+                insert.get(5, TimeUnit.SECONDS);
+            }
+        }
+        assertThat(batcher.getQueuedBytes()).isZero();
+    }
+
+    private static ClickHouseRow row(String requestId)
+    {
+        final byte[] row = new byte[100];
+        System.arraycopy(requestId.getBytes(), 0, row, 0, requestId.length());
+        return ClickHouseRow.encoded(row);
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RecordingInserter extends ClickHouseInserter
+    {
+        private final Consumer<List<ClickHouseRow>> action;
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        private RecordingInserter(Consumer<List<ClickHouseRow>> action)
+        {
+            super(null, URI.create("http://localhost:8123/"), null, null, null, false);
+            this.action = action;
+        }
+
+        @Override
+        public void insert(final List<ClickHouseRow> rows)
+        {
+            batchSizes.add(rows.size());
+            action.accept(rows);
+        }
+
+        @Override
+        public void close()
+        {
+
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.ethlo.http.logger.clickhouse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.jpountz.lz4.LZ4FrameInputStream;
+
+class ClickHouseInserterTest
+{
+    private final List<HttpExchange> requests = new CopyOnWriteArrayList<>();
+    private final List<byte[]> requestBodies = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private int status = 200;
+    private String responseBody = "";
+    private String exceptionCode;
+
+    @BeforeEach
+    void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange ->
+        {
+            try (InputStream in = exchange.getRequestBody())
+            {
+                requestBodies.add(in.readAllBytes());
+            }
+            requests.add(exchange);
+            if (exceptionCode != null)
+            {
+                exchange.getResponseHeaders().add("X-ClickHouse-Exception-Code", exceptionCode);
+            }
+            final byte[] response = responseBody.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    void rowsAreInsertedAsCompressedRowBinary() throws IOException
+    {
+        try (ClickHouseInserter inserter = inserter(true))
+        {
+            inserter.insert(List.of(row("first"), row("second")));
+        }
+
+        final HttpExchange exchange = requests.getFirst();
+        assertThat(exchange.getRequestMethod()).isEqualTo("POST");
+        assertThat(exchange.getRequestURI().getQuery())
+                .contains("query=INSERT INTO log (timestamp, route_id) FORMAT RowBinary")
+                .contains("database=http_log")
+                .contains("async_insert=1");
+        assertThat(exchange.getRequestHeaders().getFirst("Content-Encoding")).isEqualTo("lz4");
+        assertThat(exchange.getRequestHeaders().getFirst("X-ClickHouse-User")).isEqualTo("default");
+        assertThat(exchange.getRequestHeaders().getFirst("X-ClickHouse-Key")).isEqualTo("secret");
+        assertThat(decompress(requestBodies.getFirst())).isEqualTo(bytes("firstsecond"));
+    }
+
+    @Test
+    void uncompressedRowsAreSentAsIs() throws IOException
+    {
+        try (ClickHouseInserter inserter = inserter(false))
+        {
+            inserter.insert(List.of(row("first"), row("second")));
+        }
+
+        assertThat(requests.getFirst().getRequestHeaders().getFirst("Content-Encoding")).isNull();
+        assertThat(requestBodies.getFirst()).isEqualTo(bytes("firstsecond"));
+    }
+
+    @Test
+    void bodyRowsAreInsertedBeforeTheRowsReferringToThem() throws IOException
+    {
+        final AtomicInteger bodiesInserted = new AtomicInteger();
+        final ClickHouseRow body = new ClickHouseRow(bytes("body"), List.of(), new byte[0], List.of(), bodiesInserted::incrementAndGet);
+        final ClickHouseRow row = new ClickHouseRow(bytes("row"), List.of(), new byte[0], List.of(body), () -> {});
+
+        try (ClickHouseInserter inserter = inserter(false))
+        {
+            inserter.insert(List.of(row, row("plain")));
+        }
+
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(0).getRequestURI().getQuery()).contains("INSERT INTO log_body (hash, body)");
+        assertThat(requestBodies.get(0)).isEqualTo(bytes("body"));
+        assertThat(requests.get(1).getRequestURI().getQuery()).contains("INSERT INTO log (timestamp, route_id)");
+        assertThat(requestBodies.get(1)).isEqualTo(bytes("rowplain"));
+        assertThat(bodiesInserted).hasValue(1);
+    }
+
+    @Test
+    void errorResponseFailsTheInsert() throws IOException
+    {
+        status = 404;
+        exceptionCode = "60";
+        responseBody = "Code: 60. DB::Exception: Unknown table expression identifier 'log'. (UNKNOWN_TABLE)\n";
+
+        try (ClickHouseInserter inserter = inserter(true))
+        {
+            assertThatThrownBy(() -> inserter.insert(List.of(row("row"))))
+                    .isInstanceOf(DataAccessResourceFailureException.class)
+                    .hasMessageContaining("status 404")
+                    .hasMessageContaining("UNKNOWN_TABLE");
+        }
+    }
+
+    @Test
+    void rejectedDataIsToldApartFromServerFailures() throws IOException
+    {
+        status = 500;
+        exceptionCode = "27";
+        responseBody = "Code: 27. DB::Exception: Cannot parse input: expected '\\t' before: 'x'. (CANNOT_PARSE_INPUT_ASSERTION_FAILED)\n";
+        try (ClickHouseInserter inserter = inserter(false))
+        {
+            assertThatThrownBy(() -> inserter.insert(List.of(row("row")))).isInstanceOf(InvalidDataAccessResourceUsageException.class);
+        }
+
+        status = 503;
+        exceptionCode = "241";
+        responseBody = "Code: 241. DB::Exception: Memory limit (total) exceeded. (MEMORY_LIMIT_EXCEEDED)\n";
+        try (ClickHouseInserter inserter = inserter(false))
+        {
+            assertThatThrownBy(() -> inserter.insert(List.of(row("row")))).isInstanceOf(DataAccessResourceFailureException.class);
+        }
+
+        assertThat(ClickHouseInserter.rejectsData(400, null)).isTrue();
+        assertThat(ClickHouseInserter.rejectsData(401, "516")).isFalse();
+        assertThat(ClickHouseInserter.rejectsData(500, null)).isFalse();
+    }
+
+    private ClickHouseInserter inserter(boolean compress)
+    {
+        final URI baseUri = URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+        final URI insertUri = ClickHouseInserter.insertUri(baseUri, "http_log", "log", List.of("timestamp", "route_id"), Map.of("async_insert", "1"));
+        final URI bodyInsertUri = ClickHouseInserter.insertUri(baseUri, "http_log", "log_body", List.of("hash", "body"), Map.of());
+        return new ClickHouseInserter(HttpClients.createDefault(), insertUri, bodyInsertUri, "default", "secret", compress);
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException
+    {
+        try (InputStream in = new LZ4FrameInputStream(new ByteArrayInputStream(data)))
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static ClickHouseRow row(String value)
+    {
+        return ClickHouseRow.encoded(bytes(value));
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,233 @@
+package com.ethlo.http.logger.clickhouse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jdbc.autoconfigure.DataJdbcRepositoriesAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.clickhouse.ClickHouseContainer;
+import org.testcontainers.lifecycle.Startables;
+import org.testcontainers.utility.DockerImageName;
+
+import com.ethlo.http.Route;
+import com.ethlo.http.capture.CaptureSession;
+import com.ethlo.http.capture.HeadersOnlyCaptureSession;
+import com.ethlo.http.match.HeaderPredicate;
+import com.ethlo.http.match.LogOptions;
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.processors.auth.RealmUser;
+
+@SpringBootTest
+class ClickHouseLoggerTest
+{
+    private static final String REQUEST_BODY = "{\"username\": \"john.doe\", \"email\": \"john@example.com\"}";
+    private static final String RESPONSE_BODY = "{\"id\": 99, \"status\": \"created\"}";
+    private static final ClickHouseContainer CLICKHOUSE;
+
+    static
+    {
+        CLICKHOUSE = new ClickHouseContainer(DockerImageName.parse("clickhouse/clickhouse-server:25.11"))
+                .withDatabaseName("http_log")
+                .withUsername("default")
+                .withPassword("clickhouse_pass");
+
+        Startables.deepStart(Stream.of(CLICKHOUSE)).join();
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    // 3. Wire container credentials into Spring's standard DataSource
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry)
+    {
+        registry.add("spring.datasource.url", CLICKHOUSE::getJdbcUrl);
+        registry.add("spring.datasource.username", CLICKHOUSE::getUsername);
+        registry.add("spring.datasource.password", CLICKHOUSE::getPassword);
+        registry.add("spring.flyway.placeholders.body_ttl_days", () -> ClickHouseProviderConfig.DEFAULT_BODY_TTL.toDays());
+        registry.add("spring.flyway.placeholders.row_ttl_days", () -> ClickHouseProviderConfig.DEFAULT_ROW_TTL.toDays());
+    }
+
+    @Test
+    void testRequestResponseHeaderLogging()
+    {
+        final NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+
+        final ClickHouseInserter inserter = new ClickHouseInserter(HttpClients.createDefault(),
+                ClickHouseInserter.insertUri(baseUri(), "http_log", "log", ClickHouseRowEncoder.COLUMNS, Map.of()), null,
+                CLICKHOUSE.getUsername(), CLICKHOUSE.getPassword(), true
+        );
+
+        inserter.insert(List.of(new ClickHouseRowEncoder().encode(exchange("req-12345-abcde"))));
+
+        // Fetch the row using the unique gateway request ID
+        final List<Map<String, Object>> results = namedParameterJdbcTemplate.getJdbcTemplate().queryForList(
+                "SELECT * FROM log WHERE gateway_request_id = ?", "req-12345-abcde");
+
+        assertThat(results).hasSize(1);
+        Map<String, Object> row = results.getFirst();
+
+        // 1. Assert Core Info
+        assertThat(row).containsEntry("method", "POST")
+                .containsEntry("path", "/api/v1/users")
+                .containsKey("timestamp");
+
+        // 2. Assert Numbers (ClickHouse Unsigned types return as generic Numbers, so we extract longValue)
+        assertThat(((Number) row.get("response_time")).longValue()).isEqualTo(145L);
+        assertThat(((Number) row.get("request_body_size")).longValue()).isEqualTo(2048L);
+        assertThat(((Number) row.get("status")).intValue()).isEqualTo(201);
+
+        // 3. Assert Booleans (ClickHouse Bool/UInt8)
+        assertThat(row).containsEntry("is_error", (short) 0);
+        assertThat(row).containsEntry("request_body_truncated", (short) 0)
+                .containsEntry("response_body_truncated", (short) 1);
+
+        // 4. Assert Complex Maps (ClickHouse Map(String, String) restores to java.util.Map)
+        @SuppressWarnings("unchecked")
+        Map<String, String> requestHeaders = (Map<String, String>) row.get("request_headers");
+        assertThat(requestHeaders)
+                .containsEntry("Host", "api.example.com")
+                .containsEntry("X-Forwarded-For", "192.168.1.1, 94.22.33.193")
+                .containsEntry("Authorization", "Bearer eyJhb...");
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> responseHeaders = (Map<String, String>) row.get("response_headers");
+        assertThat(responseHeaders)
+                .containsEntry("X-RateLimit-Remaining", "99");
+
+        // 5. Assert Payloads (Verifying byte[] JSON didn't turn into ASCII arrays)
+        assertThat(row).containsEntry("request_body", REQUEST_BODY)
+                .containsEntry("response_body", RESPONSE_BODY);
+    }
+
+    @Test
+    void separateBodiesAreStoredOncePerContent()
+    {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        final ClickHouseInserter inserter = new ClickHouseInserter(HttpClients.createDefault(),
+                ClickHouseInserter.insertUri(baseUri(), "http_log", "log", ClickHouseRowEncoder.COLUMNS, Map.of()),
+                ClickHouseInserter.insertUri(baseUri(), "http_log", "log_body", ClickHouseRowEncoder.BODY_COLUMNS, Map.of()),
+                CLICKHOUSE.getUsername(), CLICKHOUSE.getPassword(), true
+        );
+        final ClickHouseRowEncoder encoder = new ClickHouseRowEncoder(true, 100);
+
+        inserter.insert(List.of(encoder.encode(exchange("req-separate-1"))));
+        inserter.insert(List.of(encoder.encode(exchange("req-separate-2"))));
+
+        final List<Map<String, Object>> results = jdbcTemplate.queryForList("""
+                SELECT l.request_body AS inline_body, b.body AS response_body
+                FROM log l JOIN log_body b ON b.hash = l.response_body_hash
+                WHERE l.gateway_request_id LIKE 'req-separate-%'""");
+        assertThat(results).hasSize(2);
+        assertThat(results).allSatisfy(row -> assertThat(row).containsEntry("inline_body", null).containsEntry("response_body", RESPONSE_BODY));
+
+        // Each distinct body sent once, with the same hash as ClickHouse computes
+        assertThat(jdbcTemplate.queryForObject("SELECT count() FROM log_body", Long.class)).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count() FROM log_body WHERE hash = SHA256(body)", Long.class)).isEqualTo(2);
+    }
+
+    @Test
+    void logTableIsPartitionedByDayWithRowAndBodyTtls()
+    {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        final Map<String, Object> table = jdbcTemplate.queryForMap(
+                "SELECT partition_key, sorting_key, create_table_query FROM system.tables WHERE database = currentDatabase() AND name = 'log'");
+        assertThat(table).containsEntry("partition_key", "toDate(timestamp)")
+                .containsEntry("sorting_key", "route_id, status, timestamp");
+        assertThat((String) table.get("create_table_query"))
+                .contains("gateway_request_id String")
+                .contains("toIntervalDay(30)")
+                .contains("toIntervalDay(365)");
+
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT name FROM system.data_skipping_indices WHERE database = currentDatabase() AND table = 'log'", String.class))
+                .containsExactlyInAnyOrder("idx_gateway_request_id", "idx_user_claim");
+
+        // The table replaced on upgrade expires with the same row TTL
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT create_table_query FROM system.tables WHERE database = currentDatabase() AND name = 'log_unpartitioned'", String.class))
+                .contains("toIntervalDay(365)");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count() FROM system.tables WHERE database = currentDatabase() AND name = 'log_copied_until'", Long.class))
+                .isZero();
+    }
+
+    private URI baseUri()
+    {
+        return URI.create("http://" + CLICKHOUSE.getHost() + ":" + CLICKHOUSE.getMappedPort(8123) + "/");
+    }
+
+    private WebExchangeDataProvider exchange(String requestId)
+    {
+        // 1. Headers
+        final HttpHeaders requestHttpHeaders = new HttpHeaders();
+        requestHttpHeaders.add(HttpHeaders.HOST, "api.example.com");
+        requestHttpHeaders.add(HttpHeaders.CONTENT_TYPE, "application/json");
+        requestHttpHeaders.add(HttpHeaders.USER_AGENT, "Mozilla/5.0 (IntegrationTest/1.0)");
+        requestHttpHeaders.add("X-Forwarded-For", "192.168.1.1, 94.22.33.193");
+        requestHttpHeaders.add(HttpHeaders.AUTHORIZATION, "Bearer eyJhb...");
+        final HttpHeaders responseHttpHeaders = new HttpHeaders();
+        responseHttpHeaders.add(HttpHeaders.CONTENT_TYPE, "application/json");
+        responseHttpHeaders.add("X-RateLimit-Remaining", "99");
+
+        // 2. Payloads
+        final Map<ServerDirection, byte[]> bodies = Map.of(
+                ServerDirection.REQUEST, REQUEST_BODY.getBytes(StandardCharsets.UTF_8),
+                ServerDirection.RESPONSE, RESPONSE_BODY.getBytes(StandardCharsets.UTF_8)
+        );
+        final CaptureSession session = new HeadersOnlyCaptureSession(requestHttpHeaders, responseHttpHeaders, false, true)
+        {
+            @Override
+            public Optional<BodyProvider> getBody(final ServerDirection direction)
+            {
+                return Optional.of(new BodyProvider(bodies.get(direction), null));
+            }
+        };
+
+        // 3. Core request info, with the request body size known up front, and the response body truncated
+        final LogOptions store = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.STORE);
+        return new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, store, store))
+                .requestId(requestId)
+                .route(new Route("my-upstream-service", URI.create("http://backend-service:8080")))
+                .method(HttpMethod.POST)
+                .path("/api/v1/users")
+                .statusCode(HttpStatus.CREATED)
+                .timestamp(OffsetDateTime.now())
+                .duration(Duration.ofMillis(145))
+                .user(new RealmUser("internal-staff", "john.doe"))
+                .bodySizes(2048L, null);
+    }
+
+    @EnableAutoConfiguration(exclude = DataJdbcRepositoriesAutoConfiguration.class)
+    @SpringBootConfiguration
+    public static class TestCfg
+    {
+
+    }
+}
\ No newline at end of file
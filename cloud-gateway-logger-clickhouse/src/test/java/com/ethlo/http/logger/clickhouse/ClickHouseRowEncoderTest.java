@@ -0,0 +1,268 @@
+package com.ethlo.http.logger.clickhouse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+
+import com.ethlo.http.Route;
+import com.ethlo.http.capture.HeadersOnlyCaptureSession;
+import com.ethlo.http.match.HeaderPredicate;
+import com.ethlo.http.match.LogOptions;
+import com.ethlo.http.model.BodyProvider;
+import com.ethlo.http.model.WebExchangeDataProvider;
+import com.ethlo.http.netty.PredicateConfig;
+import com.ethlo.http.netty.ServerDirection;
+import com.ethlo.http.processors.auth.RealmUser;
+
+class ClickHouseRowEncoderTest
+{
+    @Test
+    void rowHasAllColumnsInOrder()
+    {
+        final HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.add(HttpHeaders.HOST, "api.example.com");
+        requestHeaders.add(HttpHeaders.CONTENT_TYPE, "application/json");
+        requestHeaders.add("X-Forwarded-For", "192.168.1.1");
+        requestHeaders.add("X-Forwarded-For", "94.22.33.193");
+        final HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.add("X-RateLimit-Remaining", "99");
+
+        final byte[] requestBody = "{\"username\": \"john.doe\"}".getBytes(StandardCharsets.UTF_8);
+        final HeadersOnlyCaptureSession session = new HeadersOnlyCaptureSession(requestHeaders, responseHeaders, false, false)
+        {
+            @Override
+            public Optional<BodyProvider> getBody(final ServerDirection direction)
+            {
+                return direction == ServerDirection.REQUEST ? Optional.of(new BodyProvider(requestBody, null)) : Optional.empty();
+            }
+        };
+        final LogOptions store = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.STORE);
+        final LogOptions size = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.SIZE);
+        final WebExchangeDataProvider exchange = new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, store, size))
+                .requestId("req-12345")
+                .route(new Route("upstream", URI.create("http://backend:8080")))
+                .method(HttpMethod.POST)
+                .path("/api/v1/users")
+                .statusCode(HttpStatus.CREATED)
+                .timestamp(OffsetDateTime.parse("2024-01-02T03:04:05.678Z"))
+                .duration(Duration.ofMillis(145))
+                .user(new RealmUser("internal", "john.doe"))
+                .bodySizes(null, 512L);
+
+        final ByteBuffer row = written(new ClickHouseRowEncoder().encode(exchange));
+
+        assertThat(row.getLong()).isEqualTo(OffsetDateTime.parse("2024-01-02T03:04:05.678Z").toInstant().toEpochMilli());
+        assertThat(string(row)).isEqualTo("upstream");
+        assertThat(string(row)).isEqualTo("http://backend:8080");
+        assertThat(string(row)).isEqualTo("req-12345");
+        assertThat(string(row)).isEqualTo("POST");
+        assertThat(string(row)).isEqualTo("/api/v1/users");
+        assertThat(row.getLong()).isEqualTo(145);
+        assertThat(row.getShort()).isEqualTo((short) 201);
+        assertThat(row.get()).isEqualTo((byte) 0);
+        assertThat(map(row)).containsEntry("X-Forwarded-For", "192.168.1.1, 94.22.33.193").containsEntry("Host", "api.example.com");
+        assertThat(map(row)).containsExactlyEntriesOf(Map.of("X-RateLimit-Remaining", "99"));
+        assertThat(nullableString(row)).isEqualTo("application/json");
+        assertThat(nullableString(row)).isNull();
+        assertThat(nullableString(row)).isEqualTo("api.example.com");
+        assertThat(nullableString(row)).isNull();
+        assertThat(nullableString(row)).isEqualTo("john.doe");
+        assertThat(nullableString(row)).isEqualTo("internal");
+        assertThat(nullableLong(row)).isEqualTo(requestBody.length);
+        assertThat(nullableLong(row)).isEqualTo(requestBody.length);
+        assertThat(nullableLong(row)).isEqualTo(512);
+        assertThat(nullableLong(row)).isEqualTo(512);
+        assertThat(nullableString(row)).isEqualTo("{\"username\": \"john.doe\"}");
+        assertThat(nullableString(row)).isNull();
+        assertThat(nullableString(row)).isNull();
+        assertThat(nullableString(row)).isNull();
+        assertThat(nullableString(row)).isNull();
+        assertThat(nullableString(row)).isNull();
+        assertThat(row.get()).isEqualTo((byte) 0);
+        assertThat(row.get()).isEqualTo((byte) 0);
+        assertThat(row.get()).isEqualTo((byte) 1);
+        assertThat(row.get()).isEqualTo((byte) 1);
+        assertThat(row.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void decodedBodyIsStreamedWithItsDecodedLength() throws IOException
+    {
+        final String json = "{\"message\": \"" + "x".repeat(100_000) + "\"}";
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped))
+        {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        final HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+        final HeadersOnlyCaptureSession session = new HeadersOnlyCaptureSession(new HttpHeaders(), responseHeaders, false, false)
+        {
+            @Override
+            public Optional<BodyProvider> getBody(final ServerDirection direction)
+            {
+                return direction == ServerDirection.RESPONSE ? Optional.of(new BodyProvider(gzipped.toByteArray(), "gzip")) : Optional.empty();
+            }
+        };
+        final LogOptions store = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.STORE);
+        final WebExchangeDataProvider exchange = new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, store, store))
+                .requestId("req-1")
+                .route(new Route("upstream", URI.create("http://backend:8080")))
+                .method(HttpMethod.GET)
+                .path("/messages")
+                .statusCode(HttpStatus.OK)
+                .timestamp(OffsetDateTime.now())
+                .duration(Duration.ofMillis(10));
+
+        final ClickHouseRow encoded = new ClickHouseRowEncoder().encode(exchange);
+        final ByteBuffer row = written(encoded);
+        assertThat(encoded.size()).isEqualTo(row.remaining());
+
+        row.position(row.position() + 8);
+        for (int i = 0; i < 5; i++)
+        {
+            string(row);
+        }
+        row.position(row.position() + 8 + 2 + 1);
+        map(row);
+        map(row);
+        for (int i = 0; i < 6; i++)
+        {
+            nullableString(row);
+        }
+        assertThat(nullableLong(row)).isNull();
+        assertThat(nullableLong(row)).isNull();
+        assertThat(nullableLong(row)).isEqualTo(json.length());
+        assertThat(nullableLong(row)).isEqualTo(json.length());
+        assertThat(nullableString(row)).isNull();
+        assertThat(nullableString(row)).isEqualTo(json);
+    }
+
+    @Test
+    void separateBodiesAreSentUntilStored() throws Exception
+    {
+        final byte[] body = "{\"status\": \"UP\"}".getBytes(StandardCharsets.UTF_8);
+        final HeadersOnlyCaptureSession session = new HeadersOnlyCaptureSession(new HttpHeaders(), new HttpHeaders(), false, false)
+        {
+            @Override
+            public Optional<BodyProvider> getBody(final ServerDirection direction)
+            {
+                return Optional.of(new BodyProvider(body, null));
+            }
+        };
+        final LogOptions store = new LogOptions(HeaderPredicate.ALL, LogOptions.ContentProcessing.NONE, LogOptions.ContentProcessing.STORE);
+        final OffsetDateTime timestamp = OffsetDateTime.parse("2024-01-02T03:04:05.678Z");
+        final WebExchangeDataProvider exchange = new WebExchangeDataProvider(session, new PredicateConfig("all", request -> true, store, store))
+                .requestId("req-1")
+                .route(new Route("upstream", URI.create("http://backend:8080")))
+                .method(HttpMethod.POST)
+                .path("/health")
+                .statusCode(HttpStatus.OK)
+                .timestamp(timestamp)
+                .duration(Duration.ofMillis(1));
+        final byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+        final ClickHouseRowEncoder encoder = new ClickHouseRowEncoder(true, 100);
+
+        // The same content in both directions is sent once
+        final ClickHouseRow first = encoder.encode(exchange);
+        assertThat(first.getBodyRows()).hasSize(1);
+        final ByteBuffer bodyRow = written(first.getBodyRows().getFirst());
+        final byte[] storedHash = new byte[32];
+        bodyRow.get(storedHash);
+        assertThat(storedHash).isEqualTo(hash);
+        assertThat(string(bodyRow)).isEqualTo("{\"status\": \"UP\"}");
+        assertThat(bodyRow.getLong()).isEqualTo(timestamp.toInstant().toEpochMilli());
+        assertThat(bodyRow.hasRemaining()).isFalse();
+
+        // The hashes are the last columns of the log row
+        final ByteBuffer row = written(first);
+        row.position(row.limit() - 2 * 33);
+        for (int i = 0; i < 2; i++)
+        {
+            assertThat(row.get()).isEqualTo((byte) 0);
+            final byte[] loggedHash = new byte[32];
+            row.get(loggedHash);
+            assertThat(loggedHash).isEqualTo(hash);
+        }
+
+        // Sent again until an insert went through
+        assertThat(encoder.encode(exchange).getBodyRows()).hasSize(1);
+        first.getBodyRows().getFirst().inserted();
+        assertThat(encoder.encode(exchange).getBodyRows()).isEmpty();
+    }
+
+    private static ByteBuffer written(ClickHouseRow row)
+    {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (RowBinaryOutputStream out = new RowBinaryOutputStream(buffer))
+        {
+            row.writeTo(out);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return ByteBuffer.wrap(buffer.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long varInt(ByteBuffer row)
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = row.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String string(ByteBuffer row)
+    {
+        final byte[] bytes = new byte[(int) varInt(row)];
+        row.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String nullableString(ByteBuffer row)
+    {
+        return row.get() == 1 ? null : string(row);
+    }
+
+    private static Long nullableLong(ByteBuffer row)
+    {
+        return row.get() == 1 ? null : row.getLong();
+    }
+
+    private static Map<String, String> map(ByteBuffer row)
+    {
+        final Map<String, String> map = new LinkedHashMap<>();
+        final long size = varInt(row);
+        for (long i = 0; i < size; i++)
+        {
+            map.put(string(row), string(row));
+        }
+        return map;
+    }
+}